@@ -1,5 +1,6 @@
 plugins {
     id("java")
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "ru.nsu.ccfit.melnikov"
@@ -12,6 +13,8 @@ repositories {
 dependencies {
     compileOnly("org.projectlombok:lombok:1.18.28")
     annotationProcessor("org.projectlombok:lombok:1.18.28")
+    jmhCompileOnly("org.projectlombok:lombok:1.18.28")
+    jmhAnnotationProcessor("org.projectlombok:lombok:1.18.28")
 
     testImplementation(platform("org.junit:junit-bom:5.9.1"))
     testImplementation("org.junit.jupiter:junit-jupiter")
@@ -19,4 +22,12 @@ dependencies {
 
 tasks.test {
     useJUnitPlatform()
-}
\ No newline at end of file
+}
+
+jmh {
+    jmhVersion.set("1.37")
+    // allocation rate next to the megapixels/s counter
+    profilers.add("gc")
+    jvmArgs.add("-Xmx8g")
+    resultFormat.set("JSON")
+}
@@ -0,0 +1,62 @@
+package ru.nsu.ccfit.melnikov.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.nsu.ccfit.melnikov.model.Drafter;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the drawing tools: flood fill of the whole image and a corner-to-corner line.
+ * <p>
+ * Fills alternate between two colors so every invocation repaints all pixels without restoring the image.
+ * The {@code megapixels} secondary result counts painted pixels.
+ *
+ * @author Nikita Melnikov
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class DrawingBenchmark {
+    @Param({"1", "12", "48"})
+    public int megapixels;
+    @Param({"INT_ARGB", "INT_RGB", "3BYTE_BGR"})
+    public String imageType;
+    private BufferedImage image;
+    private boolean dark;
+
+    @Setup
+    public void setUp() {
+        image = TestImages.blank(megapixels, imageType);
+    }
+
+    @Benchmark
+    public BufferedImage fill(PixelCounter counter) {
+        dark = !dark;
+        Drafter.fill(image, dark ? Color.BLACK : Color.WHITE, image.getWidth() / 2, image.getHeight() / 2);
+        counter.add((long) image.getWidth() * image.getHeight());
+        return image;
+    }
+
+    @Benchmark
+    public BufferedImage drawLine(PixelCounter counter) {
+        dark = !dark;
+        Drafter.drawLine(image, dark ? Color.BLACK : Color.WHITE, 0, 0, image.getWidth() - 1, image.getHeight() - 1);
+        counter.add(Math.max(image.getWidth(), image.getHeight()));
+        return image;
+    }
+}
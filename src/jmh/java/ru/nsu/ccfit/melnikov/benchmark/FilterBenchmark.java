@@ -0,0 +1,52 @@
+package ru.nsu.ccfit.melnikov.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of every filter over generated images of several sizes and types.
+ * <p>
+ * Run a subset with e.g. {@code ./gradlew jmh -Pjmh.includes=FilterBenchmark}; the {@code megapixels}
+ * secondary result is the rate in MP/s, {@code gc.alloc.rate} comes from the GC profiler.
+ *
+ * @author Nikita Melnikov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class FilterBenchmark {
+    @Param
+    public FilterOperation operation;
+    @Param({"1", "12", "48"})
+    public int megapixels;
+    @Param({"INT_ARGB", "INT_RGB", "3BYTE_BGR"})
+    public String imageType;
+    private BufferedImage image;
+
+    @Setup
+    public void setUp() {
+        image = TestImages.generate(megapixels, imageType);
+    }
+
+    @Benchmark
+    public BufferedImage apply(PixelCounter counter) {
+        var result = operation.apply(image);
+        counter.add((long) image.getWidth() * image.getHeight());
+        return result;
+    }
+}
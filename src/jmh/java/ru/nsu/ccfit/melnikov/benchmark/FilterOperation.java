@@ -0,0 +1,58 @@
+package ru.nsu.ccfit.melnikov.benchmark;
+
+import lombok.Getter;
+import ru.nsu.ccfit.melnikov.model.Drafter;
+import ru.nsu.ccfit.melnikov.model.Filters;
+import ru.nsu.ccfit.melnikov.model.dither.DiffusionKernel;
+
+import java.awt.image.AffineTransformOp;
+import java.awt.image.BufferedImage;
+import java.util.function.UnaryOperator;
+
+/**
+ * {@link Drafter} calls behind every {@link Filters} entry, with the parameters the dialogs start with.
+ * Filters with two implementations selectable in the dialogs have an entry for each, error diffusion
+ * also one with a wider kernel.
+ *
+ * @author Nikita Melnikov
+ */
+public enum FilterOperation {
+    ROTATION(Filters.ROTATION, image -> Drafter.getRotated(image, 30)),
+    ROTATION_SHEARS(Filters.ROTATION,
+            image -> Drafter.getRotatedByShears(image, 30, AffineTransformOp.TYPE_NEAREST_NEIGHBOR)),
+    FLOYD_STEINBERG_DITHERING_AS(Filters.FLOYD_STEINBERG_DITHERING,
+            image -> Drafter.ditherImageFloydAS(image, 4, 4, 4)),
+    FLOYD_STEINBERG_DITHERING_NM(Filters.FLOYD_STEINBERG_DITHERING,
+            image -> Drafter.ditherImageFloydNM(image, 4, 4, 4)),
+    JARVIS_JUDICE_NINKE_DITHERING(Filters.FLOYD_STEINBERG_DITHERING,
+            image -> Drafter.ditherErrorDiffusion(image, DiffusionKernel.JARVIS_JUDICE_NINKE, 4, 4, 4)),
+    ORDERED_DITHERING_AS(Filters.ORDERED_DITHERING, image -> Drafter.ditherImageOrderedAS(image, 4, 4, 4, 16)),
+    ORDERED_DITHERING_NM(Filters.ORDERED_DITHERING, image -> Drafter.ditherImageOrderedNM(image, 4, 4, 4, 4)),
+    BLUR_3(Filters.BLUR, image -> Drafter.makeBlur(image, 3)),
+    BLUR_5(Filters.BLUR, image -> Drafter.makeBlur(image, 5)),
+    BLUR_11(Filters.BLUR, image -> Drafter.makeBlur(image, 11)),
+    GRAYSCALE(Filters.GRAYSCALE, Drafter::makeGrayShaded),
+    WATERCOLOR(Filters.WATERCOLOR, image -> Drafter.makeWaterColored(image, 2)),
+    ZOOM(Filters.ZOOM, image -> Drafter.makeZoom(image, 2)),
+    NORMAL_MAP(Filters.NORMAL_MAP, Drafter::makeNormalMap),
+    TWIRL(Filters.TWIRL, image -> Drafter.makeTwirl(image, Math.toRadians(45))),
+    EMBOSSING(Filters.EMBOSSING, image -> Drafter.makeEmbossing(image, 128)),
+    SHARPNESS(Filters.SHARPNESS, Drafter::makeSharpness),
+    SOBEL(Filters.SOBEL, image -> Drafter.makeSobel(image, 60)),
+    ROBERTS(Filters.ROBERTS, image -> Drafter.makeRoberts(image, 60)),
+    GAMMA(Filters.GAMMA, image -> Drafter.makeGamma(image, 1.8)),
+    INVERSE(Filters.INVERSE, Drafter::makeInverse);
+
+    @Getter
+    private final Filters filter;
+    private final UnaryOperator<BufferedImage> operation;
+
+    FilterOperation(Filters filter, UnaryOperator<BufferedImage> operation) {
+        this.filter = filter;
+        this.operation = operation;
+    }
+
+    public BufferedImage apply(BufferedImage image) {
+        return operation.apply(image);
+    }
+}
@@ -0,0 +1,27 @@
+package ru.nsu.ccfit.melnikov.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Secondary result counting processed pixels; in throughput mode JMH reports it as megapixels per second.
+ *
+ * @author Nikita Melnikov
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.EVENTS)
+public class PixelCounter {
+    public double megapixels;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        megapixels = 0;
+    }
+
+    void add(long pixels) {
+        megapixels += pixels / 1e6;
+    }
+}
@@ -0,0 +1,66 @@
+package ru.nsu.ccfit.melnikov.benchmark;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * Deterministic images for benchmarks: smooth gradients with noise, so that filters with
+ * data-dependent cost (medians, fills, dithering) see photo-like content.
+ *
+ * @author Nikita Melnikov
+ */
+final class TestImages {
+    private static final long SEED = 20230401L;
+
+    private TestImages() {
+    }
+
+    /**
+     * @param megapixels image area in millions of pixels, the aspect ratio is 4:3
+     * @param type       {@link BufferedImage} type name without the {@code TYPE_} prefix, e.g. {@code INT_ARGB}
+     * @return generated image
+     */
+    static BufferedImage generate(int megapixels, String type) {
+        var image = blank(megapixels, type);
+        int width = image.getWidth();
+        int height = image.getHeight();
+        var random = new Random(SEED);
+        var pixels = new int[width * height];
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                int r = (x * 255 / width + random.nextInt(32)) & 0xff;
+                int g = (y * 255 / height + random.nextInt(32)) & 0xff;
+                int b = ((x + y) * 255 / (width + height) + random.nextInt(32)) & 0xff;
+                pixels[y * width + x] = 0xFF000000 | r << 16 | g << 8 | b;
+            }
+        }
+        image.setRGB(0, 0, width, height, pixels, 0, width);
+        return image;
+    }
+
+    /**
+     * @return white image of the given area and type
+     */
+    static BufferedImage blank(int megapixels, String type) {
+        int width = (int) Math.round(Math.sqrt(megapixels * 1e6 * 4 / 3));
+        int height = (int) Math.round(megapixels * 1e6 / width);
+        var image = new BufferedImage(width, height, imageType(type));
+        var g2d = image.createGraphics();
+        g2d.setColor(Color.WHITE);
+        g2d.fillRect(0, 0, width, height);
+        g2d.dispose();
+        return image;
+    }
+
+    private static int imageType(String type) {
+        return switch (type) {
+            case "INT_ARGB" -> BufferedImage.TYPE_INT_ARGB;
+            case "INT_RGB" -> BufferedImage.TYPE_INT_RGB;
+            case "3BYTE_BGR" -> BufferedImage.TYPE_3BYTE_BGR;
+            case "4BYTE_ABGR" -> BufferedImage.TYPE_4BYTE_ABGR;
+            case "BYTE_GRAY" -> BufferedImage.TYPE_BYTE_GRAY;
+            default -> throw new IllegalArgumentException("Unknown image type: " + type);
+        };
+    }
+}
@@ -0,0 +1,72 @@
+package ru.nsu.ccfit.melnikov;
+
+import ru.nsu.ccfit.melnikov.batch.BatchProcessor;
+import ru.nsu.ccfit.melnikov.batch.FilterChain;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Headless entry point applying a filter chain to every image of a directory
+ *
+ * @author Nikita Melnikov
+ */
+public class BatchMain {
+    private static final String USAGE = """
+            Usage: BatchMain <chain> <input dir> <output dir> [options]
+              chain is a comma separated list of filters, e.g. gamma:1.8,blur:5,floyd:4,4,4
+            Options:
+              --readers <n>    decoding threads (2)
+              --filters <n>    images filtered at the same time (number of processors)
+              --writers <n>    encoding threads (2)
+              --in-flight <n>  images held in memory at most (2 * filters + readers + writers)
+              --format <name>  output format (png)
+            Filters:
+            """;
+
+    public static void main(String[] args) throws InterruptedException {
+        System.setProperty("java.awt.headless", "true");
+        if (args.length < 3) {
+            System.err.print(USAGE);
+            System.err.println(FilterChain.SYNTAX.indent(2));
+            System.exit(2);
+        }
+        int readers = 2;
+        int filters = Runtime.getRuntime().availableProcessors();
+        int writers = 2;
+        int inFlight = -1;
+        var format = "png";
+        try {
+            var chain = FilterChain.parse(args[0]);
+            for (int i = 3; i < args.length; i += 2) {
+                if (i + 1 >= args.length)
+                    throw new IllegalArgumentException("Missing value of " + args[i]);
+                var value = args[i + 1];
+                switch (args[i]) {
+                    case "--readers" -> readers = Integer.parseInt(value);
+                    case "--filters" -> filters = Integer.parseInt(value);
+                    case "--writers" -> writers = Integer.parseInt(value);
+                    case "--in-flight" -> inFlight = Integer.parseInt(value);
+                    case "--format" -> format = value;
+                    default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+            if (inFlight < 0)
+                inFlight = 2 * filters + readers + writers;
+            var processor = new BatchProcessor(chain, readers, filters, writers, inFlight, format, System.out);
+            int failures = processor.process(Path.of(args[1]), Path.of(args[2]));
+            if (failures > 0) {
+                System.err.println(failures + " file(s) failed");
+                System.exit(1);
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(USAGE);
+            System.err.println(FilterChain.SYNTAX.indent(2));
+            System.exit(2);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+}
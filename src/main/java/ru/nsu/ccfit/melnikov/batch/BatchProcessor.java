@@ -0,0 +1,290 @@
+package ru.nsu.ccfit.melnikov.batch;
+
+import org.w3c.dom.Element;
+import ru.nsu.ccfit.melnikov.model.pipeline.Pipeline;
+import ru.nsu.ccfit.melnikov.model.raster.PixelBuffer;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.metadata.IIOMetadataFormatImpl;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+
+/**
+ * Applies a filter to every image of a directory with a bounded three-stage pipeline:
+ * decoding on reader threads, filtering on compute threads and encoding on writer threads.
+ * <p>
+ * At most {@code inFlight} images are held between decoding and the end of encoding,
+ * so memory use does not grow with the number of files. Filters still split each image into bands
+ * on the executor of {@code Drafter}.
+ * <p>
+ * Images of more than {@code icgfilter.stream.mp} megapixels (16 by default) are streamed instead when
+ * the filter is a {@link FilterChain} with a {@link FilterChain#pipeline() pipeline} and the output is PNG:
+ * a compute thread decodes, filters and encodes them a strip of rows at a time, so such an image is never
+ * held whole. Interlaced and progressive sources are not streamed, as every strip would decode them in full.
+ *
+ * @author Nikita Melnikov
+ */
+public class BatchProcessor {
+    private static final long STREAM_PIXELS = Long.getLong("icgfilter.stream.mp", 16) * 1_000_000;
+    private final UnaryOperator<BufferedImage> filter;
+    private final int readerThreads;
+    private final int computeThreads;
+    private final int writerThreads;
+    private final int inFlight;
+    private final String format;
+    private final PrintStream log;
+    /**
+     * The filter as a pipeline if large images can be streamed through it, {@code null} otherwise
+     */
+    private final Pipeline pipeline;
+
+    /**
+     * @param filter         filter applied to every image
+     * @param readerThreads  threads decoding images
+     * @param computeThreads images filtered at the same time
+     * @param writerThreads  threads encoding images
+     * @param inFlight       maximum number of images held in memory
+     * @param format         ImageIO format name of the output files
+     * @param log            stream receiving a line per processed file
+     */
+    public BatchProcessor(UnaryOperator<BufferedImage> filter, int readerThreads, int computeThreads,
+                          int writerThreads, int inFlight, String format, PrintStream log) {
+        if (readerThreads < 1 || computeThreads < 1 || writerThreads < 1 || inFlight < 1)
+            throw new IllegalArgumentException("Thread counts and the in-flight limit must be positive");
+        if (!ImageIO.getImageWritersByFormatName(format).hasNext())
+            throw new IllegalArgumentException("No writer for format " + format);
+        this.filter = filter;
+        this.readerThreads = readerThreads;
+        this.computeThreads = computeThreads;
+        this.writerThreads = writerThreads;
+        this.inFlight = inFlight;
+        this.format = format;
+        this.log = log;
+        this.pipeline = filter instanceof FilterChain chain && "png".equalsIgnoreCase(format) ? chain.pipeline() : null;
+    }
+
+    /**
+     * Processes every file of {@code inputDir} with an extension ImageIO has a reader for
+     *
+     * @param inputDir  directory with source images
+     * @param outputDir directory results are written to, created if missing
+     * @return number of files that failed
+     * @throws IOException          if a directory can not be read or created
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public int process(Path inputDir, Path outputDir) throws IOException, InterruptedException {
+        Files.createDirectories(outputDir);
+        if (Files.isSameFile(inputDir, outputDir))
+            throw new IOException("Output directory must differ from the input directory");
+        var suffixes = Set.of(ImageIO.getReaderFileSuffixes());
+        List<Path> files;
+        try (var stream = Files.list(inputDir)) {
+            files = stream.filter(Files::isRegularFile)
+                    .filter(path -> suffixes.contains(extension(path)))
+                    .sorted()
+                    .toList();
+        }
+
+        var targets = targets(files, outputDir);
+
+        var readers = Executors.newFixedThreadPool(readerThreads, daemonThreads("batch-reader"));
+        var computers = Executors.newFixedThreadPool(computeThreads, daemonThreads("batch-filter"));
+        var writers = Executors.newFixedThreadPool(writerThreads, daemonThreads("batch-writer"));
+        var permits = new Semaphore(inFlight);
+        var failures = new AtomicInteger();
+        try {
+            var tasks = new CompletableFuture<?>[files.size()];
+            for (int i = 0; i < files.size(); ++i) {
+                var source = files.get(i);
+                var target = targets.get(i);
+                permits.acquire();
+                long start = System.nanoTime();
+                var streamed = pipeline == null ? CompletableFuture.completedFuture(false)
+                        : CompletableFuture.supplyAsync(() -> isStreamed(source), readers);
+                tasks[i] = streamed.thenCompose(stream -> stream
+                                ? CompletableFuture.runAsync(() -> stream(source, target), computers)
+                                : CompletableFuture.supplyAsync(() -> read(source), readers)
+                                .thenApplyAsync(filter, computers)
+                                .thenAcceptAsync(image -> write(image, target), writers))
+                        .whenComplete((ignored, error) -> {
+                            permits.release();
+                            if (error == null) {
+                                log.printf("%s -> %s (%d ms)%n", source, target, (System.nanoTime() - start) / 1_000_000);
+                            } else {
+                                failures.incrementAndGet();
+                                var cause = error instanceof CompletionException ? error.getCause() : error;
+                                if (cause instanceof UncheckedIOException unchecked)
+                                    cause = unchecked.getCause();
+                                log.printf("%s failed: %s%n", source, cause.getMessage());
+                            }
+                        });
+            }
+            CompletableFuture.allOf(tasks).exceptionally(error -> null).join();
+        } finally {
+            readers.shutdownNow();
+            computers.shutdownNow();
+            writers.shutdownNow();
+        }
+        return failures.get();
+    }
+
+    private static BufferedImage read(Path source) {
+        try {
+            var image = ImageIO.read(source.toFile());
+            if (image == null)
+                throw new IOException("Unsupported image format");
+            return image;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void write(BufferedImage image, Path target) {
+        try {
+            // formats without alpha, such as JPEG, have no writer for ARGB images
+            if (image.getColorModel().hasAlpha()
+                    && !ImageIO.getImageWriters(ImageTypeSpecifier.createFromRenderedImage(image), format).hasNext())
+                image = opaque(image);
+            if (!ImageIO.write(image, format, target.toFile()))
+                throw new IOException("Can not encode image as " + format);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return copy of the image without the alpha channel
+     */
+    private static BufferedImage opaque(BufferedImage image) {
+        var src = PixelBuffer.of(image);
+        var dst = PixelBuffer.create(src.getWidth(), src.getHeight(), BufferedImage.TYPE_INT_RGB);
+        for (int i = 0; i < src.getWidth() * src.getHeight(); ++i)
+            dst.set(i, src.get(i));
+        return dst.getImage();
+    }
+
+    /**
+     * @return whether the source is large enough to be streamed and can be decoded a strip at a time
+     */
+    private static boolean isStreamed(Path source) {
+        try (var input = ImageIO.createImageInputStream(source.toFile())) {
+            var reader = reader(input);
+            try {
+                reader.setInput(input, false, true);
+                if ((long) reader.getWidth(0) * reader.getHeight(0) <= STREAM_PIXELS)
+                    return false;
+                var metadata = reader.getImageMetadata(0);
+                if (metadata == null || !metadata.isStandardMetadataFormatSupported())
+                    return true;
+                var scans = ((Element) metadata.getAsTree(IIOMetadataFormatImpl.standardMetadataFormatName))
+                        .getElementsByTagName("NumProgressiveScans");
+                return scans.getLength() == 0
+                        || Integer.parseInt(((Element) scans.item(0)).getAttribute("value")) <= 1;
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void stream(Path source, Path target) {
+        try (var input = ImageIO.createImageInputStream(source.toFile())) {
+            var reader = reader(input);
+            var writer = ImageIO.getImageWritersByFormatName(format).next();
+            try {
+                reader.setInput(input, false, true);
+                Files.deleteIfExists(target);
+                try (var output = ImageIO.createImageOutputStream(target.toFile())) {
+                    writer.setOutput(output);
+                    writer.write(pipeline.stream(reader));
+                }
+            } finally {
+                writer.dispose();
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static ImageReader reader(ImageInputStream input) throws IOException {
+        var readers = input == null ? null : ImageIO.getImageReaders(input);
+        if (readers == null || !readers.hasNext())
+            throw new IOException("Unsupported image format");
+        return readers.next();
+    }
+
+    private static String extension(Path path) {
+        var name = path.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(dot + 1).toLowerCase(Locale.ROOT) : "";
+    }
+
+    /**
+     * Names the output file of every source after it with the extension of the output format. Sources that
+     * would share a name, such as {@code a.jpg} and {@code a.png}, keep their own extension before it:
+     * {@code a.jpg.png} and {@code a.png.png}.
+     *
+     * @throws IOException if two sources still map to one file
+     */
+    private List<Path> targets(List<Path> files, Path outputDir) throws IOException {
+        var suffix = "." + format.toLowerCase(Locale.ROOT);
+        var counts = new HashMap<String, Integer>();
+        for (var source : files)
+            counts.merge(key(stem(source) + suffix), 1, Integer::sum);
+        var targets = new ArrayList<Path>(files.size());
+        var taken = new HashSet<String>();
+        for (var source : files) {
+            var name = stem(source) + suffix;
+            if (counts.get(key(name)) > 1)
+                name = source.getFileName() + suffix;
+            if (!taken.add(key(name)))
+                throw new IOException("Several sources map to the output file " + name);
+            targets.add(outputDir.resolve(name));
+        }
+        return targets;
+    }
+
+    private static String stem(Path source) {
+        var name = source.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    /**
+     * @return file name as compared for collisions, ignoring case like some file systems do
+     */
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        var counter = new AtomicInteger();
+        return runnable -> {
+            var thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
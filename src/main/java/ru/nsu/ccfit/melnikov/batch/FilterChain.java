@@ -0,0 +1,255 @@
+package ru.nsu.ccfit.melnikov.batch;
+
+import ru.nsu.ccfit.melnikov.model.Drafter;
+import ru.nsu.ccfit.melnikov.model.dither.DiffusionKernel;
+import ru.nsu.ccfit.melnikov.model.lut.ChannelLut;
+import ru.nsu.ccfit.melnikov.model.normal.NormalMap;
+import ru.nsu.ccfit.melnikov.model.pipeline.Pipeline;
+
+import java.awt.image.AffineTransformOp;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.UnaryOperator;
+
+/**
+ * Sequence of {@link Drafter} filters parsed from a spec such as {@code gamma:1.8,blur:5,floyd:4,4,4}.
+ * <p>
+ * Filters are separated by commas and take their parameters after a colon; a number that follows a filter
+ * is one more parameter of it. Consecutive point operations are composed into one lookup table.
+ *
+ * @author Nikita Melnikov
+ */
+public final class FilterChain implements UnaryOperator<BufferedImage> {
+    public static final String SYNTAX = """
+            gamma:<g>             gamma correction
+            inverse               negative
+            gray                  grayscale
+            blur:<size>           blur with an odd mask size
+            sharpen               sharpness
+            watercolor[:<r>]      median of radius r (2 by default) and sharpness
+            emboss                embossing
+            sobel:<threshold>     Sobel operator
+            roberts:<threshold>   Roberts operator
+            normal[:<strength>]   normal map, strength 8 by default
+            zoom:<times>          zoom into the centre
+            rotate:<degrees>      rotation, rotate-shear by three shears
+            twirl:<degrees>       twirl
+            floyd:<r>,<g>,<b>     Floyd-Steinberg dithering, floyd-as for the second implementation
+            jjn:<r>,<g>,<b>       error diffusion with the Jarvis-Judice-Ninke kernel,
+                                  likewise stucki, atkinson and sierra
+            ordered:<r>,<g>,<b>   ordered dithering, ordered-as for the second implementation""";
+    private final List<Step> steps;
+
+    private FilterChain(List<Step> steps) {
+        this.steps = steps;
+    }
+
+    /**
+     * @param spec chain spec, see {@link #SYNTAX}
+     * @return parsed chain
+     * @throws IllegalArgumentException if the spec names an unknown filter or has wrong parameters
+     */
+    public static FilterChain parse(String spec) {
+        var tokens = new ArrayList<List<String>>();
+        for (var token : spec.split(",")) {
+            token = token.trim();
+            if (token.isEmpty())
+                throw new IllegalArgumentException("Empty filter in chain: " + spec);
+            if (!tokens.isEmpty() && isNumber(token)) {
+                tokens.get(tokens.size() - 1).add(token);
+                continue;
+            }
+            var parts = new ArrayList<String>();
+            int colon = token.indexOf(':');
+            parts.add(colon < 0 ? token : token.substring(0, colon));
+            if (colon >= 0)
+                parts.add(token.substring(colon + 1));
+            tokens.add(parts);
+        }
+
+        var steps = new ArrayList<Step>();
+        for (var parts : tokens) {
+            var step = step(parts.get(0).toLowerCase(Locale.ROOT), parts.subList(1, parts.size()));
+            int last = steps.size() - 1;
+            if (step.lut() != null && last >= 0 && steps.get(last).lut() != null)
+                steps.set(last, Step.of(steps.get(last).lut().andThen(step.lut())));
+            else
+                steps.add(step);
+        }
+        return new FilterChain(List.copyOf(steps));
+    }
+
+    @Override
+    public BufferedImage apply(BufferedImage image) {
+        var result = image;
+        for (var step : steps)
+            result = step.filter().apply(result);
+        return result;
+    }
+
+    /**
+     * @return the whole chain as one pipeline, {@code null} if a filter of the chain needs more than
+     * a few rows around every output row
+     */
+    public Pipeline pipeline() {
+        Pipeline result = null;
+        for (var step : steps) {
+            if (step.pipeline() == null)
+                return null;
+            result = result == null ? step.pipeline() : result.then(step.pipeline());
+        }
+        return result;
+    }
+
+    private static Step step(String name, List<String> params) {
+        return switch (name) {
+            case "gamma" -> Step.of(ChannelLut.gamma(doubleParam(name, params)));
+            case "inverse" -> {
+                noParams(name, params);
+                yield Step.of(ChannelLut.inverse());
+            }
+            case "gray" -> {
+                noParams(name, params);
+                yield Step.of(Drafter::makeGrayShaded, Drafter.grayShade());
+            }
+            case "blur" -> {
+                int size = intParams(name, params, 1)[0];
+                if (size < 3 || size % 2 == 0)
+                    throw new IllegalArgumentException("Blur size must be odd and at least 3: " + size);
+                yield Step.of(image -> Drafter.makeBlur(image, size));
+            }
+            case "sharpen" -> {
+                noParams(name, params);
+                yield Step.of(Drafter::makeSharpness, Drafter.sharpness());
+            }
+            case "watercolor" -> {
+                int radius = params.isEmpty() ? 2 : intParams(name, params, 1)[0];
+                yield Step.of(image -> Drafter.makeWaterColored(image, radius), Drafter.waterColor(radius));
+            }
+            case "emboss" -> {
+                noParams(name, params);
+                yield Step.of(image -> Drafter.makeEmbossing(image, 128), Drafter.embossing(128));
+            }
+            case "sobel" -> {
+                int threshold = intParams(name, params, 1)[0];
+                yield Step.of(image -> Drafter.makeSobel(image, threshold), Drafter.sobel(threshold));
+            }
+            case "roberts" -> {
+                int threshold = intParams(name, params, 1)[0];
+                yield Step.of(image -> Drafter.makeRoberts(image, threshold), Drafter.roberts(threshold));
+            }
+            case "normal" -> {
+                float strength = params.isEmpty() ? NormalMap.DEFAULT_STRENGTH : (float) doubleParam(name, params);
+                yield Step.of(image -> Drafter.makeNormalMap(image, strength, false), Drafter.normalMap(strength));
+            }
+            case "zoom" -> {
+                int times = intParams(name, params, 1)[0];
+                yield Step.of(image -> Drafter.makeZoom(image, times));
+            }
+            case "rotate" -> {
+                int degrees = intParams(name, params, 1)[0];
+                yield Step.of(image -> Drafter.getRotated(image, degrees));
+            }
+            case "rotate-shear" -> {
+                int degrees = intParams(name, params, 1)[0];
+                yield Step.of(image -> Drafter.getRotatedByShears(image, degrees,
+                        AffineTransformOp.TYPE_NEAREST_NEIGHBOR));
+            }
+            case "twirl" -> {
+                double angle = Math.toRadians(doubleParam(name, params));
+                yield Step.of(image -> Drafter.makeTwirl(image, angle));
+            }
+            case "floyd" -> {
+                int[] q = quants(name, params);
+                yield Step.of(image -> Drafter.ditherImageFloydNM(image, q[0], q[1], q[2]));
+            }
+            case "jjn", "stucki", "atkinson", "sierra" -> {
+                int[] q = quants(name, params);
+                var kernel = switch (name) {
+                    case "jjn" -> DiffusionKernel.JARVIS_JUDICE_NINKE;
+                    case "stucki" -> DiffusionKernel.STUCKI;
+                    case "atkinson" -> DiffusionKernel.ATKINSON;
+                    default -> DiffusionKernel.SIERRA;
+                };
+                yield Step.of(image -> Drafter.ditherErrorDiffusion(image, kernel, q[0], q[1], q[2]));
+            }
+            case "floyd-as" -> {
+                int[] q = quants(name, params);
+                yield Step.of(image -> Drafter.ditherImageFloydAS(image, q[0], q[1], q[2]));
+            }
+            case "ordered" -> {
+                int[] q = quants(name, params);
+                int n = Math.max(Math.max(q[0], q[1]), q[2]);
+                yield Step.of(image -> Drafter.ditherImageOrderedNM(image, q[0], q[1], q[2], n));
+            }
+            case "ordered-as" -> {
+                int[] q = quants(name, params);
+                int n = Math.max(Math.max(q[0], q[1]), q[2]) * 4;
+                yield Step.of(image -> Drafter.ditherImageOrderedAS(image, q[0], q[1], q[2], n));
+            }
+            default -> throw new IllegalArgumentException("Unknown filter: " + name);
+        };
+    }
+
+    private static boolean isNumber(String token) {
+        try {
+            Double.parseDouble(token);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static void noParams(String name, List<String> params) {
+        if (!params.isEmpty())
+            throw new IllegalArgumentException(name + " takes no parameters");
+    }
+
+    private static double doubleParam(String name, List<String> params) {
+        if (params.size() != 1 || !isNumber(params.get(0)))
+            throw new IllegalArgumentException(name + " takes one number");
+        return Double.parseDouble(params.get(0));
+    }
+
+    private static int[] intParams(String name, List<String> params, int count) {
+        if (params.size() != count)
+            throw new IllegalArgumentException(name + " takes " + count + " integer parameter(s)");
+        var values = new int[count];
+        for (int i = 0; i < count; ++i) {
+            try {
+                values[i] = Integer.parseInt(params.get(i));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(name + " takes integer parameters: " + params.get(i));
+            }
+        }
+        return values;
+    }
+
+    private static int[] quants(String name, List<String> params) {
+        var values = intParams(name, params, 3);
+        for (int value : values)
+            if (value < 2)
+                throw new IllegalArgumentException(name + " needs at least 2 levels per channel");
+        return values;
+    }
+
+    /**
+     * Filter of the chain; point operations keep their table so neighbours can be composed,
+     * filters that only read nearby rows keep their pipeline so the chain can be streamed
+     */
+    private record Step(UnaryOperator<BufferedImage> filter, ChannelLut lut, Pipeline pipeline) {
+        static Step of(UnaryOperator<BufferedImage> filter) {
+            return new Step(filter, null, null);
+        }
+
+        static Step of(UnaryOperator<BufferedImage> filter, Pipeline pipeline) {
+            return new Step(filter, null, pipeline);
+        }
+
+        static Step of(ChannelLut lut) {
+            return new Step(image -> Drafter.applyLut(image, lut), lut, Pipeline.of(lut));
+        }
+    }
+}
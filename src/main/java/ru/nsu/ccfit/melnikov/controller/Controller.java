@@ -4,6 +4,11 @@ import lombok.Getter;
 import lombok.Setter;
 import ru.nsu.ccfit.melnikov.model.Drafter;
 import ru.nsu.ccfit.melnikov.model.Tools;
+import ru.nsu.ccfit.melnikov.model.cache.FilterCache;
+import ru.nsu.ccfit.melnikov.model.dither.DiffusionKernel;
+import ru.nsu.ccfit.melnikov.model.png.PngWriter;
+import ru.nsu.ccfit.melnikov.model.resample.Kernel;
+import ru.nsu.ccfit.melnikov.model.tiled.TiledImage;
 import ru.nsu.ccfit.melnikov.view.Canvas;
 import ru.nsu.ccfit.melnikov.view.components.FileChooser.ImageLoader;
 import ru.nsu.ccfit.melnikov.view.components.FileChooser.ImageSaver;
@@ -14,14 +19,21 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.image.AffineTransformOp;
 import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.Map;
+import java.util.function.UnaryOperator;
 
 
 @Getter
 @Setter
 public class Controller {
+    /**
+     * Images of more pixels are opened as a {@link TiledImage}, see the {@code icgfilter.tiled.mp} property
+     */
+    private static final long TILED_PIXELS = Long.getLong("icgfilter.tiled.mp", 64) * 1_000_000;
     private Color currentColor = Color.BLACK;
     private Tools currentTool = Tools.CURSOR;
     private int currentInterpolationType = AffineTransformOp.TYPE_BILINEAR;
@@ -29,11 +41,27 @@ public class Controller {
     private int numOfAngles = 5;
     private int radius = 70;
     private int rotation = 0;
+    private int fillTolerance = 0;
+    private final FilterRunner filterRunner = new FilterRunner();
+    private final FilterPreview filterPreview = new FilterPreview();
+    /**
+     * Results of recent filter invocations, see the {@code icgfilter.cache.mb} property
+     */
+    private final FilterCache filterCache = new FilterCache(Long.getLong("icgfilter.cache.mb", 256) << 20);
 
     public void resizeCanvas(Canvas canvas, int width, int height) {
         canvas.resizeCanvas(width, height);
     }
 
+    /**
+     * Resamples the image to a new size with the current interpolation type
+     */
+    public void scaleImage(Canvas canvas, int width, int height) {
+        int interpolationType = currentInterpolationType;
+        filterRunner.run(canvas, cached("scale " + width + " " + height + " " + interpolationType,
+                image -> Drafter.makeScaled(image, width, height, interpolationType)));
+    }
+
     public void setCurrentTool(Tools tool, Map<Tools, ToolButton> toolBarButtons, Map<Tools, JRadioButtonMenuItem> viewMenuToolButtons) {
         currentTool = tool;
         toolBarButtons.get(tool).setSelected(true);
@@ -45,9 +73,18 @@ public class Controller {
         int returnVal = loader.showOpenDialog(loader);
         if (returnVal == JFileChooser.APPROVE_OPTION) {
             try {
-                var newImage = ImageIO.read(loader.getSelectedFile());
-                if (newImage != null)
+                var file = loader.getSelectedFile();
+                var size = TiledImage.sizeOf(file);
+                if (size != null && (long) size.width * size.height > TILED_PIXELS) {
+                    filterRunner.cancel();
+                    canvas.loadTiled(TiledImage.read(file));
+                    return;
+                }
+                var newImage = ImageIO.read(file);
+                if (newImage != null) {
+                    filterRunner.cancel();
                     canvas.loadImage(newImage);
+                }
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
@@ -61,7 +98,13 @@ public class Controller {
             try {
                 var filePath = saver.getSelectedFile().getAbsolutePath();
                 var file = filePath.endsWith(".png") ? saver.getSelectedFile() : new File(filePath + ".png");
-                ImageIO.write(canvas.getImage(), "png", file);
+                var writer = new PngWriter(saver.getCompressionLevel(), saver.isFast(), Drafter.getExecutor().getPool());
+                try (var out = new BufferedOutputStream(new FileOutputStream(file))) {
+                    if (canvas.isTiled())
+                        writer.write(canvas.getTiledImage(), out);
+                    else
+                        writer.write(canvas.getImage(), out);
+                }
                 JOptionPane.showMessageDialog(saver,"File " + file.getPath() + " saved");
             } catch (IOException e) {
                 throw new RuntimeException(e);
@@ -69,11 +112,14 @@ public class Controller {
         }
     }
 
-    public void fill(BufferedImage image, Point seedPoint) {
-        Drafter.fill(image, getCurrentColor(), seedPoint.x, seedPoint.y);
+    public Rectangle fill(BufferedImage image, Point seedPoint) {
+        return Drafter.fill(image, getCurrentColor(), seedPoint.x, seedPoint.y, fillTolerance);
     }
 
-    public void drawLine(BufferedImage image, Point from, Point to) {
+    /**
+     * @return bounds of the changed pixels
+     */
+    public Rectangle drawLine(BufferedImage image, Point from, Point to) {
         if (thickness == 1) {
             Drafter.drawLine(image,
                     currentColor,
@@ -84,10 +130,15 @@ public class Controller {
             g2d.setColor(currentColor);
             g2d.setStroke(new BasicStroke(thickness, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
             g2d.drawLine(from.x, from.y, to.x, to.y);
+            g2d.dispose();
         }
+        return Drafter.strokeBounds(from.x, from.y, to.x, to.y, thickness);
     }
 
-    public void drawPolygon(BufferedImage image, Point centerPoint) {
+    /**
+     * @return bounds of the changed pixels
+     */
+    public Rectangle drawPolygon(BufferedImage image, Point centerPoint) {
         Point[] vertex = new Point[numOfAngles];
         double k = 2 * Math.PI / numOfAngles;
 
@@ -98,11 +149,16 @@ public class Controller {
             vertex[i] = new Point(x, y);
         }
 
+        var bounds = new Rectangle(0, 0, -1, -1);
         for (int i = 0; i < numOfAngles; ++i)
-            drawLine(image, vertex[i], vertex[(i + 1) % numOfAngles]);
+            bounds = bounds.union(drawLine(image, vertex[i], vertex[(i + 1) % numOfAngles]));
+        return bounds;
     }
 
-    public void drawStar(BufferedImage image, Point centerPoint) {
+    /**
+     * @return bounds of the changed pixels
+     */
+    public Rectangle drawStar(BufferedImage image, Point centerPoint) {
         Point[] vertex = new Point[2 * numOfAngles];
         double k = Math.PI / numOfAngles;
 
@@ -119,95 +175,135 @@ public class Controller {
             vertex[i] = new Point(x, y);
         }
 
+        var bounds = new Rectangle(0, 0, -1, -1);
         for (int i = 0; i < 2 * numOfAngles; ++i)
-            drawLine(image, vertex[i], vertex[(i + 1) % (2 * numOfAngles)]);
+            bounds = bounds.union(drawLine(image, vertex[i], vertex[(i + 1) % (2 * numOfAngles)]));
+        return bounds;
     }
   
     public void ditherImageFloydAS(Canvas canvas, int quantsR, int quantsG, int quantsB){
-        BufferedImage newImage = Drafter.ditherImageFloydAS(canvas.getImage(), quantsR, quantsG, quantsB);
-        canvas.setImage(newImage);
+        filterRunner.run(canvas, cached("floyd-as " + quantsR + " " + quantsG + " " + quantsB,
+                floydASFilter(quantsR, quantsG, quantsB)));
+    }
+    public UnaryOperator<BufferedImage> floydASFilter(int quantsR, int quantsG, int quantsB){
+        return image -> Drafter.ditherImageFloydAS(image, quantsR, quantsG, quantsB);
     }
-    public void ditherImageFloydNM(Canvas canvas, int quantsR, int quantsG, int quantsB){
-        BufferedImage newImage = Drafter.ditherImageFloydNM(canvas.getImage(), quantsR, quantsG, quantsB);
-        canvas.setImage(newImage);
+    public void ditherErrorDiffusion(Canvas canvas, DiffusionKernel kernel, int quantsR, int quantsG, int quantsB){
+        filterRunner.run(canvas, cached("error-diffusion " + kernel.name() + " " + quantsR + " " + quantsG
+                + " " + quantsB, errorDiffusionFilter(kernel, quantsR, quantsG, quantsB)));
+    }
+    public UnaryOperator<BufferedImage> errorDiffusionFilter(DiffusionKernel kernel, int quantsR, int quantsG, int quantsB){
+        return image -> Drafter.ditherErrorDiffusion(image, kernel, quantsR, quantsG, quantsB);
     }
     public void ditherImageOrderedAS(Canvas canvas, int quantsR, int quantsG, int quantsB){
+        filterRunner.run(canvas, cached("ordered-as " + quantsR + " " + quantsG + " " + quantsB,
+                orderedASFilter(quantsR, quantsG, quantsB)));
+    }
+    public UnaryOperator<BufferedImage> orderedASFilter(int quantsR, int quantsG, int quantsB){
         int n = Math.max(Math.max(quantsR, quantsG), quantsB) * 4;
-        BufferedImage newImage = Drafter.ditherImageOrderedAS(canvas.getImage(), quantsR, quantsG, quantsB, n);
-        canvas.setImage(newImage);
+        return image -> Drafter.ditherImageOrderedAS(image, quantsR, quantsG, quantsB, n);
     }
     public void ditherImageOrderedNM(Canvas canvas, int quantsR, int quantsG, int quantsB) {
+        filterRunner.run(canvas, cached("ordered-nm " + quantsR + " " + quantsG + " " + quantsB,
+                orderedNMFilter(quantsR, quantsG, quantsB)));
+    }
+    public UnaryOperator<BufferedImage> orderedNMFilter(int quantsR, int quantsG, int quantsB){
         int n = Math.max(Math.max(quantsR, quantsG), quantsB);
-        BufferedImage newImage = Drafter.ditherImageOrderedNM(canvas.getImage(), quantsR, quantsG, quantsB, n);
-        canvas.setImage(newImage);
+        return image -> Drafter.ditherImageOrderedNM(image, quantsR, quantsG, quantsB, n);
     }
     public void makeBlur(Canvas canvas, int maskSize){
-        double[][] mask3 = {{0.0947416, 0.118318, 0.0947416},
-                            {0.118318, 0.147761, 0.118318},
-                            {0.0947416, 0.118318 , 0.0947416}};
-
-        double[][] mask5 = {{1/256.0, 4/256.0, 6/256.0, 4/256.0, 1/256.0},
-                            {4/256.0, 16/256.0, 24/256.0, 16/256.0, 4/256.0},
-                            {6/256.0, 24/256.0, 36/256.0, 24/256.0, 6/256.0},
-                            {4/256.0, 16/256.0, 24/256.0, 16/256.0, 4/256.0},
-                            {1/256.0, 4/256.0, 6/256.0, 4/256.0, 1/256.0}};
-        double[][] mask = new double[maskSize][maskSize];
-        if(maskSize == 3)
-            mask = mask3;
-        else if (maskSize == 5)
-            mask = mask5;
-        else
-            for(int y = 0; y < maskSize; y++)
-                for(int x = 0; x < maskSize; x++)
-                    mask[x][y] = 1.0 / (double)(maskSize * maskSize);
-        BufferedImage newImage = Drafter.maskPixels(canvas.getImage(), mask);
-        canvas.setImage(newImage);
+        filterRunner.run(canvas, cached("blur " + maskSize, blurFilter(maskSize)));
+    }
+    public UnaryOperator<BufferedImage> blurFilter(int maskSize){
+        return image -> Drafter.makeBlur(image, maskSize);
     }
     public void makeGrayShaded(Canvas canvas){
-        BufferedImage newImage = Drafter.makeGrayShaded(canvas.getImage());
-        canvas.setImage(newImage);
+        filterRunner.run(canvas, cached("grayscale", Drafter::makeGrayShaded), Drafter::makeGrayShaded);
     }
     public void makeWaterColored(Canvas canvas){
-        BufferedImage newImage = Drafter.makeWaterColored(canvas.getImage(), 2);
-        canvas.setImage(newImage);
+        filterRunner.run(canvas, cached("watercolor 2", image -> Drafter.makeWaterColored(image, 2)),
+                image -> Drafter.makeWaterColored(image, 2));
     }
     public void makeZoom(Canvas canvas, int times){
-        BufferedImage newImage = Drafter.makeZoom(canvas.getImage(), times);
-        canvas.setImage(newImage);
+        int interpolationType = currentInterpolationType;
+        filterRunner.run(canvas, cached("zoom " + times + " " + interpolationType,
+                image -> Drafter.makeZoom(image, times, interpolationType)));
     }
-    public void makeNormalMap(Canvas canvas){
-        BufferedImage newImage = Drafter.makeNormalMap(canvas.getImage());
-        canvas.setImage(newImage);
+    public void makeNormalMap(Canvas canvas, int strength, boolean tileable){
+        // a tiled document is processed in strips, which can not wrap around
+        filterRunner.run(canvas, cached("normal-map " + strength + " " + tileable,
+                        normalMapFilter(strength, tileable)),
+                tileable ? null : image -> Drafter.makeNormalMap(image, strength));
+    }
+    public UnaryOperator<BufferedImage> normalMapFilter(int strength, boolean tileable){
+        return image -> Drafter.makeNormalMap(image, strength, tileable);
     }
     public void makeTwirl(Canvas canvas, int angle) {
-        var newImage = Drafter.makeTwirl(canvas.getImage(), Math.toRadians(angle));
-        canvas.setImage(newImage);
+        int interpolationType = Kernel.toAffineType(currentInterpolationType);
+        filterRunner.run(canvas, cached("twirl " + angle + " " + interpolationType, twirlFilter(angle)));
+    }
+    public UnaryOperator<BufferedImage> twirlFilter(int angle){
+        int interpolationType = Kernel.toAffineType(currentInterpolationType);
+        return image -> Drafter.makeTwirl(image, Math.toRadians(angle), interpolationType);
     }
-    public void makeRotation(Canvas canvas, int angle){
-        canvas.setImage(Drafter.getRotated(canvas.getImage(), angle));
+    public void makeRotation(Canvas canvas, int angle, boolean shears){
+        int interpolationType = Kernel.toAffineType(currentInterpolationType);
+        filterRunner.run(canvas, cached("rotation " + angle + " " + interpolationType + " " + shears,
+                rotationFilter(angle, shears)));
+    }
+    public UnaryOperator<BufferedImage> rotationFilter(int angle, boolean shears){
+        int interpolationType = Kernel.toAffineType(currentInterpolationType);
+        return shears
+                ? image -> Drafter.getRotatedByShears(image, angle, interpolationType)
+                : image -> Drafter.getRotated(image, angle, interpolationType);
     }
     public void makeEmbossing(Canvas canvas){
-        BufferedImage newImage = (Drafter.makeEmbossing(canvas.getImage(), 128));
-        canvas.setImage(newImage);
+        filterRunner.run(canvas, cached("embossing 128", image -> Drafter.makeEmbossing(image, 128)),
+                image -> Drafter.makeEmbossing(image, 128));
     }
     public void makeSharpness(Canvas canvas){
-        BufferedImage newImage = (Drafter.makeSharpness(canvas.getImage()));
-        canvas.setImage(newImage);
+        filterRunner.run(canvas, cached("sharpness", Drafter::makeSharpness), Drafter::makeSharpness);
     }
     public void makeGamma(Canvas canvas, float gamma){
-        BufferedImage newImage = (Drafter.makeGamma(canvas.getImage(),  gamma));
-        canvas.setImage(newImage);
+        filterRunner.run(canvas, cached("gamma " + gamma, gammaFilter(gamma)), image -> Drafter.makeGamma(image, gamma));
+    }
+    public UnaryOperator<BufferedImage> gammaFilter(float gamma){
+        return image -> Drafter.makeGamma(image, gamma);
     }
     public void makeInverse(Canvas canvas){
-        BufferedImage newImage = (Drafter.makeInverse(canvas.getImage()));
-        canvas.setImage(newImage);
+        filterRunner.run(canvas, cached("inverse", Drafter::makeInverse), Drafter::makeInverse);
     }
     public void makeSobel(Canvas canvas, int threshold){
-        BufferedImage newImage = (Drafter.makeSobel(canvas.getImage(), threshold));
-        canvas.setImage(newImage);
+        filterRunner.run(canvas, cached("sobel " + threshold, sobelFilter(threshold)),
+                image -> Drafter.makeSobel(image, threshold));
+    }
+    public UnaryOperator<BufferedImage> sobelFilter(int threshold){
+        return image -> Drafter.makeSobel(image, threshold);
     }
     public void makeRoberts(Canvas canvas, int threshold){
-        BufferedImage newImage = (Drafter.makeRoberts(canvas.getImage(), threshold));
-        canvas.setImage(newImage);
+        filterRunner.run(canvas, cached("roberts " + threshold, robertsFilter(threshold)),
+                image -> Drafter.makeRoberts(image, threshold));
+    }
+    public UnaryOperator<BufferedImage> robertsFilter(int threshold){
+        return image -> Drafter.makeRoberts(image, threshold);
+    }
+
+    /**
+     * Wraps a filter so that invoking it again on the same pixels is answered from {@link #filterCache}.
+     * Only filters applied to the document are cached: the filters returned for a preview run on a small
+     * view of the canvas, and their results would just push the document results out.
+     *
+     * @param filterId name of the filter and the values of all its parameters
+     * @param filter   filter invocation
+     */
+    private UnaryOperator<BufferedImage> cached(String filterId, UnaryOperator<BufferedImage> filter) {
+        return image -> filterCache.apply(image, filterId, filter, Drafter.getExecutor());
+    }
+
+    /**
+     * Stops the running filter, keeping the image it was applied to
+     */
+    public void cancelFilter() {
+        filterRunner.cancel();
     }
 }
@@ -0,0 +1,81 @@
+package ru.nsu.ccfit.melnikov.controller;
+
+import ru.nsu.ccfit.melnikov.model.parallel.ProgressMonitor;
+import ru.nsu.ccfit.melnikov.view.Canvas;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * Applies a filter to the canvas image on a background thread and publishes the result on the EDT.
+ * Progress of the filter's row loops is exposed through the {@code "progress"} bound property.
+ * <p>
+ * A result that implements {@link AutoCloseable}, such as a tiled image, is closed if the job is cancelled
+ * after the filter has produced it.
+ *
+ * @param <T> image representation the filter works on
+ * @author Nikita Melnikov
+ */
+public class FilterJob<T> extends SwingWorker<T, Void> {
+    private final Canvas canvas;
+    private final T source;
+    private final UnaryOperator<T> filter;
+    private final Consumer<T> publisher;
+    private final ProgressMonitor monitor = new ProgressMonitor(this::setProgress);
+
+    /**
+     * @param canvas    canvas the wait cursor is shown over
+     * @param source    image the filter is applied to
+     * @param filter    filter invocation
+     * @param publisher receives the result on the EDT
+     */
+    public FilterJob(Canvas canvas, T source, UnaryOperator<T> filter, Consumer<T> publisher) {
+        this.canvas = canvas;
+        this.source = source;
+        this.filter = filter;
+        this.publisher = publisher;
+    }
+
+    @Override
+    protected T doInBackground() throws Exception {
+        var result = monitor.run(() -> filter.apply(source));
+        if (isCancelled() && result instanceof AutoCloseable closeable)
+            closeable.close();
+        return result;
+    }
+
+    @Override
+    protected void done() {
+        canvas.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
+        if (isCancelled())
+            return;
+        try {
+            publisher.accept(get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            if (!(e.getCause() instanceof CancellationException))
+                throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Starts the filter, showing the wait cursor over the canvas until it finishes
+     */
+    public void start() {
+        canvas.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        execute();
+    }
+
+    /**
+     * Stops the filter at its next row and discards the result
+     */
+    public void stop() {
+        monitor.cancel();
+        cancel(false);
+    }
+}
@@ -0,0 +1,97 @@
+package ru.nsu.ccfit.melnikov.controller;
+
+import ru.nsu.ccfit.melnikov.model.parallel.ProgressMonitor;
+import ru.nsu.ccfit.melnikov.view.Canvas;
+
+import javax.swing.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Live preview of a filter while its parameters are being chosen.
+ * <p>
+ * The filter runs on a background thread over a downsampled copy of the visible part of the canvas and
+ * the result is painted over it. Only the newest request matters: an update cancels the computation
+ * in progress at its next row and skips the requests still queued, and results of stale requests are
+ * dropped. The document itself is not modified; the full-resolution filter runs when the user confirms.
+ *
+ * @author Nikita Melnikov
+ */
+public class FilterPreview {
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+        var thread = new Thread(runnable, "filter-preview");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Canvas canvas;
+    private Supplier<UnaryOperator<BufferedImage>> filter;
+    /**
+     * Number of the newest request, the only one whose result is shown
+     */
+    private int generation;
+    private ProgressMonitor running;
+
+    /**
+     * Shows the preview of a filter and keeps it until {@link #stop()}
+     *
+     * @param canvas canvas to preview the filter on
+     * @param filter creates the filter invocation for the current parameters
+     */
+    public void start(Canvas canvas, Supplier<UnaryOperator<BufferedImage>> filter) {
+        stop();
+        this.canvas = canvas;
+        this.filter = filter;
+        update();
+    }
+
+    /**
+     * Recomputes the preview for the current parameters; does nothing unless a preview is shown
+     */
+    public void update() {
+        if (canvas == null)
+            return;
+        if (running != null)
+            running.cancel();
+        var source = canvas.createPreviewSource();
+        if (source == null)
+            return;
+        var operation = filter.get();
+        int request = ++generation;
+        var monitor = new ProgressMonitor(percent -> {
+        });
+        running = monitor;
+        var target = canvas;
+        worker.execute(() -> {
+            if (monitor.isCancelled())
+                return;
+            BufferedImage result;
+            try {
+                result = monitor.run(() -> operation.apply(source.image()));
+            } catch (CancellationException e) {
+                return;
+            }
+            SwingUtilities.invokeLater(() -> {
+                if (request == generation)
+                    target.showPreview(result, source);
+            });
+        });
+    }
+
+    /**
+     * Cancels the computation in progress and removes the preview from the canvas
+     */
+    public void stop() {
+        if (running != null)
+            running.cancel();
+        running = null;
+        ++generation;
+        if (canvas != null)
+            canvas.clearPreview();
+        canvas = null;
+        filter = null;
+    }
+}
@@ -0,0 +1,70 @@
+package ru.nsu.ccfit.melnikov.controller;
+
+import ru.nsu.ccfit.melnikov.model.tiled.TiledImage;
+import ru.nsu.ccfit.melnikov.view.Canvas;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * Runs at most one {@link FilterJob} at a time
+ *
+ * @author Nikita Melnikov
+ */
+public class FilterRunner {
+    private final List<PropertyChangeListener> listeners = new ArrayList<>();
+    private FilterJob<?> currentJob;
+
+    /**
+     * @param listener receives {@code "progress"} and {@code "state"} changes of every job
+     */
+    public void addListener(PropertyChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Starts a filter on the canvas image unless another one is still running
+     *
+     * @param canvas canvas the result is published to
+     * @param filter filter invocation
+     * @return {@code true} if the filter was started
+     */
+    public boolean run(Canvas canvas, UnaryOperator<BufferedImage> filter) {
+        return run(canvas, filter, null);
+    }
+
+    /**
+     * Starts a filter on the canvas document unless another one is still running or the document is tiled
+     * and the filter has no tiled form
+     *
+     * @param canvas      canvas the result is published to
+     * @param filter      filter invocation on an in-memory image
+     * @param tiledFilter filter invocation on a tiled image, or {@code null} if the filter can not stream
+     * @return {@code true} if the filter was started
+     */
+    public boolean run(Canvas canvas, UnaryOperator<BufferedImage> filter, UnaryOperator<TiledImage> tiledFilter) {
+        if (isRunning() || (canvas.isTiled() && tiledFilter == null)) {
+            Toolkit.getDefaultToolkit().beep();
+            return false;
+        }
+        currentJob = canvas.isTiled()
+                ? new FilterJob<>(canvas, canvas.getTiledImage(), tiledFilter, canvas::setTiledImage)
+                : new FilterJob<>(canvas, canvas.getImage(), filter, canvas::setImage);
+        listeners.forEach(currentJob::addPropertyChangeListener);
+        currentJob.start();
+        return true;
+    }
+
+    public boolean isRunning() {
+        return currentJob != null && !currentJob.isDone();
+    }
+
+    public void cancel() {
+        if (currentJob != null)
+            currentJob.stop();
+    }
+}
@@ -1,12 +1,33 @@
 package ru.nsu.ccfit.melnikov.model;
 
+import ru.nsu.ccfit.melnikov.model.blur.BoxBlur;
+import ru.nsu.ccfit.melnikov.model.blur.SeparableBlur;
+import ru.nsu.ccfit.melnikov.model.convolution.BorderMode;
+import ru.nsu.ccfit.melnikov.model.convolution.Convolution;
+import ru.nsu.ccfit.melnikov.model.convolution.ConvolutionKernel;
+import ru.nsu.ccfit.melnikov.model.dither.DiffusionKernel;
+import ru.nsu.ccfit.melnikov.model.dither.ErrorDiffusion;
+import ru.nsu.ccfit.melnikov.model.dither.OrderedDither;
+import ru.nsu.ccfit.melnikov.model.fill.FloodFill;
+import ru.nsu.ccfit.melnikov.model.lut.ChannelLut;
+import ru.nsu.ccfit.melnikov.model.normal.NormalMap;
+import ru.nsu.ccfit.melnikov.model.parallel.BandExecutor;
+import ru.nsu.ccfit.melnikov.model.pipeline.GrayShadeStage;
+import ru.nsu.ccfit.melnikov.model.pipeline.MaskStage;
+import ru.nsu.ccfit.melnikov.model.pipeline.MedianStage;
+import ru.nsu.ccfit.melnikov.model.pipeline.NormalMapStage;
+import ru.nsu.ccfit.melnikov.model.pipeline.Pipeline;
+import ru.nsu.ccfit.melnikov.model.pipeline.SobelStage;
+import ru.nsu.ccfit.melnikov.model.resample.Kernel;
+import ru.nsu.ccfit.melnikov.model.resample.Resampler;
+import ru.nsu.ccfit.melnikov.model.tiled.TiledImage;
+import ru.nsu.ccfit.melnikov.model.warp.Rotation;
+import ru.nsu.ccfit.melnikov.model.warp.Warp;
+
 import java.awt.*;
 import java.awt.geom.AffineTransform;
 import java.awt.image.AffineTransformOp;
 import java.awt.image.BufferedImage;
-import java.util.ArrayDeque;
-import java.util.Arrays;
-import java.util.Deque;
 
 /**
  * Performs actual component drawing
@@ -14,6 +35,25 @@ import java.util.Deque;
  * @author Nikita Melnikov
  */
 public final class Drafter {
+    private static volatile BandExecutor executor = BandExecutor.common();
+
+    /**
+     * @return executor the row-parallel filters run on
+     */
+    public static BandExecutor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets the executor used by {@code maskPixels}, {@code makeWaterColored}, {@code makeSobel},
+     * {@code makeGamma}, {@code makeTwirl}, {@code getRotated}, {@code makeNormalMap} and the dithering
+     *
+     * @param executor band executor, e.g. {@link BandExecutor#serial()} to run on the calling thread
+     */
+    public static void setExecutor(BandExecutor executor) {
+        Drafter.executor = executor;
+    }
+
     /**
      * Draws a line of the specified color
      *
@@ -49,6 +89,23 @@ public final class Drafter {
         }
     }
 
+    /**
+     * Bounds of a line drawn with {@link Graphics2D} and a round stroke, or by {@link #drawLine}
+     *
+     * @param x0        the x coordinate of the starting point
+     * @param y0        the y coordinate of the starting point
+     * @param x1        the x coordinate of the end point
+     * @param y1        the y coordinate of the end point
+     * @param thickness stroke width
+     * @return rectangle holding every pixel the line may touch
+     */
+    public static Rectangle strokeBounds(int x0, int y0, int x1, int y1, int thickness) {
+        // half the stroke on either side, plus a pixel for rounding of the outline
+        int margin = thickness / 2 + 1;
+        return new Rectangle(Math.min(x0, x1) - margin, Math.min(y0, y1) - margin,
+                Math.abs(x1 - x0) + 2 * margin + 1, Math.abs(y1 - y0) + 2 * margin + 1);
+    }
+
     /**
      * Fills an area with the specified color
      *
@@ -56,861 +113,434 @@ public final class Drafter {
      * @param color specified color
      * @param x     the x coordinate of the seed point
      * @param y     the y coordinate of the seed point
+     * @return bounds of the filled pixels
      */
-    public static void fill(BufferedImage image, Color color, int x, int y) {
-        var seedColor = new Color(image.getRGB(x, y));
-        if (seedColor.equals(color)) return;
-        if (!inside(image, x, y, seedColor)) return;
-
-        Deque<Point> stack = new ArrayDeque<>();
-
-        stack.push(new Point(x, y));
-        while (!stack.isEmpty()) {
-            var p = stack.pop();
-            var lx = p.x;
-            while (inside(image, lx - 1, p.y, seedColor)) {
-                image.setRGB(lx - 1, p.y, color.getRGB());
-                --lx;
-            }
-            var rx = p.x;
-            while (inside(image, rx, p.y, seedColor)) {
-                image.setRGB(rx, p.y, color.getRGB());
-                ++rx;
-            }
-            scan(image, lx, rx - 1, p.y + 1, stack, seedColor);
-            scan(image, lx, rx - 1, p.y - 1, stack, seedColor);
-        }
+    public static Rectangle fill(BufferedImage image, Color color, int x, int y) {
+        return fill(image, color, x, y, 0);
     }
 
-    private static boolean inside(BufferedImage image, int x, int y, Color color) {
-        return 0 <= x && x < image.getWidth() &&
-                0 <= y && y < image.getHeight() &&
-                image.getRGB(x, y) == color.getRGB();
+    /**
+     * Fills an area of colors close to the seed color with the specified color
+     *
+     * @param image     drawing area
+     * @param color     specified color
+     * @param x         the x coordinate of the seed point
+     * @param y         the y coordinate of the seed point
+     * @param tolerance largest per-channel difference from the seed color that is still filled
+     * @return bounds of the filled pixels
+     */
+    public static Rectangle fill(BufferedImage image, Color color, int x, int y, int tolerance) {
+        return FloodFill.fill(image, x, y, color.getRGB(), tolerance, executor.getPool());
     }
 
-    private static void scan(BufferedImage image, int lx, int rx, int y, Deque<Point> stack, Color color) {
-        var spanAdded = false;
-
-        for (int x = lx; x <= rx; ++x) {
-            if (!inside(image, x, y, color)) {
-                spanAdded = false;
-            } else if (!spanAdded) {
-                stack.push(new Point(x, y));
-                spanAdded = true;
-            }
-        }
+    /**
+     * Floyd-Steinberg dithering into an RGB image
+     *
+     * @param image       source image
+     * @param quantCountR quantization levels of the red channel
+     * @param quantCountG quantization levels of the green channel
+     * @param quantCountB quantization levels of the blue channel
+     * @return dithered image
+     */
+    public static BufferedImage ditherImageFloydAS(BufferedImage image, int quantCountR, int quantCountG, int quantCountB) {
+        return ErrorDiffusion.dither(image, DiffusionKernel.FLOYD_STEINBERG, quantCountR, quantCountG, quantCountB,
+                BufferedImage.TYPE_INT_RGB, executor.getPool());
     }
-    public static BufferedImage ditherImageFloydAS1(BufferedImage image, int quantCountR, int quantCountG, int quantCountB){
-        int width = image.getWidth();
-        int height = image.getHeight();
-        BufferedImage newImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-        int quantIntervalR = 255 / (quantCountR - 1);
-        int quantIntervalG = 255 / (quantCountG - 1);
-        int quantIntervalB = 255 / (quantCountB - 1);
-        byte[] curRowMistakesR = new byte[width];
-        byte[] curRowMistakesG = new byte[width];
-        byte[] curRowMistakesB = new byte[width];
-        byte[] nextRowMistakesR = new byte[width];
-        byte[] nextRowMistakesG = new byte[width];
-        byte[] nextRowMistakesB = new byte[width];
-        for(int y = 0; y < height; y++){
-            byte mistakeR = 0;
-            byte mistakeG = 0;
-            byte mistakeB = 0;
-            for(int x = 0; x < width; x++){
-                int oldPixel = image.getRGB(x, y);
-                int oldA = (oldPixel >> 24) & 0xff;
-                int oldR = (oldPixel >> 16) & 0xff;
-                int oldG = (oldPixel >> 8) & 0xff;
-                int oldB = (oldPixel) & 0xff;
-                int newR = Math.round(oldR / (float)quantIntervalR + mistakeR) * quantIntervalR;
-                int newG = Math.round(oldG / (float)quantIntervalG + mistakeG) * quantIntervalG;
-                int newB = Math.round(oldB / (float)quantIntervalB + mistakeB) * quantIntervalB;
-
-                /*if (oldR / quantIntervalR == quantCountR)
-                    newR = newR - 1;]
-                if (oldG / quantIntervalG == quantCountG)
-                    newG = newG - 1;
-                if (oldB / quantIntervalB == quantCountB)
-                    newB = newB - 1;*/
-                int newPixel = (oldA << 24) & 0xFF000000 | (newR << 16) & 0x00FF0000
-                             | (newG << 8) & 0x0000FF00 | newB & 0x000000FF;
-                newImage.setRGB(x, y, newPixel);
-                mistakeR = (byte)(oldR - newR);
-                mistakeG = (byte)(oldG - newG);
-                mistakeB = (byte)(oldB - newB);
-                if(x != 0 && x != width - 1){
-                    nextRowMistakesR[x - 1] = (byte)(mistakeR * 3 / 16);
-                    nextRowMistakesG[x - 1] = (byte)(mistakeG * 3 / 16);
-                    nextRowMistakesB[x - 1] = (byte)(mistakeB * 3 / 16);
-                    nextRowMistakesR[x] = (byte)(mistakeR * 5 / 16);
-                    nextRowMistakesG[x] = (byte)(mistakeG * 5 / 16);
-                    nextRowMistakesB[x] = (byte)(mistakeB * 5 / 16);
-                    nextRowMistakesR[x + 1] = (byte)(mistakeR / 16);
-                    nextRowMistakesG[x + 1] = (byte)(mistakeG / 16);
-                    nextRowMistakesB[x + 1] = (byte)(mistakeB / 16);
-                }
-                mistakeR = (byte)(mistakeR * 7 / 16);
-                mistakeG = (byte)(mistakeG * 7 / 16);
-                mistakeB = (byte)(mistakeB * 7 / 16);
-
-            }
 
-            for(int i = 0; i < width; i ++){
-                curRowMistakesR[i] = nextRowMistakesR[i];
-                curRowMistakesG[i] = nextRowMistakesG[i];
-                curRowMistakesB[i] = nextRowMistakesB[i];
-                nextRowMistakesR[i] = 0;
-                nextRowMistakesG[i] = 0;
-                nextRowMistakesB[i] = 0;
-            }
-        }
-        return newImage;
+    /**
+     * Floyd-Steinberg dithering into an image of the source type
+     *
+     * @param image       source image
+     * @param quantCountR quantization levels of the red channel
+     * @param quantCountG quantization levels of the green channel
+     * @param quantCountB quantization levels of the blue channel
+     * @return dithered image
+     */
+    public static BufferedImage ditherImageFloydNM(BufferedImage image, int quantCountR, int quantCountG, int quantCountB) {
+        return ditherErrorDiffusion(image, DiffusionKernel.FLOYD_STEINBERG, quantCountR, quantCountG, quantCountB);
     }
 
-    private static Color getNearestPaletteColor(Color color, int redValue, int greenValue, int blueValue) {
-
-        int red = 0, green = 0, blue = 0;
-
-        if (redValue > 1) {
-            red = ((int) Math.round(color.getRed() * (redValue - 1) / 255d)) * 255 / (redValue - 1);
-        }
-        if (greenValue > 1) {
-            green = ((int) Math.round(color.getGreen() * (greenValue - 1) / 255d)) * 255 / (greenValue - 1);
-        }
-        if (blueValue > 1) {
-            blue = ((int) Math.round(color.getBlue() * (blueValue - 1) / 255d)) * 255 / (blueValue - 1);
-        }
-
-        return new Color(red, green, blue);
+    /**
+     * Error-diffusion dithering into an image of the source type
+     *
+     * @param image       source image
+     * @param kernel      error distribution
+     * @param quantCountR quantization levels of the red channel
+     * @param quantCountG quantization levels of the green channel
+     * @param quantCountB quantization levels of the blue channel
+     * @return dithered image
+     */
+    public static BufferedImage ditherErrorDiffusion(BufferedImage image, DiffusionKernel kernel,
+                                                     int quantCountR, int quantCountG, int quantCountB) {
+        return ErrorDiffusion.dither(image, kernel, quantCountR, quantCountG, quantCountB,
+                image.getType(), executor.getPool());
     }
-    public static BufferedImage ditherImageFloydAS(BufferedImage image, int quantCountR, int quantCountG, int quantCountB){
-        int width = image.getWidth();
-        int height = image.getHeight();
-        BufferedImage floyd = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
-
-        int[] red = new int[width * height];
-        int[] green = new int[width * height];
-        int[] blue = new int[width * height];
-
-        for (int y = 0; y < height; ++y) {
-            for (int x = 0; x < width; ++x) {
-                Color color = new Color(pixels[y * width + x]);
-                red[y * width + x] = color.getRed();
-                green[y * width + x] = color.getGreen();
-                blue[y * width + x] = color.getBlue();
-            }
-        }
 
-        for (int y = 0; y < height; ++y) {
-            for (int x = 0; x < width; ++x) {
-                Color color = new Color(red[y * width + x], green[y * width + x], blue[y * width + x]);
-                Color nearest = getNearestPaletteColor(color, quantCountR, quantCountG, quantCountB);
-                floyd.setRGB(x, y, nearest.getRGB());
-
-                int redDiff = color.getRed() - nearest.getRed();
-                int greenDiff = color.getGreen() - nearest.getGreen();
-                int blueDiff = color.getBlue() - nearest.getBlue();
-
-                if (y + 1 < height) {
-                    red[(y + 1) * width + x] = Math.max(0, Math.min(255, red[(y + 1) * width + x] + (int) ((double) redDiff * (5f / 16f))));
-                    green[(y + 1) * width + x] = Math.max(0, Math.min(255, green[(y + 1) * width + x] + (int) ((double) greenDiff * (5f / 16f))));
-                    blue[(y + 1) * width + x] = Math.max(0, Math.min(255, blue[(y + 1) * width + x] + (int) ((double) blueDiff * (5f / 16f))));
-
-                    if (x + 1 < width) {
-                        red[(y + 1) * width + (x + 1)] = Math.max(0, Math.min(255, red[(y + 1) * width + (x + 1)] + (int) ((double) redDiff * (1f / 16f))));
-                        green[(y + 1) * width + (x + 1)] = Math.max(0, Math.min(255, green[(y + 1) * width + (x + 1)] + (int) ((double) greenDiff * (1f / 16f))));
-                        blue[(y + 1) * width + (x + 1)] = Math.max(0, Math.min(255, blue[(y + 1) * width + (x + 1)] + (int) ((double) blueDiff * (1f / 16f))));
-                    }
-
-                    if (x - 1 >= 0) {
-                        red[(y + 1) * width + (x - 1)] = Math.max(0, Math.min(255, red[(y + 1) * width + (x - 1)] + (int) ((double) redDiff * (3f / 16f))));
-                        green[(y + 1) * width + (x - 1)] = Math.max(0, Math.min(255, green[(y + 1) * width + (x - 1)] + (int) ((double) greenDiff * (3f / 16f))));
-                        blue[(y + 1) * width + (x - 1)] = Math.max(0, Math.min(255, blue[(y + 1) * width + (x - 1)] + (int) ((double) blueDiff * (3f / 16f))));
-                    }
-                }
-
-                if (x + 1 < width) {
-                    red[y * width + (x + 1)] = Math.max(0, Math.min(255, red[y * width + (x + 1)] + (int) ((double) redDiff * (7f / 16f))));
-                    green[y * width + (x + 1)] = Math.max(0, Math.min(255, green[y * width + (x + 1)] + (int) ((double) greenDiff * (7f / 16f))));
-                    blue[y * width + (x + 1)] = Math.max(0, Math.min(255, blue[y * width + (x + 1)] + (int) ((double) blueDiff * (7f / 16f))));
-                }
-            }
-        }
-        return floyd;
-    }
+    /**
+     * Ordered dithering into an RGB image
+     *
+     * @param image      source image
+     * @param redValue   quantization levels of the red channel
+     * @param greenValue quantization levels of the green channel
+     * @param blueValue  quantization levels of the blue channel
+     * @param n          threshold matrix size
+     * @return dithered image
+     */
     public static BufferedImage ditherImageOrderedAS(BufferedImage image, int redValue, int greenValue, int blueValue, int n) {
-        int width = image.getWidth();
-        int height = image.getHeight();
-        BufferedImage ordered = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
-
-        int[] errorMatrix = getErrors(n);
-        double div = 1.0 / Math.pow(n, 2);
-        double half = 1.0 / 2.0;
-        double dr = 255.0 / (redValue - 1);
-        double dg = 255.0 / (greenValue - 1);
-        double db = 255.0 / (blueValue - 1);
-
-        for (int y = 0; y < height; ++y) {
-            for (int x = 0; x < width; ++x) {
-                Color color = new Color(pixels[y * width + x]);
-
-                double err = (errorMatrix[(x % n) * n + y % n] * div - half);
-
-                int red = Math.max(0, Math.min(255, (int) Math.round(color.getRed() + err * dr)));
-                int green = Math.max(0, Math.min(255, (int) Math.round(color.getGreen() + err * dg)));
-                int blue = Math.max(0, Math.min(255, (int) Math.round(color.getBlue() + err * db)));
-
-                Color newColor = getNearestPaletteColor(new Color(red, green, blue), redValue, greenValue, blueValue);
-                ordered.setRGB(x, y, newColor.getRGB());
-            }
-        }
-        return ordered;
+        return OrderedDither.dither(image, redValue, greenValue, blueValue, n, BufferedImage.TYPE_INT_RGB, executor);
     }
 
-    private static int[] getErrors(int n) {
-
-        int[] matrix = new int[n * n];
-
-        if (n == 1) {
-            matrix[0] = 0;
-            return matrix;
-        }
-
-        int len = n / 2;
-        int[] smaller = getErrors(len);
-
-        for (int y = 0; y < 2; ++y) {
-            for (int k = 0; k < len; ++k) {
-                for (int l = 0; l < len; ++l) {
-                    matrix[k * len * 2 + (len * y + l)] = 4 * smaller[k * len + l] + 2 * y;
-                    matrix[((len + k) * len) * 2 + (len * y + l)] = 4 * smaller[k * len + l] + 3 - 2 * y;
-                }
-            }
-        }
-        return matrix;
+    /**
+     * Ordered dithering into an image of the source type
+     *
+     * @param image      source image
+     * @param redValue   quantization levels of the red channel
+     * @param greenValue quantization levels of the green channel
+     * @param blueValue  quantization levels of the blue channel
+     * @param n          threshold matrix size
+     * @return dithered image
+     */
+    public static BufferedImage ditherImageOrderedNM(BufferedImage image, int redValue, int greenValue, int blueValue, int n) {
+        return OrderedDither.dither(image, redValue, greenValue, blueValue, n, image.getType(), executor);
     }
 
-    public static BufferedImage ditherImageOrderedNM(BufferedImage image, int redValue, int greenValue, int blueValue, int n) {
-        int width = image.getWidth();
-        int height = image.getHeight();
-        var newImage = new BufferedImage(width, height, image.getType());
-        newImage.createGraphics().drawImage(image, null, 0, 0);
-        var dr = 255.0 / (redValue - 1);
-        var dg = 255.0 / (greenValue - 1);
-        var db = 255.0 / (blueValue - 1);
-        var factor = 1.0 / Math.pow(n, 2);
-        int[] threshold = generateThresholdMatrix(n);
-
-        for (int y = 0; y < height; ++y) {
-            for (int x = 0; x < width; ++x) {
-                int oldPixel = newImage.getRGB(x, y);
-
-                double err = (threshold[(x % n) * n + y % n] * factor - 0.5);
-
-                int oldR = (oldPixel >> 16) & 0xFF;
-                int oldG = (oldPixel >> 8) & 0xFF;
-                int oldB = oldPixel & 0xFF;
-
-                int red = Math.max(0, Math.min(255, (int) Math.round(oldR + err * dr)));
-                int green = Math.max(0, Math.min(255, (int) Math.round(oldG + err * dg)));
-                int blue = Math.max(0, Math.min(255, (int) Math.round(oldB + err * db)));
-
-                int newR = Math.round(red * (redValue - 1) / 255f) * 255 / (redValue - 1);
-                int newG = Math.round(green * (greenValue - 1) / 255f) * 255 / (greenValue - 1);
-                int newB = Math.round(blue * (blueValue - 1) / 255f) * 255 / (blueValue - 1);
-
-                int newPixel = 255 << 24 | newR << 16 | newG << 8 | newB;
-                newImage.setRGB(x, y, newPixel);
-            }
-        }
+    public static BufferedImage maskPixels(BufferedImage image, double[][] mask){
+        return maskPixels(image, mask, BorderMode.CLAMP);
+    }
 
-        return newImage;
+    /**
+     * @param image  source image
+     * @param mask   convolution mask, indexed as {@code mask[horizontal][vertical]}
+     * @param border what is read past the edges of the image, black for {@link BorderMode#CONSTANT}
+     * @return convolved image
+     */
+    public static BufferedImage maskPixels(BufferedImage image, double[][] mask, BorderMode border){
+        return new Convolution(ConvolutionKernel.of(mask), border).apply(image, BufferedImage.TYPE_INT_ARGB, executor);
     }
 
-    private static int[] generateThresholdMatrix(int n) {
-        int[] matrix = new int[n * n];
+    /**
+     * Tiled counterparts of the pipeline filters stream the image strip by strip and never hold it whole
+     *
+     * @param image source image
+     * @param mask  convolution mask
+     * @return new tiled image
+     */
+    public static TiledImage maskPixels(TiledImage image, double[][] mask){
+        return Pipeline.of(new MaskStage(mask)).run(image, executor);
+    }
 
-        if (n == 1) {
-            matrix[0] = 0;
-            return matrix;
-        }
+    /**
+     * Blurs an image the way the blur dialog does: Gaussian kernels for sizes 3 and 5, a box filter otherwise
+     *
+     * @param image    source image
+     * @param maskSize mask size; the blur dialog also offers even sizes, which are rounded up to the next odd one
+     * @return blurred image
+     */
+    public static BufferedImage makeBlur(BufferedImage image, int maskSize){
+        if (maskSize % 2 == 0)
+            ++maskSize;
+        // 1D factors of the former 3x3 and 5x5 Gaussian masks
+        double[] kernel3 = {0.3078012, 0.3843969, 0.3078012};
+        double[] kernel5 = {1/16.0, 4/16.0, 6/16.0, 4/16.0, 1/16.0};
+        if (maskSize == 3)
+            return makeSeparableBlur(image, kernel3);
+        if (maskSize == 5)
+            return makeSeparableBlur(image, kernel5);
+        return makeBoxBlur(image, maskSize, 1);
+    }
 
-        int len = n / 2;
-        int[] smaller = generateThresholdMatrix(len);
+    /**
+     * Blurs an image with a separable kernel in one horizontal and one vertical pass
+     *
+     * @param image  source image
+     * @param kernel symmetric 1D kernel of odd length
+     * @return blurred image, equal to {@link #maskPixels} with the outer product of the kernel up to rounding
+     */
+    public static BufferedImage makeSeparableBlur(BufferedImage image, double[] kernel){
+        return SeparableBlur.apply(image, kernel, executor);
+    }
 
-        for (int y = 0; y < 2; ++y) {
-            for (int k = 0; k < len; ++k) {
-                for (int l = 0; l < len; ++l) {
-                    matrix[k * len * 2 + (len * y + l)] = 4 * smaller[k * len + l] + 2 * y;
-                    matrix[((len + k) * len) * 2 + (len * y + l)] = 4 * smaller[k * len + l] + 3 - 2 * y;
-                }
-            }
-        }
+    /**
+     * Blurs an image with stacked box filters using running sums, independent of the window size
+     *
+     * @param image  source image
+     * @param size   odd window size
+     * @param passes number of box passes, three approximate a Gaussian
+     * @return blurred image
+     */
+    public static BufferedImage makeBoxBlur(BufferedImage image, int size, int passes){
+        return BoxBlur.apply(image, size, passes, executor);
+    }
 
-        return matrix;
+    public static BufferedImage makeGrayShaded(BufferedImage image){
+        return grayShade().run(image, BufferedImage.TYPE_INT_ARGB, executor);
     }
 
-    public static BufferedImage ditherImageFloydNM(BufferedImage image, int quantCountR, int quantCountG, int quantCountB) {
-        int width = image.getWidth();
-        int height = image.getHeight();
-        var newImage = new BufferedImage(width, height, image.getType());
-        newImage.createGraphics().drawImage(image, null, 0, 0);
-        int oldPixel, newPixel, neighbourPixel;
-        int oldR, oldG, oldB;
-        int newR, newG, newB;
-        int errR, errG, errB;
-        int neighbourR, neighbourG, neighbourB;
-
-        for (int y = 0; y < height; ++y) {
-            for (int x = 0; x < width; ++x) {
-                oldPixel = newImage.getRGB(x, y);
-
-                oldR = (oldPixel >> 16) & 0xFF;
-                oldG = (oldPixel >> 8) & 0xFF;
-                oldB = oldPixel & 0xFF;
-
-                newR = Math.round(oldR * (quantCountR - 1) / 255f) * 255 / (quantCountR - 1);
-                newG = Math.round(oldG * (quantCountG - 1) / 255f) * 255 / (quantCountG - 1);
-                newB = Math.round(oldB * (quantCountB - 1) / 255f) * 255 / (quantCountB - 1);
-
-                newPixel = 255 << 24 | newR << 16 | newG << 8 | newB;
-
-                newImage.setRGB(x, y, newPixel);
-
-                errR = oldR - newR;
-                errG = oldG - newG;
-                errB = oldB - newB;
-
-                if (x < newImage.getWidth() - 1) {
-                    var factor = 7.0 / 16;
-                    neighbourPixel = newImage.getRGB(x + 1, y);
-                    neighbourR = Math.max(0, Math.min(((neighbourPixel >> 16) & 0xFF) + (int) (errR * factor), 255));
-                    neighbourG = Math.max(0, Math.min(((neighbourPixel >> 8) & 0xFF) + (int) (errG * factor), 255));
-                    neighbourB = Math.max(0, Math.min((neighbourPixel & 0xFF) + (int) (errB * factor), 255));
-
-                    neighbourPixel = 255 << 24 | neighbourR << 16 | neighbourG << 8 | neighbourB;
-                    newImage.setRGB(x + 1, y, neighbourPixel);
-                }
-                if (x < newImage.getWidth() - 1 && y < newImage.getHeight() - 1) {
-                    var factor = 1.0 / 16;
-                    neighbourPixel = newImage.getRGB(x + 1, y + 1);
-                    neighbourR = Math.max(0, Math.min(((neighbourPixel >> 16) & 0xFF) + (int) (errR * factor), 255));
-                    neighbourG = Math.max(0, Math.min(((neighbourPixel >> 8) & 0xFF) + (int) (errG * factor), 255));
-                    neighbourB = Math.max(0, Math.min((neighbourPixel & 0xFF) + (int) (errB * factor), 255));
-
-                    neighbourPixel = 255 << 24 | neighbourR << 16 | neighbourG << 8 | neighbourB;
-                    newImage.setRGB(x + 1, y + 1, neighbourPixel);
-                }
-                if (y < newImage.getHeight() - 1) {
-                    var factor = 5.0 / 16;
-                    neighbourPixel = newImage.getRGB(x, y + 1);
-                    neighbourR = Math.max(0, Math.min(((neighbourPixel >> 16) & 0xFF) + (int) (errR * factor), 255));
-                    neighbourG = Math.max(0, Math.min(((neighbourPixel >> 8) & 0xFF) + (int) (errG * factor), 255));
-                    neighbourB = Math.max(0, Math.min((neighbourPixel & 0xFF) + (int) (errB * factor), 255));
-
-                    neighbourPixel = 255 << 24 | neighbourR << 16 | neighbourG << 8 | neighbourB;
-                    newImage.setRGB(x, y + 1, neighbourPixel);
-                }
-                if (x > 0 && y < newImage.getHeight() - 1) {
-                    var factor = 3.0 / 16;
-                    neighbourPixel = newImage.getRGB(x - 1, y + 1);
-                    neighbourR = Math.max(0, Math.min(((neighbourPixel >> 16) & 0xFF) + (int) (errR * factor), 255));
-                    neighbourG = Math.max(0, Math.min(((neighbourPixel >> 8) & 0xFF) + (int) (errG * factor), 255));
-                    neighbourB = Math.max(0, Math.min((neighbourPixel & 0xFF) + (int) (errB * factor), 255));
-
-                    neighbourPixel = 255 << 24 | neighbourR << 16 | neighbourG << 8 | neighbourB;
-                    newImage.setRGB(x - 1, y + 1, neighbourPixel);
-                }
-            }
-        }
+    public static TiledImage makeGrayShaded(TiledImage image){
+        return grayShade().run(image, executor);
+    }
 
-        return newImage;
+    /**
+     * Pipelines of the filters that read a few rows around every output row; besides running them on images,
+     * they can be fused with other stages or streamed while an image is decoded
+     *
+     * @return pipeline equal to {@link #makeGrayShaded(BufferedImage)}
+     */
+    public static Pipeline grayShade(){
+        return Pipeline.of(new GrayShadeStage());
     }
-    public static BufferedImage maskPixels(BufferedImage image, double[][] mask){
-        BufferedImage newImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
-        int maskRadius = mask.length / 2;
-        for(int y = 0; y < image.getHeight(); y++){
-            for(int x = 0; x < image.getWidth(); x++){
-                int oldPixel = image.getRGB(x, y);
-                int oldA = (oldPixel >> 24) & 0xff;
-                double newR = 0, newG = 0, newB = 0;
-                boolean border = false;
-                for(int vertical = -maskRadius; vertical <= maskRadius; vertical++){
-                    for(int horizontal = -maskRadius; horizontal <= maskRadius; horizontal++){
-                        int currentX = x + horizontal;
-                        int currentY = y + vertical;
-                        if (currentX < 0 || currentY < 0 || currentX >= image.getWidth() || currentY >= image.getHeight()) {
-                            newImage.setRGB(x, y, oldPixel);
-                            horizontal = maskRadius + 1;
-                            vertical = maskRadius + 1;
-                            border = true;
-                            continue;
-                        }
-                        int currentPixel = image.getRGB(currentX, currentY);
-                        int currentR = (currentPixel >> 16) & 0xff;
-                        int currentG = (currentPixel >> 8) & 0xff;
-                        int currentB = (currentPixel) & 0xff;
-                        newR += (double)currentR * mask[horizontal + maskRadius][vertical + maskRadius];
-                        newG += (double)currentG * mask[horizontal + maskRadius][vertical + maskRadius];
-                        newB += (double)currentB * mask[horizontal + maskRadius][vertical + maskRadius];
-                    }
-                }
-                if(border)
-                    continue;
-                newR = newR < 0 ? 0 : newR;
-                newG = newG < 0 ? 0 : newG;
-                newB = newB < 0 ? 0 : newB;
-                newR = newR > 255 ? 255 : newR;
-                newG = newG > 255 ? 255 : newG;
-                newB = newB > 255 ? 255 : newB;
-                int newPixel = (oldA << 24) & 0xFF000000 | ((char)newR << 16) & 0x00FF0000
-                             | ((char)newG << 8) & 0x0000FF00 | ((char)newB) & 0x000000FF;
-                newImage.setRGB(x, y, newPixel);
-            }
-        }
-        return newImage;
+
+    public static BufferedImage makeWaterColored(BufferedImage image, int maskRadius){
+        return waterColor(maskRadius).run(image, BufferedImage.TYPE_INT_ARGB, executor);
     }
 
-    public static BufferedImage makeGrayShaded(BufferedImage image){
-        BufferedImage newImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
-        for(int y = 0; y < image.getHeight(); y++){
-            for(int x = 0; x < image.getWidth(); x++){
-                int oldPixel = image.getRGB(x, y);
-                int oldA = (oldPixel >> 24) & 0xff;
-                int oldR = (oldPixel >> 16) & 0xff;
-                int oldG = (oldPixel >> 8) & 0xff;
-                int oldB = oldPixel & 0xff;
-                int newGrayShade = (int)(oldR * 0.30 + oldG * 0.59 + oldB * 0.11);
-
-                int newPixel = (oldA << 24) & 0xFF000000 | ((char)newGrayShade << 16) & 0x00FF0000
-                        | ((char)newGrayShade << 8) & 0x0000FF00 | ((char)newGrayShade) & 0x000000FF;
-                newImage.setRGB(x, y, newPixel);
-            }
-        }
-        return newImage;
+    public static TiledImage makeWaterColored(TiledImage image, int maskRadius){
+        return waterColor(maskRadius).run(image, executor);
     }
 
-    public static BufferedImage makeWaterColored(BufferedImage image, int maskRadius){
-        BufferedImage newImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
-        int numOfNeighbours = (maskRadius * 2 + 1) * (maskRadius * 2 + 1);
-        int[] neighboursR = new int[numOfNeighbours];
-        int[] neighboursG = new int[numOfNeighbours];
-        int[] neighboursB = new int[numOfNeighbours];
-        for(int y = 0; y < image.getHeight(); y++){
-            for(int x = 0; x < image.getWidth(); x++){
-                int oldPixel = image.getRGB(x, y);
-                int oldA = (oldPixel >> 24) & 0xff;
-                double newR = 0, newG = 0, newB = 0;
-                boolean border = false;
-                for(int vertical = -maskRadius; vertical <= maskRadius; vertical++){
-                    for(int horizontal = -maskRadius; horizontal <= maskRadius; horizontal++){
-                        int currentX = x + horizontal;
-                        int currentY = y + vertical;
-                        if (currentX < 0 || currentY < 0 || currentX >= image.getWidth() || currentY >= image.getHeight()) {
-                            newImage.setRGB(x, y, oldPixel);
-                            horizontal = maskRadius + 1;
-                            vertical = maskRadius + 1;
-                            border = true;
-                            continue;
-                        }
-                        int currentPixel = image.getRGB(x + horizontal, y + vertical);
-                        int currentR = (currentPixel >> 16) & 0xff;
-                        int currentG = (currentPixel >> 8) & 0xff;
-                        int currentB = (currentPixel) & 0xff;
-                        int neighbourIndex = (vertical + maskRadius) * (maskRadius * 2 + 1) + horizontal + maskRadius;
-                        neighboursR[neighbourIndex] = currentR;
-                        neighboursG[neighbourIndex] = currentG;
-                        neighboursB[neighbourIndex] = currentB;
-                    }
-                }
-                if(border)
-                    continue;
-                Arrays.sort(neighboursR);
-                Arrays.sort(neighboursG);
-                Arrays.sort(neighboursB);
-                newR = neighboursR[numOfNeighbours / 2];
-                newG = neighboursG[numOfNeighbours / 2];
-                newB = neighboursB[numOfNeighbours / 2];
-                int newPixel = (oldA << 24) & 0xFF000000 | ((char)newR << 16) & 0x00FF0000
-                        | ((char)newG << 8) & 0x0000FF00 | ((char)newB) & 0x000000FF;
-                newImage.setRGB(x, y, newPixel);
-            }
-        }
-        return Drafter.makeSharpness(newImage);
+    public static Pipeline waterColor(int maskRadius){
+        double[][] maskRezko = {{0, -1, 0},
+                {-1, 5, -1},
+                {0, -1 , 0}};
+        return Pipeline.of(new MedianStage(maskRadius), new MaskStage(maskRezko));
     }
     public static BufferedImage makeZoom(BufferedImage image, int times){
-        int width = image.getWidth();
-        int height = image.getHeight();
-        BufferedImage zoomed = new BufferedImage(width * times, height * times, BufferedImage.TYPE_INT_RGB);
-        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
-        int maxZoomSize = 40000;
-        for (int y = 0; y < height; ++y) {
-            for (int x = 0; x < width; ++x) {
-                Color first = new Color(pixels[y * width + x]);
-                Color second;
-                if (x < width - 1) {
-                    second = new Color(pixels[y * width + x + 1]);
-                } else {
-                    second = first;
-                }
-
-                int red = first.getRed();
-                int green = first.getGreen();
-                int blue = first.getBlue();
-
-                int dR = (second.getRed() - first.getRed()) / times;
-                int dG = (second.getGreen() - first.getGreen()) / times;
-                int dB = (second.getBlue() - first.getBlue()) / times;
-
-                for (int k = 0; k < times; k++) {
-                    zoomed.setRGB(x * times + k, y * times, new Color(red, green, blue).getRGB());
-
-                    red += dR;
-                    green += dG;
-                    blue += dB;
-                }
-            }
-        }
+        return makeZoom(image, times, AffineTransformOp.TYPE_BILINEAR);
+    }
 
-        for (int y = 0; y < height; ++y) {
-            for (int x = 0; x < width * times; ++x) {
-                Color first = new Color(zoomed.getRGB(x, y * times));
-                Color second;
-                if (y < height - 1) {
-                    second = new Color(zoomed.getRGB(x, y * times + times));
-                } else {
-                    second = first;
-                }
-                int red = first.getRed();
-                int green = first.getGreen();
-                int blue = first.getBlue();
-
-                int dR = (second.getRed() - first.getRed()) / times;
-                int dG = (second.getGreen() - first.getGreen()) / times;
-                int dB = (second.getBlue() - first.getBlue()) / times;
-
-                for (int k = 0; k < times; k++) {
-                    zoomed.setRGB(x, y * times + k, new Color(red, green, blue).getRGB());
-
-                    red += dR;
-                    green += dG;
-                    blue += dB;
-                }
-            }
-        }
+    /**
+     * Scales an image up {@code times} times, keeping at most the central 40000 x 40000 pixels of the result;
+     * only the kept pixels are computed
+     *
+     * @param image             source image
+     * @param times             scale factor
+     * @param interpolationType {@link AffineTransformOp} interpolation type or {@link Kernel#TYPE_LANCZOS3}
+     * @return zoomed image
+     */
+    public static BufferedImage makeZoom(BufferedImage image, int times, int interpolationType){
+        int maxZoomSize = 40000;
+        int zoomedWidth = image.getWidth() * times;
+        int zoomedHeight = image.getHeight() * times;
+        var region = new Rectangle(zoomedWidth / 2 - maxZoomSize / 2, zoomedHeight / 2 - maxZoomSize / 2,
+                maxZoomSize, maxZoomSize).intersection(new Rectangle(0, 0, zoomedWidth, zoomedHeight));
+        return Resampler.resample(image, zoomedWidth, zoomedHeight, region, Kernel.of(interpolationType),
+                BufferedImage.TYPE_INT_RGB, executor);
+    }
 
-        int startX = width * times / 2 - maxZoomSize / 2;
-        int startY = height * times / 2 - maxZoomSize / 2;
-
-        if (maxZoomSize > width * times && maxZoomSize > height * times) {
-            return zoomed;
-        } else if (maxZoomSize > width * times) {
-            return zoomed.getSubimage(0, startY, width * times, maxZoomSize);
-        } else if (maxZoomSize > height * times) {
-            return zoomed.getSubimage(startX, 0, maxZoomSize, height * times);
-        } else {
-            return zoomed.getSubimage(startX, startY, maxZoomSize, maxZoomSize);
-        }
+    /**
+     * @param image             source image
+     * @param width             width of the result
+     * @param height            height of the result
+     * @param interpolationType {@link AffineTransformOp} interpolation type or {@link Kernel#TYPE_LANCZOS3}
+     * @return image scaled to the size
+     */
+    public static BufferedImage makeScaled(BufferedImage image, int width, int height, int interpolationType){
+        return Resampler.resample(image, width, height, new Rectangle(0, 0, width, height),
+                Kernel.of(interpolationType), image.getType(), executor);
     }
+
     public static BufferedImage getRotated(BufferedImage image, int degree){
+        return getRotated(image, degree, AffineTransformOp.TYPE_NEAREST_NEIGHBOR);
+    }
+
+    /**
+     * Rotates an image about its centre into a canvas large enough to hold it; the corners are white
+     *
+     * @param image             source image
+     * @param degree            angle in degrees
+     * @param interpolationType {@link AffineTransformOp} interpolation type
+     * @return rotated image
+     */
+    public static BufferedImage getRotated(BufferedImage image, int degree, int interpolationType){
+        if (degree % 90 == 0)
+            return Rotation.rotateQuarters(image, degree / 90, image.getType(), executor);
         double angle = Math.toRadians(degree);
         double sin = Math.sin(angle);
         double cos = Math.cos(angle);
 
-        int newH = (int) (image.getWidth()*Math.abs(sin) + image.getHeight()*Math.abs(cos));
-        int newW = (int) (image.getWidth()*Math.abs(cos) + image.getHeight()*Math.abs(sin));
-
-        BufferedImage newImage = new BufferedImage(newW, newH, image.getType());
-        Graphics2D g2d = newImage.createGraphics();
-        g2d.setColor(Color.WHITE);
-        g2d.fillRect(0, 0, newW, newH);
-
-        for(int x = 0; x < newW; x++) {
-            for(int y = 0; y < newH; y++) {
-                int newX = (int) ((x - newW/2)*cos - (y - newH/2)*sin) + image.getWidth() / 2;
-                int newY = (int) ((x - newW/2)*sin + (y - newH/2)*cos) + image.getHeight() / 2;
-
-                int color = 0;
-                if(newX > 0 && newY > 0 && newX < image.getWidth() && newY < image.getHeight())
-                    color = image.getRGB(newX, newY);
-                else
-                    color = -1;
-
-                newImage.setRGB(x, y, color);
-            }
-        }
-
-        return newImage;
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int newH = (int) (width*Math.abs(sin) + height*Math.abs(cos));
+        int newW = (int) (width*Math.abs(cos) + height*Math.abs(sin));
+        double centerX = (width - 1) / 2.0;
+        double centerY = (height - 1) / 2.0;
+        double newCenterX = (newW - 1) / 2.0;
+        double newCenterY = (newH - 1) / 2.0;
+
+        var map = Warp.coordinates("rotation " + degree, width, height, newW, newH, (x, y, point) -> {
+            double newX = (x - newCenterX)*cos - (y - newCenterY)*sin + centerX;
+            double newY = (x - newCenterX)*sin + (y - newCenterY)*cos + centerY;
+            boolean inside = newX > -0.5 && newY > -0.5 && newX < width - 0.5 && newY < height - 0.5;
+            point[0] = inside ? newX : Double.NaN;
+            point[1] = inside ? newY : Double.NaN;
+        }, executor);
+        return Warp.apply(image, map, interpolationType, -1, image.getType(), executor);
     }
 
-    private static float height(BufferedImage image, int width, int height, int x, int y) {
-        if (x >= width)  x %= width;
-        while (x < 0)    x += width;
-        if (y >= height) y %= height;
-        while (y < 0)    y += height;
-
-        return (image.getRGB(x, y)) / 255.0f;
+    /**
+     * Rotates an image like {@link #getRotated(BufferedImage, int, int)}, but by three shears that resample
+     * whole rows with shared weights; see {@link Rotation}
+     *
+     * @param image             source image
+     * @param degree            angle in degrees
+     * @param interpolationType {@link AffineTransformOp} interpolation type of the shears
+     * @return rotated image
+     */
+    public static BufferedImage getRotatedByShears(BufferedImage image, int degree, int interpolationType){
+        if (degree % 90 == 0)
+            return Rotation.rotateQuarters(image, degree / 90, image.getType(), executor);
+        return Rotation.rotate(image, degree, interpolationType, -1, image.getType(), executor);
     }
 
-    private static int textureCoordinateToRgb(float value)
-    {
-        return (int)((value + 1.0) * (255.0 / 2.0));
+    public static BufferedImage makeNormalMap(BufferedImage image) {
+        return makeNormalMap(image, NormalMap.DEFAULT_STRENGTH, false);
     }
 
-    private static int calculateNormal(BufferedImage image, int width, int height, int x, int z) {
-        float strength = 8.0f;
-
-        float tl = height(image, width, height, x-1, z-1);
-        float  l = height(image, width, height, x-1, z);
-        float bl = height(image, width, height, x-1, z+1);
-        float  t = height(image, width, height, x, z-1);
-        float  b = height(image, width, height, x, z+1);
-        float tr = height(image, width, height, x+1, z-1);
-        float  r = height(image, width, height, x+1, z);
-        float br = height(image, width, height, x+1, z+1);
-
-        float dX = (tr + 2.0f * r + br) - (tl + 2.0f * l + bl);
-        float dY = (bl + 2.0f * b + br) - (tl + 2.0f * t + tr);
-        float dZ = 1.0f / strength;
-        float norm = (float)Math.sqrt(dX * dX + dY * dY + dZ * dZ);
-        dX /= norm;
-        dY /= norm;
-        dZ /= norm;
-        int normal = 0xFF000000 | ((char)textureCoordinateToRgb(dX) << 16) & 0x00FF0000
-                | ((char)textureCoordinateToRgb(dY) << 8) & 0x0000FF00 | ((char)textureCoordinateToRgb(dZ)) & 0x000000FF;
-        //n = glm::normalize(n);
-
-        return normal;
+    /**
+     * @param image    height field
+     * @param strength steepness of the relief
+     * @param tileable whether the edges wrap around, for textures that tile
+     * @return normal map, see {@link NormalMap}
+     */
+    public static BufferedImage makeNormalMap(BufferedImage image, float strength, boolean tileable) {
+        return new NormalMap(strength, tileable).apply(image, executor);
     }
 
-    public static BufferedImage makeNormalMap(BufferedImage image) {
-        int width = image.getWidth();
-        int height = image.getHeight();
-        //BufferedImage heightMap = Drafter.makeEmbossing(image, 0);
-        BufferedImage heightMap = Drafter.makeGrayShaded(image);
-        BufferedImage normalMap = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        double[][] maskShnobelH = {{1, 0, -1},
-                {2, 0, -2},
-                {1, 0, -1}};
-        double[][] maskShnobelV = {{1, 2, 1},
-                {0, 0, -0},
-                {-1, -2, -1}};
-        for (int x = 1; x < width - 1; x++) {
-            for (int y = 1; y < height - 1; y++) {
-                int normal = calculateNormal(image, width, height, x, y);
-                int newPixel = normal;
-                normalMap.setRGB(x, y, newPixel);
-            }
-        }
+    public static TiledImage makeNormalMap(TiledImage image, float strength) {
+        return normalMap(strength).run(image, executor);
+    }
 
-        return normalMap;
+    /**
+     * @return pipeline equal to {@link #makeNormalMap(BufferedImage, float, boolean)} with edges that repeat
+     */
+    public static Pipeline normalMap(float strength) {
+        return Pipeline.of(new NormalMapStage(strength));
     }
+
     public static BufferedImage makeTwirl(BufferedImage image, double angle) {
-        int centerX = image.getWidth() / 2;
-        int centerY = image.getHeight() / 2;
+        return makeTwirl(image, angle, AffineTransformOp.TYPE_NEAREST_NEIGHBOR);
+    }
+
+    /**
+     * Twists the disc inscribed in an image about its centre, by {@code angle} at the centre and by nothing
+     * at the edge of the disc
+     *
+     * @param image             source image
+     * @param angle             angle in radians
+     * @param interpolationType {@link AffineTransformOp} interpolation type
+     * @return twirled image
+     */
+    public static BufferedImage makeTwirl(BufferedImage image, double angle, int interpolationType) {
         int width = image.getWidth();
         int height = image.getHeight();
-        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                int newX, newY;
-                double dx = x - centerX;
-                double dy = y - centerY;
-                double radius = Math.min(centerX, centerY);
-                double radius2 = radius * radius;
-                double distance = dx * dx + dy * dy;
-
-                if (distance > radius2) {
-                    newX = x;
-                    newY = y;
-                } else {
-                    distance = Math.sqrt(distance);
-                    var a = Math.atan2(dy, dx) + angle * (radius - distance) / radius;
-                    newX = centerX + (int) (distance * Math.cos(a));
-                    newY = centerY + (int) (distance * Math.sin(a));
-                }
-                result.setRGB(x, y, image.getRGB(newX, newY));
+        double centerX = (width - 1) / 2.0;
+        double centerY = (height - 1) / 2.0;
+        double radius = Math.min(centerX, centerY);
+        double radius2 = radius * radius;
+
+        var map = Warp.coordinates("twirl " + angle, width, height, width, height, (x, y, point) -> {
+            double dx = x - centerX;
+            double dy = y - centerY;
+            double distance = dx * dx + dy * dy;
+            if (distance >= radius2) {
+                point[0] = x;
+                point[1] = y;
+                return;
             }
-        }
-
-        return result;
+            distance = Math.sqrt(distance);
+            var a = Math.atan2(dy, dx) + angle * (radius - distance) / radius;
+            point[0] = centerX + distance * Math.cos(a);
+            point[1] = centerY + distance * Math.sin(a);
+        }, executor);
+        return Warp.apply(image, map, interpolationType, 0, BufferedImage.TYPE_INT_RGB, executor);
     }
     public static BufferedImage makeEmbossing(BufferedImage image, int offset){
+        return embossing(offset).run(image, BufferedImage.TYPE_INT_ARGB, executor);
+    }
+    public static TiledImage makeEmbossing(TiledImage image, int offset){
+        return embossing(offset).run(image, executor);
+    }
+    public static Pipeline embossing(int offset){
         double[][] maskBorder = {{0, 1, 0},
                 {-1, 0, 1},
                 {0, -1, 0}};
-        return offsetImage(maskPixels(Drafter.makeGrayShaded(image), maskBorder), offset);
+        return Pipeline.of(new GrayShadeStage(), new MaskStage(maskBorder), ChannelLut.offset(offset));
     }
     public static BufferedImage makeSharpness(BufferedImage image){
+        return sharpness().run(image, BufferedImage.TYPE_INT_ARGB, executor);
+    }
+    public static TiledImage makeSharpness(TiledImage image){
+        return sharpness().run(image, executor);
+    }
+    public static Pipeline sharpness(){
         double[][] maskRezko = {{0, -1, 0},
                 {-1, 5, -1},
                 {0, -1 , 0}};
-        return maskPixels(image, maskRezko);
+        return Pipeline.of(new MaskStage(maskRezko));
     }
     public static BufferedImage makeSobel(BufferedImage image, int threshold){
-        double[][] maskShnobelH = {{1, 0, -1},
-                                   {2, 0, -2},
-                                   {1, 0, -1}};
-        double[][] maskShnobelV = {{-1, -2, -1},
-                                   {0, 0, 0},
-                                   {1, 2, 1}};
-
-        BufferedImage newImage = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
-
-        for(int  x = 1; x < image.getWidth() - 1; x++)
-        {
-            for(int y = 1; y < image.getHeight() - 1; y++)
-            {
-                int gxRed = 0, gyRed = 0;
-                int gxGreen = 0, gyGreen = 0;
-                int gxBlue = 0, gyBlue = 0;
-
-                for(int i = -1; i <=1; i++)
-                {
-                    for(int j = -1; j <= 1; j++)
-                    {
-                        int curColor = image.getRGB(x + i, y + j);
-
-                        int red = (curColor >> 16) & 0xFF;
-                        int green = (curColor >> 8) & 0xFF;
-                        int blue = curColor & 0xFF;
-
-                        int grayRed = (int) (0.299 * red + 0.587 * 0 + 0.114 * 0);
-                        int grayGreen = (int) (0.299 * 0 + 0.587 * green + 0.114 * 0);
-                        int grayBlue = (int) (0.299 * 0 + 0.587 * 0 + 0.114 * blue);
-
-                        gxRed += maskShnobelV[i + 1][j + 1] * grayRed;
-                        gyRed += maskShnobelH[i + 1][j + 1] * grayRed;
-                        gxGreen += maskShnobelV[i + 1][j + 1] * grayGreen;
-                        gyGreen += maskShnobelH[i + 1][j + 1] * grayGreen;
-                        gxBlue += maskShnobelV[i + 1][j + 1] * grayBlue;
-                        gyBlue += maskShnobelH[i + 1][j + 1] * grayBlue;
-                    }
-                }
-
-                int magnitudeRed = (int) Math.sqrt(gxRed * gxRed + gyRed * gyRed);
-                int magnitudeGreen = (int) Math.sqrt(gxGreen * gxGreen + gyGreen * gyGreen);
-                int magnitudeBlue = (int) Math.sqrt(gxBlue * gxBlue + gyBlue * gyBlue);
-
-                int res;
-                if(magnitudeRed > threshold && magnitudeGreen > threshold && magnitudeBlue > threshold)
-                    res = new Color(255, 255, 255).getRGB();
-                else
-                    res = new Color(0, 0, 0).getRGB();
-
-                newImage.setRGB(x, y, res);
-            }
-        }
-
-        return newImage;
+        return sobel(threshold).run(image, image.getType(), executor);
+    }
+    public static TiledImage makeSobel(TiledImage image, int threshold){
+        return sobel(threshold).run(image, executor);
+    }
+    public static Pipeline sobel(int threshold){
+        return Pipeline.of(new SobelStage(threshold));
     }
     public static BufferedImage makeSobel1(BufferedImage image, int threshold){
+        return sobel1(threshold).run(image, BufferedImage.TYPE_INT_ARGB, executor);
+    }
+    public static TiledImage makeSobel1(TiledImage image, int threshold){
+        return sobel1(threshold).run(image, executor);
+    }
+    public static Pipeline sobel1(int threshold){
         double[][] maskShnobelH = {{1, 0, -1},
                 {2, 0, -2},
                 {1, 0, -1}};
-        return binarizePixels(maskPixels(Drafter.makeGrayShaded(image), maskShnobelH), threshold);
+        return Pipeline.of(new GrayShadeStage(), new MaskStage(maskShnobelH), ChannelLut.threshold(threshold));
     }
     public static BufferedImage makeRoberts(BufferedImage image, int threshold){
+        return roberts(threshold).run(image, BufferedImage.TYPE_INT_ARGB, executor);
+    }
+    public static TiledImage makeRoberts(TiledImage image, int threshold){
+        return roberts(threshold).run(image, executor);
+    }
+    public static Pipeline roberts(int threshold){
         double[][] maskRoberts = {{1, 0, 0},
                 {0, 0, 0},
                 {0, 0, -1}};
-        return binarizePixels(maskPixels(Drafter.makeGrayShaded(image), maskRoberts), threshold);
+        return Pipeline.of(new GrayShadeStage(), new MaskStage(maskRoberts), ChannelLut.threshold(threshold));
     }
     public static BufferedImage makeInverse(BufferedImage image){
-        BufferedImage newImage = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
-        int width = image.getWidth();
-        int height = image.getHeight();
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                int oldPixel = image.getRGB(x, y);
-                int oldA = (oldPixel >> 24) & 0xff;
-                int oldR = (oldPixel >> 16) & 0xff;
-                int oldG = (oldPixel >> 8) & 0xff;
-                int oldB = oldPixel & 0xff;
-                int newR = 255 - oldR;
-                int newG = 255 - oldG;
-                int newB = 255 - oldB;
-                int newPixel = (oldA << 24) & 0xFF000000 | ((char)newR << 16) & 0x00FF0000
-                        | ((char)newG << 8) & 0x0000FF00 | ((char)newB) & 0x000000FF;
-                newImage.setRGB(x, y, newPixel);
-            }
-        }
-        return newImage;
+        return applyLut(image, ChannelLut.inverse());
     }
-    public static BufferedImage makeGamma(BufferedImage image, double gamma){
-        BufferedImage newImage = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
-        int width = image.getWidth();
-        int height = image.getHeight();
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                int oldPixel = image.getRGB(x, y);
-                int oldA = (oldPixel >> 24) & 0xff;
-                int oldR = (oldPixel >> 16) & 0xff;
-                int oldG = (oldPixel >> 8) & 0xff;
-                int oldB = oldPixel & 0xff;
-                int newR = (int)((Math.pow(oldR / 255.0, gamma)) * 255);
-                int newG = (int)((Math.pow(oldG / 255.0, gamma)) * 255);
-                int newB = (int)((Math.pow(oldB / 255.0, gamma)) * 255);
-
-                int newPixel = (oldA << 24) & 0xFF000000 | ((char)newR << 16) & 0x00FF0000
-                        | ((char)newG << 8) & 0x0000FF00 | ((char)newB) & 0x000000FF;
-                newImage.setRGB(x, y, newPixel);
-            }
-        }
-        return newImage;
+    public static TiledImage makeInverse(TiledImage image){
+        return applyLut(image, ChannelLut.inverse());
     }
-    private static BufferedImage binarizePixels(BufferedImage image, int threshold){
-        BufferedImage newImage = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
-        int width = image.getWidth();
-        int height = image.getHeight();
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                int oldPixel = image.getRGB(x, y);
-                int oldA = (oldPixel >> 24) & 0xff;
-                int oldR = (oldPixel >> 16) & 0xff;
-                int oldG = (oldPixel >> 8) & 0xff;
-                int oldB = oldPixel & 0xff;
-                int newR = oldR > threshold ? 255 : 0;
-                int newG = oldG > threshold ? 255 : 0;
-                int newB = oldB > threshold ? 255 : 0;
-                int newPixel = (oldA << 24) & 0xFF000000 | ((char)newR << 16) & 0x00FF0000
-                        | ((char)newG << 8) & 0x0000FF00 | ((char)newB) & 0x000000FF;
-                newImage.setRGB(x, y, newPixel);
-            }
-        }
-        return newImage;
+    public static BufferedImage makeGamma(BufferedImage image, double gamma){
+        return applyLut(image, ChannelLut.gamma(gamma));
     }
-    private static BufferedImage offsetImage(BufferedImage image, int offset){
-        BufferedImage newImage = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
-        int width = image.getWidth();
-        int height = image.getHeight();
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                int oldPixel = image.getRGB(x, y);
-                int oldA = (oldPixel >> 24) & 0xff;
-                int oldR = (oldPixel >> 16) & 0xff;
-                int oldG = (oldPixel >> 8) & 0xff;
-                int oldB = oldPixel & 0xff;
-                int newR = oldR + offset;
-                int newG = oldG + offset;
-                int newB = oldB + offset;
-                newR = Math.max(newR, 0);
-                newG = Math.max(newG, 0);
-                newB = Math.max(newB, 0);
-                newR = Math.min(newR, 255);
-                newG = Math.min(newG, 255);
-                newB = Math.min(newB, 255);
-                int newPixel = (oldA << 24) & 0xFF000000 | ((char)newR << 16) & 0x00FF0000
-                        | ((char)newG << 8) & 0x0000FF00 | ((char)newB) & 0x000000FF;
-                newImage.setRGB(x, y, newPixel);
-            }
-        }
-        return newImage;
+    public static TiledImage makeGamma(TiledImage image, double gamma){
+        return applyLut(image, ChannelLut.gamma(gamma));
     }
 
+    /**
+     * Applies a point operation in one pass; compose several operations with {@link ChannelLut#andThen(ChannelLut)}
+     *
+     * @param image source image
+     * @param lut   per-channel lookup table
+     * @return new image of a type compatible with the source
+     */
+    public static BufferedImage applyLut(BufferedImage image, ChannelLut lut){
+        return lut.apply(image, image.getType(), executor);
+    }
 
+    /**
+     * @param image source image
+     * @param lut   per-channel lookup table
+     * @return new tiled image
+     */
+    public static TiledImage applyLut(TiledImage image, ChannelLut lut){
+        return Pipeline.of(lut).run(image, executor);
+    }
 }
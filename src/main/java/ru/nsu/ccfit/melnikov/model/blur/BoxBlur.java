@@ -0,0 +1,119 @@
+package ru.nsu.ccfit.melnikov.model.blur;
+
+import ru.nsu.ccfit.melnikov.model.parallel.BandExecutor;
+import ru.nsu.ccfit.melnikov.model.raster.PixelBuffer;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Box blur with running sums: the cost per pixel does not depend on the radius.
+ * <p>
+ * A single pass equals {@code Drafter.maskPixels} with a uniform N x N mask up to rounding; stacking
+ * three passes approximates a Gaussian blur. Pixels past the edges repeat the nearest edge pixel, as
+ * {@link ru.nsu.ccfit.melnikov.model.convolution.BorderMode#CLAMP} does.
+ *
+ * @author Nikita Melnikov
+ */
+public final class BoxBlur {
+    private BoxBlur() {
+    }
+
+    /**
+     * @param image    source image
+     * @param size     odd window size N
+     * @param passes   number of stacked box passes
+     * @param executor executor the bands run on
+     * @return blurred image
+     */
+    public static BufferedImage apply(BufferedImage image, int size, int passes, BandExecutor executor) {
+        if (size % 2 == 0)
+            throw new IllegalArgumentException("Window size must be odd: " + size);
+        var result = image;
+        for (int pass = 0; pass < passes; ++pass)
+            result = pass(PixelBuffer.of(result), size / 2, executor);
+        return result;
+    }
+
+    private static BufferedImage pass(PixelBuffer src, int radius, BandExecutor executor) {
+        int width = src.getWidth();
+        int height = src.getHeight();
+        var dst = PixelBuffer.create(width, height, BufferedImage.TYPE_INT_ARGB);
+        int taps = 2 * radius + 1;
+        int area = taps * taps;
+
+        executor.forEachBand(height, radius, band -> {
+            int fromY = band.fromY();
+            int toY = band.toY();
+            // ring of horizontal window sums; one slot more than the window so a row can be replaced after use
+            int slots = taps + 1;
+            var rowR = new int[slots * width];
+            var rowG = new int[slots * width];
+            var rowB = new int[slots * width];
+            var sumR = new int[width];
+            var sumG = new int[width];
+            var sumB = new int[width];
+            for (int row = fromY - radius; row <= fromY + radius; ++row) {
+                int hOffset = sumRow(src, row, radius, slots, rowR, rowG, rowB);
+                for (int x = 0; x < width; ++x) {
+                    sumR[x] += rowR[hOffset + x];
+                    sumG[x] += rowG[hOffset + x];
+                    sumB[x] += rowB[hOffset + x];
+                }
+            }
+
+            for (int y = fromY; y < toY; ++y) {
+                int offset = y * width;
+                for (int x = 0; x < width; ++x) {
+                    dst.set(offset + x, src.get(offset + x) & 0xFF000000
+                            | sumR[x] / area << 16 | sumG[x] / area << 8 | sumB[x] / area);
+                }
+                if (y + 1 == toY)
+                    break;
+                int addOffset = sumRow(src, y + radius + 1, radius, slots, rowR, rowG, rowB);
+                int removeOffset = y % slots * width;
+                for (int x = 0; x < width; ++x) {
+                    sumR[x] += rowR[addOffset + x] - rowR[removeOffset + x];
+                    sumG[x] += rowG[addOffset + x] - rowG[removeOffset + x];
+                    sumB[x] += rowB[addOffset + x] - rowB[removeOffset + x];
+                }
+            }
+        });
+        return dst.getImage();
+    }
+
+    /**
+     * Computes horizontal window sums of source row {@code y}, clamped to the image, into the ring slot of
+     * {@code y}, which is {@code (y + radius) % slots}
+     *
+     * @return offset of the slot
+     */
+    private static int sumRow(PixelBuffer src, int y, int radius, int slots, int[] rowR, int[] rowG, int[] rowB) {
+        int width = src.getWidth();
+        int offset = edge(y, src.getHeight()) * width;
+        int hOffset = (y + radius) % slots * width;
+        int r = 0, g = 0, b = 0;
+        for (int x = -radius; x <= radius; ++x) {
+            int pixel = src.get(offset + edge(x, width));
+            r += (pixel >> 16) & 0xff;
+            g += (pixel >> 8) & 0xff;
+            b += pixel & 0xff;
+        }
+        for (int x = 0; ; ++x) {
+            rowR[hOffset + x] = r;
+            rowG[hOffset + x] = g;
+            rowB[hOffset + x] = b;
+            if (x + 1 == width)
+                break;
+            int added = src.get(offset + edge(x + radius + 1, width));
+            int removed = src.get(offset + edge(x - radius, width));
+            r += ((added >> 16) & 0xff) - ((removed >> 16) & 0xff);
+            g += ((added >> 8) & 0xff) - ((removed >> 8) & 0xff);
+            b += (added & 0xff) - (removed & 0xff);
+        }
+        return hOffset;
+    }
+
+    private static int edge(int i, int size) {
+        return i < 0 ? 0 : i >= size ? size - 1 : i;
+    }
+}
@@ -0,0 +1,105 @@
+package ru.nsu.ccfit.melnikov.model.blur;
+
+import ru.nsu.ccfit.melnikov.model.parallel.BandExecutor;
+import ru.nsu.ccfit.melnikov.model.raster.PixelBuffer;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * Blur with a separable kernel: one horizontal and one vertical pass, O(N) per pixel for an N-tap kernel.
+ * <p>
+ * Each band keeps the last N horizontally filtered rows in a ring buffer, so no full-size intermediate
+ * image is allocated and every source row is filtered once per band. Pixels past the edges repeat the
+ * nearest edge pixel, as {@link ru.nsu.ccfit.melnikov.model.convolution.BorderMode#CLAMP} does.
+ *
+ * @author Nikita Melnikov
+ */
+public final class SeparableBlur {
+    private SeparableBlur() {
+    }
+
+    /**
+     * @param image    source image
+     * @param kernel   symmetric 1D kernel of odd length; the 2D kernel is its outer product
+     * @param executor executor the bands run on
+     * @return blurred image
+     */
+    public static BufferedImage apply(BufferedImage image, double[] kernel, BandExecutor executor) {
+        if (kernel.length % 2 == 0)
+            throw new IllegalArgumentException("Kernel length must be odd: " + kernel.length);
+        var src = PixelBuffer.of(image);
+        int width = src.getWidth();
+        int height = src.getHeight();
+        var dst = PixelBuffer.create(width, height, BufferedImage.TYPE_INT_ARGB);
+        int radius = kernel.length / 2;
+
+        executor.forEachBand(height, radius, band -> {
+            // ring of the last N horizontally filtered rows, row y lives in slot (y + radius) % N
+            int taps = kernel.length;
+            var horizontalR = new double[taps * width];
+            var horizontalG = new double[taps * width];
+            var horizontalB = new double[taps * width];
+            for (int row = band.fromY() - radius; row < band.fromY() + radius; ++row)
+                filterRow(src, row, kernel, horizontalR, horizontalG, horizontalB);
+
+            var sumR = new double[width];
+            var sumG = new double[width];
+            var sumB = new double[width];
+            for (int y = band.fromY(); y < band.toY(); ++y) {
+                filterRow(src, y + radius, kernel, horizontalR, horizontalG, horizontalB);
+                Arrays.fill(sumR, 0);
+                Arrays.fill(sumG, 0);
+                Arrays.fill(sumB, 0);
+                for (int k = 0; k < taps; ++k) {
+                    int hOffset = (y + k) % taps * width;
+                    double weight = kernel[k];
+                    for (int x = 0; x < width; ++x) {
+                        sumR[x] += horizontalR[hOffset + x] * weight;
+                        sumG[x] += horizontalG[hOffset + x] * weight;
+                        sumB[x] += horizontalB[hOffset + x] * weight;
+                    }
+                }
+                int offset = y * width;
+                for (int x = 0; x < width; ++x) {
+                    dst.set(offset + x, src.get(offset + x) & 0xFF000000
+                            | clamp(sumR[x]) << 16 | clamp(sumG[x]) << 8 | clamp(sumB[x]));
+                }
+            }
+        });
+        return dst.getImage();
+    }
+
+    /**
+     * Filters source row {@code y}, clamped to the image, into the ring slot of {@code y}
+     */
+    private static void filterRow(PixelBuffer src, int y, double[] kernel,
+                                  double[] horizontalR, double[] horizontalG, double[] horizontalB) {
+        int width = src.getWidth();
+        int radius = kernel.length / 2;
+        int offset = edge(y, src.getHeight()) * width;
+        int hOffset = (y + radius) % kernel.length * width;
+        for (int x = 0; x < width; ++x) {
+            boolean inside = x >= radius && x < width - radius;
+            double r = 0, g = 0, b = 0;
+            for (int k = 0; k < kernel.length; ++k) {
+                int sx = x - radius + k;
+                int pixel = src.get(offset + (inside ? sx : edge(sx, width)));
+                r += ((pixel >> 16) & 0xff) * kernel[k];
+                g += ((pixel >> 8) & 0xff) * kernel[k];
+                b += (pixel & 0xff) * kernel[k];
+            }
+            horizontalR[hOffset + x] = r;
+            horizontalG[hOffset + x] = g;
+            horizontalB[hOffset + x] = b;
+        }
+    }
+
+    private static int edge(int i, int size) {
+        return i < 0 ? 0 : i >= size ? size - 1 : i;
+    }
+
+    private static int clamp(double value) {
+        return value < 0 ? 0 : value > 255 ? 255 : (int) value;
+    }
+}
@@ -0,0 +1,165 @@
+package ru.nsu.ccfit.melnikov.model.cache;
+
+import ru.nsu.ccfit.melnikov.model.parallel.BandExecutor;
+import ru.nsu.ccfit.melnikov.model.raster.PixelBuffer;
+
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * Memoizes filter results by the content of the source image and the filter invocation.
+ * <p>
+ * The key is a 64-bit hash of the source pixels together with its size and type, and an id naming the
+ * filter and all of its parameters. Entries are evicted in LRU order once their pixels take more than
+ * the configured number of bytes. The cache keeps its own copies: a result is copied when stored and
+ * again when returned, so callers may modify what they get.
+ *
+ * @author Nikita Melnikov
+ */
+public class FilterCache {
+    private static final long PRIME_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+    private final Map<Key, BufferedImage> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long maxBytes;
+    private long usedBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param hash   hash of the source pixels
+     * @param width  source width
+     * @param height source height
+     * @param type   source type
+     * @param filter filter and its parameters
+     */
+    private record Key(long hash, int width, int height, int type, String filter) {
+    }
+
+    /**
+     * Counters since the cache was created
+     *
+     * @param hits      lookups answered from the cache
+     * @param misses    lookups that ran the filter
+     * @param evictions entries dropped to stay within the size limit
+     * @param entries   entries held now
+     * @param bytes     pixel bytes held now
+     */
+    public record Stats(long hits, long misses, long evictions, int entries, long bytes) {
+        public double hitRate() {
+            return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d hits, %d misses (%.0f%%), %d evictions, %d entries, %d KB",
+                    hits, misses, 100 * hitRate(), evictions, entries, bytes >> 10);
+        }
+    }
+
+    /**
+     * @param maxBytes memory the cached results may take
+     */
+    public FilterCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    /**
+     * Returns the cached result of a filter invocation or runs the filter and caches its result
+     *
+     * @param image    source image
+     * @param filterId name of the filter and the values of all its parameters
+     * @param filter   filter invocation
+     * @param executor executor the source hash is computed on
+     * @return filter result, owned by the caller
+     */
+    public BufferedImage apply(BufferedImage image, String filterId, UnaryOperator<BufferedImage> filter,
+                               BandExecutor executor) {
+        var key = new Key(hash(image, executor), image.getWidth(), image.getHeight(), image.getType(), filterId);
+        synchronized (this) {
+            var cached = entries.get(key);
+            if (cached != null) {
+                ++hits;
+                return copyOf(cached);
+            }
+            ++misses;
+        }
+        var result = filter.apply(image);
+        long bytes = bytes(result);
+        if (bytes <= maxBytes) {
+            var copy = copyOf(result);
+            synchronized (this) {
+                var previous = entries.put(key, copy);
+                usedBytes += bytes - (previous == null ? 0 : bytes(previous));
+                evict();
+            }
+        }
+        return result;
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(hits, misses, evictions, entries.size(), usedBytes);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        usedBytes = 0;
+    }
+
+    /**
+     * Hashes every row independently and combines the row hashes in order, so the result does not depend on
+     * how the rows are split between threads
+     *
+     * @return 64-bit hash of the ARGB pixels of an image
+     */
+    public static long hash(BufferedImage image, BandExecutor executor) {
+        var pixels = PixelBuffer.of(image);
+        int width = pixels.getWidth();
+        int height = pixels.getHeight();
+        var rows = new long[height];
+        executor.forEachBand(height, 0, band -> {
+            for (int y = band.fromY(); y < band.toY(); ++y) {
+                long hash = PRIME_2 * (y + 1);
+                for (int x = 0; x < width; ++x)
+                    hash = round(hash, pixels.get(y * width + x));
+                rows[y] = hash;
+            }
+        });
+        long hash = PRIME_1 ^ width * PRIME_2 ^ height;
+        for (long row : rows)
+            hash = round(hash, row);
+        // final avalanche
+        hash ^= hash >>> 33;
+        hash *= PRIME_2;
+        hash ^= hash >>> 29;
+        return hash;
+    }
+
+    private static long round(long hash, long value) {
+        return Long.rotateLeft(hash + value * PRIME_2, 31) * PRIME_1;
+    }
+
+    private void evict() {
+        var iterator = entries.values().iterator();
+        while (usedBytes > maxBytes && iterator.hasNext()) {
+            usedBytes -= bytes(iterator.next());
+            iterator.remove();
+            ++evictions;
+        }
+    }
+
+    private static long bytes(BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight() * Integer.BYTES;
+    }
+
+    private static BufferedImage copyOf(BufferedImage image) {
+        return new BufferedImage(image.getColorModel(), image.copyData(null), image.isAlphaPremultiplied(), null);
+    }
+}
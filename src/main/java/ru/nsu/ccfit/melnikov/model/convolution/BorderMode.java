@@ -0,0 +1,47 @@
+package ru.nsu.ccfit.melnikov.model.convolution;
+
+/**
+ * What a convolution reads past the edges of the image
+ *
+ * @author Nikita Melnikov
+ */
+public enum BorderMode {
+    /**
+     * The edge pixel repeats
+     */
+    CLAMP,
+    /**
+     * The image is reflected about its edge pixels, which are not repeated
+     */
+    MIRROR,
+    /**
+     * The image repeats from its opposite edge; needs the whole image, so it is not available in pipelines
+     */
+    WRAP,
+    /**
+     * A constant color surrounds the image
+     */
+    CONSTANT;
+
+    /**
+     * @param index coordinate, possibly outside the image
+     * @param size  size of the image along the coordinate
+     * @return coordinate of the pixel read at {@code index}, or -1 for the constant color
+     */
+    int index(int index, int size) {
+        if (index >= 0 && index < size)
+            return index;
+        return switch (this) {
+            case CLAMP -> index < 0 ? 0 : size - 1;
+            case MIRROR -> {
+                if (size == 1)
+                    yield 0;
+                int period = 2 * (size - 1);
+                int folded = Math.floorMod(index, period);
+                yield folded < size ? folded : period - folded;
+            }
+            case WRAP -> Math.floorMod(index, size);
+            case CONSTANT -> -1;
+        };
+    }
+}
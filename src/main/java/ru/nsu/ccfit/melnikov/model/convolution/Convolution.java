@@ -0,0 +1,127 @@
+package ru.nsu.ccfit.melnikov.model.convolution;
+
+import ru.nsu.ccfit.melnikov.model.parallel.BandExecutor;
+import ru.nsu.ccfit.melnikov.model.raster.PixelBuffer;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * Convolution of the RGB channels with a {@link ConvolutionKernel}; alpha is kept.
+ * <p>
+ * Rows are computed in order from a rolling cache of the last {@code 2 * radius + 1} source rows, each
+ * unpacked once into channel arrays padded at both ends according to the {@link BorderMode}. The taps are
+ * then applied a whole row at a time, so every pixel is read from the image once per band however large
+ * the kernel is.
+ *
+ * @author Nikita Melnikov
+ */
+public final class Convolution {
+    private final ConvolutionKernel kernel;
+    private final BorderMode border;
+    private final int constant;
+
+    /**
+     * @param kernel   convolution kernel
+     * @param border   what is read past the edges of the image
+     * @param constant RGB color surrounding the image in {@link BorderMode#CONSTANT} mode
+     */
+    public Convolution(ConvolutionKernel kernel, BorderMode border, int constant) {
+        this.kernel = kernel;
+        this.border = border;
+        this.constant = constant;
+    }
+
+    public Convolution(ConvolutionKernel kernel, BorderMode border) {
+        this(kernel, border, 0);
+    }
+
+    public int radius() {
+        return kernel.radius();
+    }
+
+    /**
+     * @param image    source image
+     * @param type     preferred type of the result
+     * @param executor executor the bands run on
+     * @return convolved image
+     */
+    public BufferedImage apply(BufferedImage image, int type, BandExecutor executor) {
+        var src = PixelBuffer.of(image);
+        var dst = PixelBuffer.create(src.getWidth(), src.getHeight(), type);
+        executor.forEachBand(src.getHeight(), kernel.radius(), band -> apply(src, dst, band.fromY(), band.toY()));
+        return dst.getImage();
+    }
+
+    /**
+     * Computes rows {@code [fromY, toY)} of {@code dst}. {@code src} must hold every row these rows read,
+     * which for all modes but {@link BorderMode#WRAP} are the rows within the radius clipped to the image.
+     *
+     * @param src source image, possibly a window
+     * @param dst result, possibly a window
+     */
+    public void apply(PixelBuffer src, PixelBuffer dst, int fromY, int toY) {
+        int width = src.getWidth();
+        int height = src.getHeight();
+        int radius = kernel.radius();
+        int size = 2 * radius + 1;
+        int padded = width + 2 * radius;
+        // source rows y - radius .. y + radius, row r in slot r mod size
+        var red = new int[size][padded];
+        var green = new int[size][padded];
+        var blue = new int[size][padded];
+        for (int row = fromY - radius; row < fromY + radius; ++row)
+            load(src, row, red, green, blue);
+
+        var sumR = new int[width];
+        var sumG = new int[width];
+        var sumB = new int[width];
+        int shift = kernel.shift();
+        int half = shift == 0 ? 0 : 1 << (shift - 1);
+        for (int y = fromY; y < toY; ++y) {
+            load(src, y + radius, red, green, blue);
+            Arrays.fill(sumR, half);
+            Arrays.fill(sumG, half);
+            Arrays.fill(sumB, half);
+            for (int tap = 0; tap < kernel.taps(); ++tap) {
+                int slot = Math.floorMod(y + kernel.dy[tap], size);
+                int offset = radius + kernel.dx[tap];
+                int weight = kernel.weights[tap];
+                int[] r = red[slot], g = green[slot], b = blue[slot];
+                for (int x = 0; x < width; ++x) {
+                    sumR[x] += r[offset + x] * weight;
+                    sumG[x] += g[offset + x] * weight;
+                    sumB[x] += b[offset + x] * weight;
+                }
+            }
+            int rowOffset = y * width;
+            for (int x = 0; x < width; ++x) {
+                int alpha = src.get(rowOffset + x) & 0xFF000000;
+                dst.set(rowOffset + x, alpha | channel(sumR[x] >> shift) << 16
+                        | channel(sumG[x] >> shift) << 8 | channel(sumB[x] >> shift));
+            }
+        }
+    }
+
+    /**
+     * Unpacks source row {@code row}, or what the border mode reads there, into its slot of the cache
+     */
+    private void load(PixelBuffer src, int row, int[][] red, int[][] green, int[][] blue) {
+        int width = src.getWidth();
+        int radius = kernel.radius();
+        int slot = Math.floorMod(row, red.length);
+        int[] r = red[slot], g = green[slot], b = blue[slot];
+        int y = border.index(row, src.getHeight());
+        for (int i = 0; i < r.length; ++i) {
+            int x = i < radius || i >= radius + width ? border.index(i - radius, width) : i - radius;
+            int pixel = y < 0 || x < 0 ? constant : src.get(y * width + x);
+            r[i] = (pixel >> 16) & 0xff;
+            g[i] = (pixel >> 8) & 0xff;
+            b[i] = pixel & 0xff;
+        }
+    }
+
+    private static int channel(int value) {
+        return value < 0 ? 0 : Math.min(value, 255);
+    }
+}
@@ -0,0 +1,99 @@
+package ru.nsu.ccfit.melnikov.model.convolution;
+
+import java.util.Arrays;
+
+/**
+ * Square convolution kernel in fixed point, stored as the list of its non-zero taps in row-major order.
+ * <p>
+ * Kernels with only integer weights keep them as they are, with no fractional bits, so the sums are exact
+ * and need no rounding; others get {@value #FRACTION_BITS} fractional bits.
+ *
+ * @author Nikita Melnikov
+ */
+public final class ConvolutionKernel {
+    static final int FRACTION_BITS = 12;
+    private final int radius;
+    private final int shift;
+    /**
+     * Horizontal offsets of the taps from the centre
+     */
+    final int[] dx;
+    /**
+     * Vertical offsets of the taps from the centre
+     */
+    final int[] dy;
+    final int[] weights;
+
+    private ConvolutionKernel(int radius, int shift, int[] dx, int[] dy, int[] weights) {
+        this.radius = radius;
+        this.shift = shift;
+        this.dx = dx;
+        this.dy = dy;
+        this.weights = weights;
+    }
+
+    /**
+     * @param mask square mask of odd size, indexed as {@code mask[horizontal][vertical]} like the masks of
+     *             {@code Drafter}
+     * @return kernel of the mask
+     */
+    public static ConvolutionKernel of(double[][] mask) {
+        int size = mask.length;
+        if (size % 2 == 0)
+            throw new IllegalArgumentException("Mask size must be odd: " + size);
+        boolean integer = Arrays.stream(mask).flatMapToDouble(Arrays::stream).allMatch(w -> w == Math.rint(w));
+        int shift = integer ? 0 : FRACTION_BITS;
+        var weights = new int[size * size];
+        for (int y = 0; y < size; ++y) {
+            for (int x = 0; x < size; ++x) {
+                if (mask[x].length != size)
+                    throw new IllegalArgumentException("Mask must be square");
+                weights[y * size + x] = (int) Math.round(Math.scalb(mask[x][y], shift));
+            }
+        }
+        return of(weights, size, shift);
+    }
+
+    /**
+     * @param weights row-major weights of a {@code size x size} kernel
+     * @param size    odd kernel size
+     * @param shift   number of fractional bits of the weights
+     * @return kernel of the weights
+     */
+    public static ConvolutionKernel of(int[] weights, int size, int shift) {
+        if (size % 2 == 0 || weights.length != size * size)
+            throw new IllegalArgumentException("Expected " + size + " x " + size + " weights of odd size");
+        int radius = size / 2;
+        int taps = (int) Arrays.stream(weights).filter(w -> w != 0).count();
+        var dx = new int[taps];
+        var dy = new int[taps];
+        var nonZero = new int[taps];
+        int tap = 0;
+        for (int i = 0; i < weights.length; ++i) {
+            if (weights[i] == 0)
+                continue;
+            dx[tap] = i % size - radius;
+            dy[tap] = i / size - radius;
+            nonZero[tap++] = weights[i];
+        }
+        return new ConvolutionKernel(radius, shift, dx, dy, nonZero);
+    }
+
+    /**
+     * @return number of pixels the kernel reaches from its centre in every direction
+     */
+    public int radius() {
+        return radius;
+    }
+
+    /**
+     * @return number of fractional bits of the weights, 0 for integer kernels
+     */
+    public int shift() {
+        return shift;
+    }
+
+    int taps() {
+        return weights.length;
+    }
+}
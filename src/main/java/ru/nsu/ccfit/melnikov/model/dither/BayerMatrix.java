@@ -0,0 +1,80 @@
+package ru.nsu.ccfit.melnikov.model.dither;
+
+import lombok.Getter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Normalized threshold matrices of ordered dithering, built once per size and shared.
+ * <p>
+ * The matrix of size {@code n} is built recursively from the one of size {@code n / 2}; for sizes other than
+ * powers of two the cells that recursion does not reach keep the threshold of zero.
+ *
+ * @author Nikita Melnikov
+ */
+public final class BayerMatrix {
+    private static final int CACHED_SIZES = 8;
+    private static final Map<Integer, BayerMatrix> CACHE = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, BayerMatrix> eldest) {
+            return size() > CACHED_SIZES;
+        }
+    };
+    @Getter
+    private final int size;
+    /**
+     * Thresholds in {@code [-0.5, 0.5)} stored row by row: the cell of pixel {@code (x, y)} is
+     * {@code (y % size) * size + x % size}
+     */
+    private final double[] thresholds;
+
+    private BayerMatrix(int size) {
+        this.size = size;
+        var matrix = build(size);
+        double scale = 1.0 / Math.pow(size, 2);
+        thresholds = new double[size * size];
+        for (int y = 0; y < size; ++y) {
+            for (int x = 0; x < size; ++x)
+                thresholds[y * size + x] = matrix[x * size + y] * scale - 0.5;
+        }
+    }
+
+    /**
+     * @param size matrix side, positive
+     * @return cached matrix of that size
+     */
+    public static BayerMatrix of(int size) {
+        if (size < 1)
+            throw new IllegalArgumentException("Matrix size must be positive: " + size);
+        synchronized (CACHE) {
+            return CACHE.computeIfAbsent(size, BayerMatrix::new);
+        }
+    }
+
+    /**
+     * @param cell index of a cell, see {@link #thresholds}
+     * @return threshold of the cell
+     */
+    public double threshold(int cell) {
+        return thresholds[cell];
+    }
+
+    private static int[] build(int n) {
+        int[] matrix = new int[n * n];
+        if (n == 1)
+            return matrix;
+
+        int len = n / 2;
+        int[] smaller = build(len);
+        for (int y = 0; y < 2; ++y) {
+            for (int k = 0; k < len; ++k) {
+                for (int l = 0; l < len; ++l) {
+                    matrix[k * len * 2 + (len * y + l)] = 4 * smaller[k * len + l] + 2 * y;
+                    matrix[((len + k) * len) * 2 + (len * y + l)] = 4 * smaller[k * len + l] + 3 - 2 * y;
+                }
+            }
+        }
+        return matrix;
+    }
+}
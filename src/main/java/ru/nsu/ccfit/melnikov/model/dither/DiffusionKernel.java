@@ -0,0 +1,90 @@
+package ru.nsu.ccfit.melnikov.model.dither;
+
+import lombok.Getter;
+
+/**
+ * Error-diffusion kernels: the share of the quantization error each not yet processed neighbour receives.
+ * <p>
+ * Taps are given as {@code {dx, dy, weight}} relative to the current pixel, with {@code dy >= 0} and
+ * {@code dx > 0} for {@code dy == 0}; a tap receives {@code error * weight / divisor}, truncated toward zero.
+ *
+ * @author Nikita Melnikov
+ */
+public enum DiffusionKernel {
+    FLOYD_STEINBERG("Floyd-Steinberg", 16, new int[][]{
+            {1, 0, 7},
+            {-1, 1, 3}, {0, 1, 5}, {1, 1, 1}}),
+    JARVIS_JUDICE_NINKE("Jarvis-Judice-Ninke", 48, new int[][]{
+            {1, 0, 7}, {2, 0, 5},
+            {-2, 1, 3}, {-1, 1, 5}, {0, 1, 7}, {1, 1, 5}, {2, 1, 3},
+            {-2, 2, 1}, {-1, 2, 3}, {0, 2, 5}, {1, 2, 3}, {2, 2, 1}}),
+    STUCKI("Stucki", 42, new int[][]{
+            {1, 0, 8}, {2, 0, 4},
+            {-2, 1, 2}, {-1, 1, 4}, {0, 1, 8}, {1, 1, 4}, {2, 1, 2},
+            {-2, 2, 1}, {-1, 2, 2}, {0, 2, 4}, {1, 2, 2}, {2, 2, 1}}),
+    ATKINSON("Atkinson", 8, new int[][]{
+            {1, 0, 1}, {2, 0, 1},
+            {-1, 1, 1}, {0, 1, 1}, {1, 1, 1},
+            {0, 2, 1}}),
+    SIERRA("Sierra", 32, new int[][]{
+            {1, 0, 5}, {2, 0, 3},
+            {-2, 1, 2}, {-1, 1, 4}, {0, 1, 5}, {1, 1, 4}, {2, 1, 2},
+            {-1, 2, 2}, {0, 2, 3}, {1, 2, 2}});
+
+    private final String name;
+    private final int[] dx;
+    private final int[] dy;
+    private final int[] weights;
+    @Getter
+    private final int divisor;
+    /**
+     * Largest horizontal distance of a tap
+     */
+    @Getter
+    private final int reach;
+    /**
+     * Number of rows below the current one the error reaches
+     */
+    @Getter
+    private final int depth;
+
+    DiffusionKernel(String name, int divisor, int[][] taps) {
+        this.name = name;
+        this.divisor = divisor;
+        dx = new int[taps.length];
+        dy = new int[taps.length];
+        weights = new int[taps.length];
+        int reach = 0;
+        int depth = 0;
+        for (int i = 0; i < taps.length; ++i) {
+            dx[i] = taps[i][0];
+            dy[i] = taps[i][1];
+            weights[i] = taps[i][2];
+            reach = Math.max(reach, Math.abs(dx[i]));
+            depth = Math.max(depth, dy[i]);
+        }
+        this.reach = reach;
+        this.depth = depth;
+    }
+
+    int taps() {
+        return weights.length;
+    }
+
+    int dx(int tap) {
+        return dx[tap];
+    }
+
+    int dy(int tap) {
+        return dy[tap];
+    }
+
+    int weight(int tap) {
+        return weights[tap];
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,223 @@
+package ru.nsu.ccfit.melnikov.model.dither;
+
+import ru.nsu.ccfit.melnikov.model.parallel.ProgressMonitor;
+import ru.nsu.ccfit.melnikov.model.raster.PixelBuffer;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Error-diffusion dithering with a pluggable {@link DiffusionKernel}.
+ * <p>
+ * Each channel is quantized to the nearest of its evenly spaced levels and the error is spread over the
+ * neighbours the kernel names. Working values live in a ring of {@code depth + 1 + workers} row buffers,
+ * one spare row per worker to load ahead, and are clamped to {@code [0, 255]} after every addition.
+ * <p>
+ * In parallel mode every worker takes the next row and follows the row above it at a distance of
+ * {@code 2 * reach + 1} columns, so a pixel receives its errors in the same order as in a serial run and
+ * the output is bit-identical to it.
+ *
+ * @author Nikita Melnikov
+ */
+public final class ErrorDiffusion {
+    /**
+     * Columns processed between two progress updates of a row
+     */
+    private static final int PUBLISH_COLUMNS = 64;
+    /**
+     * Narrower images are dithered serially: the rows would mostly wait for each other
+     */
+    private static final int MIN_PARALLEL_WIDTH = 8 * PUBLISH_COLUMNS;
+    private static final int MAX_ERROR = 255;
+    private final PixelBuffer src;
+    private final PixelBuffer dst;
+    private final DiffusionKernel kernel;
+    private final int width;
+    private final int height;
+    private final int[] levelsR;
+    private final int[] levelsG;
+    private final int[] levelsB;
+    /**
+     * Share of an error a tap receives, indexed by tap and {@code error + MAX_ERROR}
+     */
+    private final int[][] shares;
+    private final int[][] rows;
+    private final AtomicIntegerArray progress;
+    private final AtomicInteger nextRow = new AtomicInteger();
+    private final AtomicInteger doneRows = new AtomicInteger();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final ProgressMonitor monitor = ProgressMonitor.current();
+
+    private ErrorDiffusion(BufferedImage image, DiffusionKernel kernel, int levelsR, int levelsG, int levelsB,
+                           int type, int workers) {
+        this.src = PixelBuffer.of(image);
+        this.width = src.getWidth();
+        this.height = src.getHeight();
+        this.dst = PixelBuffer.create(width, height, type);
+        this.kernel = kernel;
+        this.levelsR = levels(levelsR);
+        this.levelsG = levels(levelsG);
+        this.levelsB = levels(levelsB);
+        shares = new int[kernel.taps()][2 * MAX_ERROR + 1];
+        for (int tap = 0; tap < kernel.taps(); ++tap) {
+            for (int error = -MAX_ERROR; error <= MAX_ERROR; ++error)
+                shares[tap][error + MAX_ERROR] = error * kernel.weight(tap) / kernel.getDivisor();
+        }
+        rows = new int[kernel.getDepth() + 1 + workers][3 * width];
+        progress = new AtomicIntegerArray(height);
+        for (int y = 0; y <= kernel.getDepth() && y < height; ++y)
+            load(y);
+    }
+
+    /**
+     * @param image   source image
+     * @param kernel  error distribution
+     * @param levelsR quantization levels of the red channel
+     * @param levelsG quantization levels of the green channel
+     * @param levelsB quantization levels of the blue channel
+     * @param type    type of the result image
+     * @param pool    pool the rows are spread over, or {@code null} to dither serially
+     * @return opaque dithered image
+     */
+    public static BufferedImage dither(BufferedImage image, DiffusionKernel kernel,
+                                       int levelsR, int levelsG, int levelsB, int type, ForkJoinPool pool) {
+        int workers = pool == null || image.getWidth() < MIN_PARALLEL_WIDTH
+                ? 1 : Math.min(pool.getParallelism(), image.getHeight());
+        var diffusion = new ErrorDiffusion(image, kernel, levelsR, levelsG, levelsB, type, workers);
+        if (workers <= 1) {
+            diffusion.work();
+        } else {
+            var tasks = new ArrayList<ForkJoinTask<?>>(workers);
+            for (int i = 0; i < workers; ++i)
+                tasks.add(ForkJoinTask.adapt(diffusion::work));
+            pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+        }
+        var error = diffusion.failure.get();
+        if (error instanceof RuntimeException runtimeException)
+            throw runtimeException;
+        if (error instanceof Error fatal)
+            throw fatal;
+        return diffusion.dst.getImage();
+    }
+
+    /**
+     * @return nearest of {@code count} evenly spaced levels for every channel value, black for a single level
+     */
+    private static int[] levels(int count) {
+        var table = new int[256];
+        if (count > 1) {
+            for (int value = 0; value < table.length; ++value)
+                table[value] = (int) Math.round(value * (count - 1) / 255d) * 255 / (count - 1);
+        }
+        return table;
+    }
+
+    /**
+     * Dithers rows until none are left or another worker has failed
+     */
+    private void work() {
+        try {
+            for (int y = nextRow.getAndIncrement(); y < height; y = nextRow.getAndIncrement()) {
+                monitor.checkCancelled();
+                if (!ditherRow(y))
+                    return;
+                monitor.rows(doneRows.incrementAndGet(), height);
+            }
+        } catch (RuntimeException | Error e) {
+            failure.compareAndSet(null, e);
+        }
+    }
+
+    private boolean ditherRow(int y) {
+        int depth = kernel.getDepth();
+        int last = y + depth;
+        if (y > 0 && last < height) {
+            // the ring slot of the farthest row the errors reach is free once its previous row is done
+            if (last >= rows.length && await(last - rows.length, width) < 0)
+                return false;
+            load(last);
+        }
+        var targets = new int[depth + 1][];
+        for (int dy = 0; dy <= depth && y + dy < height; ++dy)
+            targets[dy] = rows[(y + dy) % rows.length];
+        var current = targets[0];
+        int lag = 2 * kernel.getReach() + 1;
+        int ready = 0;
+        int taps = kernel.taps();
+
+        for (int x = 0; x < width; ++x) {
+            if (y > 0 && ready < width && x + lag > ready) {
+                ready = await(y - 1, Math.min(width, x + lag));
+                if (ready < 0)
+                    return false;
+            }
+            int i = 3 * x;
+            int red = current[i];
+            int green = current[i + 1];
+            int blue = current[i + 2];
+            int newR = levelsR[red];
+            int newG = levelsG[green];
+            int newB = levelsB[blue];
+            dst.set(y * width + x, 0xFF000000 | newR << 16 | newG << 8 | newB);
+
+            int errR = red - newR + MAX_ERROR;
+            int errG = green - newG + MAX_ERROR;
+            int errB = blue - newB + MAX_ERROR;
+            for (int tap = 0; tap < taps; ++tap) {
+                int tx = x + kernel.dx(tap);
+                var target = targets[kernel.dy(tap)];
+                if (tx < 0 || tx >= width || target == null)
+                    continue;
+                var share = shares[tap];
+                int j = 3 * tx;
+                target[j] = clamp(target[j] + share[errR]);
+                target[j + 1] = clamp(target[j + 1] + share[errG]);
+                target[j + 2] = clamp(target[j + 2] + share[errB]);
+            }
+            if ((x + 1) % PUBLISH_COLUMNS == 0)
+                progress.set(y, x + 1);
+        }
+        progress.set(y, width);
+        return true;
+    }
+
+    /**
+     * Waits until a row has processed at least {@code columns} columns
+     *
+     * @return processed columns of the row, or {@code -1} if a worker has failed
+     */
+    private int await(int y, int columns) {
+        int spins = 0;
+        int done;
+        while ((done = progress.get(y)) < columns) {
+            if (failure.get() != null)
+                return -1;
+            if (++spins < 64) {
+                Thread.onSpinWait();
+            } else {
+                monitor.checkCancelled();
+                Thread.yield();
+            }
+        }
+        return done;
+    }
+
+    private void load(int y) {
+        var row = rows[y % rows.length];
+        for (int x = 0; x < width; ++x) {
+            int pixel = src.get(y * width + x);
+            row[3 * x] = (pixel >> 16) & 0xff;
+            row[3 * x + 1] = (pixel >> 8) & 0xff;
+            row[3 * x + 2] = pixel & 0xff;
+        }
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+}
@@ -0,0 +1,142 @@
+package ru.nsu.ccfit.melnikov.model.dither;
+
+import ru.nsu.ccfit.melnikov.model.parallel.BandExecutor;
+import ru.nsu.ccfit.melnikov.model.raster.PixelBuffer;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Ordered dithering with a {@link BayerMatrix}.
+ * <p>
+ * A channel value is shifted by the threshold of its matrix cell scaled to the distance between two levels,
+ * rounded, clamped and quantized to the nearest level. All of that is folded into one table per channel,
+ * built once per number of levels and matrix size: a cell shifts by a whole number of entries, so the inner
+ * loop is a single lookup per channel without branches or floating point. Rows are independent and run
+ * in bands on a {@link BandExecutor}.
+ *
+ * @author Nikita Melnikov
+ */
+public final class OrderedDither {
+    /**
+     * Shifted values lie in {@code [-128, 383]}; the quantization table is indexed from {@code -BIAS}
+     */
+    private static final int BIAS = 128;
+    private static final int TABLE_SIZE = 2 * BIAS + 256;
+    /**
+     * Cells whose scaled threshold is this close to half a step may round differently for different values
+     */
+    private static final double TIE_MARGIN = 1e-9;
+    private static final int CACHED_CHANNELS = 16;
+    private static final Map<Long, Channel> CACHE = new LinkedHashMap<>(32, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Channel> eldest) {
+            return size() > CACHED_CHANNELS;
+        }
+    };
+
+    private OrderedDither() {
+    }
+
+    /**
+     * Quantization table of one channel and the index of the entry for value 0 in every matrix cell
+     */
+    private record Channel(int[] bases, int[] table) {
+    }
+
+    /**
+     * @param image    source image
+     * @param levelsR  quantization levels of the red channel
+     * @param levelsG  quantization levels of the green channel
+     * @param levelsB  quantization levels of the blue channel
+     * @param n        threshold matrix size
+     * @param type     type of the result image
+     * @param executor executor the bands run on
+     * @return opaque dithered image
+     */
+    public static BufferedImage dither(BufferedImage image, int levelsR, int levelsG, int levelsB, int n,
+                                       int type, BandExecutor executor) {
+        var src = PixelBuffer.of(image);
+        int width = src.getWidth();
+        int height = src.getHeight();
+        var dst = PixelBuffer.create(width, height, type);
+        var red = channel(levelsR, n);
+        var green = channel(levelsG, n);
+        var blue = channel(levelsB, n);
+        var in = src.getData();
+        var out = dst.getData();
+
+        executor.forEachBand(height, 0, band -> {
+            var basesR = red.bases();
+            var basesG = green.bases();
+            var basesB = blue.bases();
+            var tableR = red.table();
+            var tableG = green.table();
+            var tableB = blue.table();
+            for (int y = band.fromY(); y < band.toY(); ++y) {
+                int row = (y % n) * n;
+                // matrix-wide runs of columns so the cell index needs no wrap-around in the loop
+                for (int x0 = 0; x0 < width; x0 += n) {
+                    int count = Math.min(n, width - x0);
+                    int base = y * width + x0;
+                    for (int j = 0; j < count; ++j) {
+                        int pixel = in[base + j];
+                        int cell = row + j;
+                        int newR = tableR[basesR[cell] + ((pixel >> 16) & 0xff)];
+                        int newG = tableG[basesG[cell] + ((pixel >> 8) & 0xff)];
+                        int newB = tableB[basesB[cell] + (pixel & 0xff)];
+                        out[base + j] = 0xFF000000 | newR << 16 | newG << 8 | newB;
+                    }
+                }
+            }
+        });
+        return dst.getImage();
+    }
+
+    private static Channel channel(int levels, int n) {
+        long key = (long) levels << 32 | n;
+        synchronized (CACHE) {
+            return CACHE.computeIfAbsent(key, k -> buildChannel(levels, n));
+        }
+    }
+
+    /**
+     * A single level maps everything to black
+     */
+    private static Channel buildChannel(int levels, int n) {
+        var matrix = BayerMatrix.of(n);
+        var bases = new int[n * n];
+        var levelTable = new int[TABLE_SIZE];
+        if (levels <= 1) {
+            Arrays.fill(bases, BIAS);
+            return new Channel(bases, levelTable);
+        }
+        for (int index = 0; index < TABLE_SIZE; ++index) {
+            int value = Math.max(0, Math.min(255, index - BIAS));
+            levelTable[index] = (int) Math.round(value * (levels - 1) / 255d) * 255 / (levels - 1);
+        }
+        double step = 255.0 / (levels - 1);
+        var extra = new ArrayList<int[]>();
+        for (int cell = 0; cell < bases.length; ++cell) {
+            double offset = matrix.threshold(cell) * step;
+            int shift = (int) Math.round(offset);
+            if (Math.abs(Math.abs(offset - shift) - 0.5) > TIE_MARGIN) {
+                bases[cell] = shift + BIAS;
+                continue;
+            }
+            // value + offset may round either way: the cell gets its own entries, rounded as the sum is
+            var entries = new int[256];
+            for (int value = 0; value < 256; ++value)
+                entries[value] = levelTable[(int) Math.round(value + offset) + BIAS];
+            bases[cell] = TABLE_SIZE + 256 * extra.size();
+            extra.add(entries);
+        }
+        var table = Arrays.copyOf(levelTable, TABLE_SIZE + 256 * extra.size());
+        for (int i = 0; i < extra.size(); ++i)
+            System.arraycopy(extra.get(i), 0, table, TABLE_SIZE + 256 * i, 256);
+        return new Channel(bases, table);
+    }
+}
@@ -0,0 +1,222 @@
+package ru.nsu.ccfit.melnikov.model.fill;
+
+import ru.nsu.ccfit.melnikov.model.raster.PixelBuffer;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Scanline flood fill of the 4-connected area around a seed pixel, working on the int raster.
+ * <p>
+ * Pending work is kept as spans {@code (left, right, y, direction)} in a primitive {@link SpanStack}: a span is
+ * a run of filled pixels whose neighbouring row in {@code direction} still has to be scanned, so every pixel
+ * is probed a constant number of times and nothing is allocated per span.
+ * <p>
+ * An exact fill matches pixels equal to the seed color; once filled a pixel no longer matches, so no visited
+ * set is needed and concurrent tasks may fill overlapping spans harmlessly. A tolerance fill matches pixels
+ * whose channels differ from the seed by at most the tolerance, which may include the fill color itself,
+ * and marks filled pixels in a bitmap; it always runs serially.
+ *
+ * @author Nikita Melnikov
+ */
+public final class FloodFill {
+    /**
+     * Spans a task keeps before handing half of them to a new task
+     */
+    private static final int SPLIT_SPANS = 256;
+
+    private FloodFill() {
+    }
+
+    /**
+     * @param image     drawing area
+     * @param x         the x coordinate of the seed point
+     * @param y         the y coordinate of the seed point
+     * @param argb      fill color
+     * @param tolerance largest per-channel difference from the seed color that is still filled, 0 for exact
+     * @param pool      pool spreading an exact fill over several threads, or {@code null} to fill serially
+     * @return bounds of the filled pixels, empty if nothing was filled
+     */
+    public static Rectangle fill(BufferedImage image, int x, int y, int argb, int tolerance, ForkJoinPool pool) {
+        var pixels = PixelBuffer.of(image);
+        int width = pixels.getWidth();
+        int height = pixels.getHeight();
+        if (x < 0 || x >= width || y < 0 || y >= height)
+            return new Rectangle();
+        // the seed is compared as an opaque color, as java.awt.Color(int) makes it
+        int seed = pixels.get(x, y) | 0xFF000000;
+        if (pixels.get(x, y) != seed)
+            return new Rectangle();
+
+        Area area;
+        if (tolerance <= 0) {
+            if (seed == argb)
+                return new Rectangle();
+            var task = new ExactFill(pixels, seed, argb, SpanStack.seed(x, y));
+            area = pool == null ? task.compute() : pool.invoke(task);
+        } else {
+            area = toleranceFill(pixels, seed, argb, tolerance, x, y);
+        }
+        pixels.flush();
+        return area.bounds();
+    }
+
+    /**
+     * Fills pixels equal to the seed color, splitting the span stack between tasks when it grows
+     */
+    private static final class ExactFill extends RecursiveTask<Area> {
+        private final PixelBuffer pixels;
+        private final int seed;
+        private final int argb;
+        private final SpanStack stack;
+
+        private ExactFill(PixelBuffer pixels, int seed, int argb, SpanStack stack) {
+            this.pixels = pixels;
+            this.seed = seed;
+            this.argb = argb;
+            this.stack = stack;
+        }
+
+        @Override
+        protected Area compute() {
+            var data = pixels.getData();
+            int alphaFill = pixels.getAlphaFill();
+            int width = pixels.getWidth();
+            int height = pixels.getHeight();
+            boolean parallel = inForkJoinPool();
+            var forked = new ArrayList<ExactFill>();
+            var area = new Area();
+
+            while (!stack.isEmpty()) {
+                if (parallel && stack.size() > SPLIT_SPANS) {
+                    var task = new ExactFill(pixels, seed, argb, stack.splitHalf());
+                    task.fork();
+                    forked.add(task);
+                }
+                int left = stack.left();
+                int right = stack.right();
+                int y = stack.y();
+                int direction = stack.direction();
+                stack.pop();
+
+                int row = y + direction;
+                if (row < 0 || row >= height)
+                    continue;
+                int offset = row * width;
+                int x = left;
+                // a run that starts inside the span may extend to the left of it
+                if ((data[offset + x] | alphaFill) == seed) {
+                    while (x > 0 && (data[offset + x - 1] | alphaFill) == seed)
+                        --x;
+                }
+                while (x <= right) {
+                    if ((data[offset + x] | alphaFill) != seed) {
+                        ++x;
+                        continue;
+                    }
+                    int runStart = x;
+                    while (x < width && (data[offset + x] | alphaFill) == seed)
+                        data[offset + x++] = argb;
+                    int runEnd = x - 1;
+                    area.add(runStart, runEnd, row);
+                    stack.push(runStart, runEnd, row, direction);
+                    // parts of the run beyond the span may have unvisited neighbours back in the old row
+                    if (runStart < left)
+                        stack.push(runStart, left - 1, row, -direction);
+                    if (runEnd > right)
+                        stack.push(right + 1, runEnd, row, -direction);
+                }
+            }
+            for (var task : forked)
+                area.add(task.join());
+            return area;
+        }
+    }
+
+    private static Area toleranceFill(PixelBuffer pixels, int seed, int argb, int tolerance, int x, int y) {
+        var data = pixels.getData();
+        int alphaFill = pixels.getAlphaFill();
+        int width = pixels.getWidth();
+        int height = pixels.getHeight();
+        var visited = new long[(int) (((long) width * height + 63) >>> 6)];
+        var stack = SpanStack.seed(x, y);
+        var area = new Area();
+
+        while (!stack.isEmpty()) {
+            int left = stack.left();
+            int right = stack.right();
+            int direction = stack.direction();
+            int row = stack.y() + direction;
+            stack.pop();
+            if (row < 0 || row >= height)
+                continue;
+            int offset = row * width;
+            int column = left;
+            if (matches(data, visited, offset + column, alphaFill, seed, tolerance)) {
+                while (column > 0 && matches(data, visited, offset + column - 1, alphaFill, seed, tolerance))
+                    --column;
+            }
+            while (column <= right) {
+                if (!matches(data, visited, offset + column, alphaFill, seed, tolerance)) {
+                    ++column;
+                    continue;
+                }
+                int runStart = column;
+                while (column < width && matches(data, visited, offset + column, alphaFill, seed, tolerance)) {
+                    int index = offset + column++;
+                    visited[index >>> 6] |= 1L << index;
+                    data[index] = argb;
+                }
+                int runEnd = column - 1;
+                area.add(runStart, runEnd, row);
+                stack.push(runStart, runEnd, row, direction);
+                if (runStart < left)
+                    stack.push(runStart, left - 1, row, -direction);
+                if (runEnd > right)
+                    stack.push(right + 1, runEnd, row, -direction);
+            }
+        }
+        return area;
+    }
+
+    private static boolean matches(int[] data, long[] visited, int index, int alphaFill, int seed, int tolerance) {
+        if ((visited[index >>> 6] & 1L << index) != 0)
+            return false;
+        int pixel = data[index] | alphaFill;
+        return Math.abs((pixel >>> 24) - (seed >>> 24)) <= tolerance
+                && Math.abs(((pixel >> 16) & 0xff) - ((seed >> 16) & 0xff)) <= tolerance
+                && Math.abs(((pixel >> 8) & 0xff) - ((seed >> 8) & 0xff)) <= tolerance
+                && Math.abs((pixel & 0xff) - (seed & 0xff)) <= tolerance;
+    }
+
+    /**
+     * Bounding box of the filled runs
+     */
+    private static final class Area {
+        private int minX = Integer.MAX_VALUE;
+        private int minY = Integer.MAX_VALUE;
+        private int maxX = Integer.MIN_VALUE;
+        private int maxY = Integer.MIN_VALUE;
+
+        private void add(int left, int right, int y) {
+            minX = Math.min(minX, left);
+            maxX = Math.max(maxX, right);
+            minY = Math.min(minY, y);
+            maxY = Math.max(maxY, y);
+        }
+
+        private void add(Area other) {
+            if (other.minX > other.maxX)
+                return;
+            add(other.minX, other.maxX, other.minY);
+            add(other.minX, other.maxX, other.maxY);
+        }
+
+        private Rectangle bounds() {
+            return minX > maxX ? new Rectangle() : new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+        }
+    }
+}
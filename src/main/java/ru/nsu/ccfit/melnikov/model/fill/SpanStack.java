@@ -0,0 +1,80 @@
+package ru.nsu.ccfit.melnikov.model.fill;
+
+import java.util.Arrays;
+
+/**
+ * Growable stack of spans packed four ints each: left and right column, row and scan direction.
+ * A span on row {@code y} means that row {@code y + direction} has to be scanned between its ends.
+ *
+ * @author Nikita Melnikov
+ */
+final class SpanStack {
+    private static final int FIELDS = 4;
+    private int[] spans;
+    private int top;
+
+    private SpanStack(int capacity) {
+        spans = new int[capacity * FIELDS];
+    }
+
+    /**
+     * @return stack whose spans scan the seed row and the row below the seed pixel
+     */
+    static SpanStack seed(int x, int y) {
+        var stack = new SpanStack(64);
+        stack.push(x, x, y, 1);
+        stack.push(x, x, y + 1, -1);
+        return stack;
+    }
+
+    void push(int left, int right, int y, int direction) {
+        if (top + FIELDS > spans.length)
+            spans = Arrays.copyOf(spans, spans.length * 2);
+        spans[top] = left;
+        spans[top + 1] = right;
+        spans[top + 2] = y;
+        spans[top + 3] = direction;
+        top += FIELDS;
+    }
+
+    boolean isEmpty() {
+        return top == 0;
+    }
+
+    int size() {
+        return top / FIELDS;
+    }
+
+    int left() {
+        return spans[top - FIELDS];
+    }
+
+    int right() {
+        return spans[top - FIELDS + 1];
+    }
+
+    int y() {
+        return spans[top - FIELDS + 2];
+    }
+
+    int direction() {
+        return spans[top - FIELDS + 3];
+    }
+
+    void pop() {
+        top -= FIELDS;
+    }
+
+    /**
+     * Moves the bottom half of the spans to a new stack
+     */
+    SpanStack splitHalf() {
+        int moved = size() / 2 * FIELDS;
+        var other = new SpanStack(Math.max(moved / FIELDS * 2, 64));
+        System.arraycopy(spans, 0, other.spans, 0, moved);
+        other.top = moved;
+        System.arraycopy(spans, moved, spans, 0, top - moved);
+        top -= moved;
+        return other;
+    }
+}
@@ -0,0 +1,320 @@
+package ru.nsu.ccfit.melnikov.model.history;
+
+import lombok.Getter;
+import ru.nsu.ccfit.melnikov.model.raster.PixelBuffer;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Undo and redo history that stores only the tiles an operation changed.
+ * <p>
+ * The history keeps a copy of the last committed image. {@link #commit} compares the image with it
+ * tile by tile and records the previous content of the tiles that differ, so a pen stroke costs a few tiles
+ * while a global filter costs the whole image. Operations that change the size or type of the image
+ * record the whole previous image.
+ * <p>
+ * All but the newest {@value #RAW_ENTRIES} entries of each stack are deflated on a background thread.
+ * When the entries take more than {@code maxBytes}, the oldest ones are dropped; the committed copy
+ * is not counted.
+ *
+ * @author Nikita Melnikov
+ */
+public class History {
+    private static final int TILE_SIZE = 64;
+    private static final int RAW_ENTRIES = 2;
+    private static final ExecutorService COMPRESSOR = Executors.newSingleThreadExecutor(runnable -> {
+        var thread = new Thread(runnable, "history-compressor");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+    private final Deque<Entry> undoStack = new ArrayDeque<>();
+    private final Deque<Entry> redoStack = new ArrayDeque<>();
+    @Getter
+    private long maxBytes;
+    @Getter
+    private long usedBytes;
+    private int[] committed;
+    private int width;
+    private int height;
+    private int type;
+
+    /**
+     * @param maxBytes memory the entries may take
+     */
+    public History(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        trim();
+    }
+
+    /**
+     * Forgets all entries and takes the image as the committed state
+     */
+    public synchronized void reset(BufferedImage image) {
+        undoStack.forEach(Entry::drop);
+        redoStack.forEach(Entry::drop);
+        undoStack.clear();
+        redoStack.clear();
+        usedBytes = 0;
+        snapshot(image);
+    }
+
+    /**
+     * Records the changes made to the image since the last commit and clears the redo stack
+     *
+     * @param image  current image, possibly a new one
+     * @param region area the changes are known to lie in, or {@code null} to compare the whole image
+     * @return {@code true} if anything changed
+     */
+    public synchronized boolean commit(BufferedImage image, Rectangle region) {
+        if (committed == null) {
+            snapshot(image);
+            return false;
+        }
+        Entry entry;
+        if (!sameFormat(image)) {
+            entry = new Entry(width, height, type, tiles(committed, width, height));
+            snapshot(image);
+        } else {
+            entry = new Entry(width, height, type, changedTiles(image, region));
+            if (entry.tiles.isEmpty())
+                return false;
+        }
+        redoStack.forEach(Entry::drop);
+        usedBytes -= redoStack.stream().mapToLong(Entry::bytes).sum();
+        redoStack.clear();
+        push(undoStack, entry);
+        return true;
+    }
+
+    public synchronized boolean canUndo() {
+        return !undoStack.isEmpty();
+    }
+
+    public synchronized boolean canRedo() {
+        return !redoStack.isEmpty();
+    }
+
+    /**
+     * Restores the state before the last committed operation
+     *
+     * @param image current image
+     * @return restored image: the same object modified in place, or a new one if the size or type changes
+     */
+    public synchronized BufferedImage undo(BufferedImage image) {
+        return move(undoStack, redoStack, image);
+    }
+
+    /**
+     * Repeats the last undone operation
+     *
+     * @param image current image
+     * @return restored image: the same object modified in place, or a new one if the size or type changes
+     */
+    public synchronized BufferedImage redo(BufferedImage image) {
+        return move(redoStack, undoStack, image);
+    }
+
+    private BufferedImage move(Deque<Entry> from, Deque<Entry> to, BufferedImage image) {
+        if (from.isEmpty())
+            return image;
+        var entry = from.pop();
+        usedBytes -= entry.bytes();
+        entry.drop();
+
+        BufferedImage result;
+        Entry inverse;
+        if (entry.width == width && entry.height == height && entry.type == type && sameFormat(image)) {
+            var previous = new ArrayList<TileDelta>(entry.tiles.size());
+            for (var tile : entry.tiles) {
+                previous.add(new TileDelta(tile.getX(), tile.getY(), tile.getWidth(), tile.getHeight(),
+                        copyTile(committed, width, tile.getX(), tile.getY(), tile.getWidth(), tile.getHeight())));
+                restore(tile, image);
+            }
+            inverse = new Entry(width, height, type, previous);
+            result = image;
+        } else {
+            inverse = new Entry(width, height, type, tiles(committed, width, height));
+            result = PixelBuffer.create(entry.width, entry.height, entry.type).getImage();
+            committed = new int[entry.width * entry.height];
+            width = entry.width;
+            height = entry.height;
+            type = result.getType();
+            for (var tile : entry.tiles)
+                restore(tile, result);
+        }
+        push(to, inverse);
+        return result;
+    }
+
+    /**
+     * Writes a tile into the image and the committed copy
+     */
+    private void restore(TileDelta tile, BufferedImage image) {
+        var pixels = tile.pixels();
+        PixelBuffer.writeRegion(image, tile.getX(), tile.getY(), tile.getWidth(), tile.getHeight(), pixels);
+        for (int row = 0; row < tile.getHeight(); ++row)
+            System.arraycopy(pixels, row * tile.getWidth(),
+                    committed, (tile.getY() + row) * width + tile.getX(), tile.getWidth());
+    }
+
+    private void push(Deque<Entry> stack, Entry entry) {
+        stack.push(entry);
+        usedBytes += entry.bytes();
+        int index = 0;
+        for (var old : stack) {
+            if (index++ >= RAW_ENTRIES)
+                scheduleCompression(old);
+        }
+        trim();
+    }
+
+    private void trim() {
+        if (usedBytes <= maxBytes)
+            return;
+        // deflate everything before dropping entries that would fit compressed
+        undoStack.forEach(this::compress);
+        redoStack.forEach(this::compress);
+        while (usedBytes > maxBytes && !(undoStack.isEmpty() && redoStack.isEmpty())) {
+            var dropped = !undoStack.isEmpty() ? undoStack.removeLast() : redoStack.removeLast();
+            usedBytes -= dropped.bytes();
+            dropped.drop();
+        }
+    }
+
+    private void scheduleCompression(Entry entry) {
+        if (entry.scheduled)
+            return;
+        entry.scheduled = true;
+        COMPRESSOR.execute(() -> compress(entry));
+    }
+
+    private void compress(Entry entry) {
+        for (var tile : entry.tiles) {
+            var data = tile.deflate();
+            if (data == null)
+                continue;
+            synchronized (this) {
+                if (!entry.live)
+                    return;
+                long before = tile.bytes();
+                if (data.length < before && !tile.isCompressed()) {
+                    tile.setCompressed(data);
+                    usedBytes += data.length - before;
+                }
+            }
+        }
+    }
+
+    private boolean sameFormat(BufferedImage image) {
+        return image.getWidth() == width && image.getHeight() == height
+                && PixelBuffer.compatibleType(image.getType()) == type;
+    }
+
+    private void snapshot(BufferedImage image) {
+        width = image.getWidth();
+        height = image.getHeight();
+        type = PixelBuffer.compatibleType(image.getType());
+        committed = new int[width * height];
+        PixelBuffer.readRegion(image, 0, 0, width, height, committed);
+    }
+
+    /**
+     * Compares the image with the committed copy and brings the copy up to date
+     *
+     * @return previous content of the tiles that differ
+     */
+    private List<TileDelta> changedTiles(BufferedImage image, Rectangle region) {
+        var area = new Rectangle(0, 0, width, height);
+        if (region != null)
+            area = area.intersection(region);
+        var tiles = new ArrayList<TileDelta>();
+        if (area.isEmpty())
+            return tiles;
+        var current = new int[TILE_SIZE * TILE_SIZE];
+        int firstRow = area.y / TILE_SIZE * TILE_SIZE;
+        int firstColumn = area.x / TILE_SIZE * TILE_SIZE;
+        for (int y = firstRow; y < area.y + area.height; y += TILE_SIZE) {
+            int tileHeight = Math.min(TILE_SIZE, height - y);
+            for (int x = firstColumn; x < area.x + area.width; x += TILE_SIZE) {
+                int tileWidth = Math.min(TILE_SIZE, width - x);
+                PixelBuffer.readRegion(image, x, y, tileWidth, tileHeight, current);
+                if (!differs(current, x, y, tileWidth, tileHeight))
+                    continue;
+                tiles.add(new TileDelta(x, y, tileWidth, tileHeight,
+                        copyTile(committed, width, x, y, tileWidth, tileHeight)));
+                for (int row = 0; row < tileHeight; ++row)
+                    System.arraycopy(current, row * tileWidth, committed, (y + row) * width + x, tileWidth);
+            }
+        }
+        return tiles;
+    }
+
+    private boolean differs(int[] current, int x, int y, int tileWidth, int tileHeight) {
+        for (int row = 0; row < tileHeight; ++row) {
+            int offset = (y + row) * width + x;
+            if (Arrays.mismatch(current, row * tileWidth, (row + 1) * tileWidth,
+                    committed, offset, offset + tileWidth) >= 0)
+                return true;
+        }
+        return false;
+    }
+
+    private static List<TileDelta> tiles(int[] pixels, int width, int height) {
+        var tiles = new ArrayList<TileDelta>();
+        for (int y = 0; y < height; y += TILE_SIZE) {
+            for (int x = 0; x < width; x += TILE_SIZE) {
+                int tileWidth = Math.min(TILE_SIZE, width - x);
+                int tileHeight = Math.min(TILE_SIZE, height - y);
+                tiles.add(new TileDelta(x, y, tileWidth, tileHeight, copyTile(pixels, width, x, y, tileWidth, tileHeight)));
+            }
+        }
+        return tiles;
+    }
+
+    private static int[] copyTile(int[] pixels, int width, int x, int y, int tileWidth, int tileHeight) {
+        var tile = new int[tileWidth * tileHeight];
+        for (int row = 0; row < tileHeight; ++row)
+            System.arraycopy(pixels, (y + row) * width + x, tile, row * tileWidth, tileWidth);
+        return tile;
+    }
+
+    /**
+     * Tiles recorded by one operation together with the size and type of the image they belong to
+     */
+    private static final class Entry {
+        private final int width;
+        private final int height;
+        private final int type;
+        private final List<TileDelta> tiles;
+        private boolean scheduled;
+        private volatile boolean live = true;
+
+        private Entry(int width, int height, int type, List<TileDelta> tiles) {
+            this.width = width;
+            this.height = height;
+            this.type = type;
+            this.tiles = tiles;
+        }
+
+        private long bytes() {
+            return tiles.stream().mapToLong(TileDelta::bytes).sum();
+        }
+
+        private void drop() {
+            live = false;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package ru.nsu.ccfit.melnikov.model.history;
+
+import lombok.Getter;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Pixels of one rectangular tile, kept as a raw ARGB array or deflated.
+ * <p>
+ * Raw arrays are never modified after construction, so they can be compressed on another thread
+ * while the history keeps using them.
+ *
+ * @author Nikita Melnikov
+ */
+final class TileDelta {
+    @Getter
+    private final int x;
+    @Getter
+    private final int y;
+    @Getter
+    private final int width;
+    @Getter
+    private final int height;
+    private int[] pixels;
+    private byte[] compressed;
+
+    TileDelta(int x, int y, int width, int height, int[] pixels) {
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        this.pixels = pixels;
+    }
+
+    /**
+     * @return pixels of the tile, row by row; inflated on every call for compressed tiles
+     */
+    synchronized int[] pixels() {
+        if (pixels != null)
+            return pixels;
+        var inflater = new Inflater();
+        try {
+            var bytes = new byte[width * height * Integer.BYTES];
+            inflater.setInput(compressed);
+            int length = 0;
+            while (length < bytes.length && !inflater.finished())
+                length += inflater.inflate(bytes, length, bytes.length - length);
+            var result = new int[width * height];
+            ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(result);
+            return result;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupted history tile", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    synchronized boolean isCompressed() {
+        return compressed != null;
+    }
+
+    /**
+     * @return bytes the tile occupies now
+     */
+    synchronized long bytes() {
+        return compressed != null ? compressed.length : (long) pixels.length * Integer.BYTES;
+    }
+
+    /**
+     * Deflates a raw tile; the caller swaps the result in with {@link #setCompressed(byte[])}
+     *
+     * @return deflated pixels, or {@code null} if the tile is already compressed
+     */
+    byte[] deflate() {
+        int[] raw;
+        synchronized (this) {
+            if (compressed != null)
+                return null;
+            raw = pixels;
+        }
+        var bytes = ByteBuffer.allocate(raw.length * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.asIntBuffer().put(raw);
+        var deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(bytes.array());
+            deflater.finish();
+            var out = new ByteArrayOutputStream(raw.length);
+            var buffer = new byte[8192];
+            while (!deflater.finished())
+                out.write(buffer, 0, deflater.deflate(buffer));
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    synchronized void setCompressed(byte[] data) {
+        compressed = data;
+        pixels = null;
+    }
+}
@@ -0,0 +1,128 @@
+package ru.nsu.ccfit.melnikov.model.lut;
+
+import ru.nsu.ccfit.melnikov.model.parallel.BandExecutor;
+import ru.nsu.ccfit.melnikov.model.pipeline.Pipeline;
+import ru.nsu.ccfit.melnikov.model.pipeline.Stage;
+import ru.nsu.ccfit.melnikov.model.raster.PixelBuffer;
+
+import java.awt.image.BufferedImage;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Point operation given by a 256-entry lookup table per color channel; alpha is kept as is.
+ * <p>
+ * Chains of point operations compose into a single table with {@link #andThen(ChannelLut)},
+ * so gamma, offset and inverse applied in a row cost one pass over the pixels. As a {@link Stage}
+ * the table is fused with its neighbours in a {@link Pipeline}.
+ *
+ * @author Nikita Melnikov
+ */
+public final class ChannelLut implements Stage {
+    private static final int SIZE = 256;
+    private final int[] red;
+    private final int[] green;
+    private final int[] blue;
+
+    private ChannelLut(int[] red, int[] green, int[] blue) {
+        this.red = red;
+        this.green = green;
+        this.blue = blue;
+    }
+
+    /**
+     * @param function mapping of a channel value in {@code [0, 255]}, results are clamped to that range
+     * @return table applying the same mapping to red, green and blue
+     */
+    public static ChannelLut of(IntUnaryOperator function) {
+        return of(function, function, function);
+    }
+
+    public static ChannelLut of(IntUnaryOperator red, IntUnaryOperator green, IntUnaryOperator blue) {
+        return new ChannelLut(table(red), table(green), table(blue));
+    }
+
+    public static ChannelLut identity() {
+        return of(value -> value);
+    }
+
+    /**
+     * @param gamma exponent applied to normalized channel values
+     */
+    public static ChannelLut gamma(double gamma) {
+        return of(value -> (int) (Math.pow(value / 255.0, gamma) * 255));
+    }
+
+    public static ChannelLut inverse() {
+        return of(value -> 255 - value);
+    }
+
+    /**
+     * @param offset value added to every channel
+     */
+    public static ChannelLut offset(int offset) {
+        return of(value -> value + offset);
+    }
+
+    /**
+     * @param threshold channel values above it become 255, the rest become 0
+     */
+    public static ChannelLut threshold(int threshold) {
+        return of(value -> value > threshold ? 255 : 0);
+    }
+
+    /**
+     * @param next operation applied to the output of this one
+     * @return single table equal to applying this table and then {@code next}
+     */
+    public ChannelLut andThen(ChannelLut next) {
+        var r = new int[SIZE];
+        var g = new int[SIZE];
+        var b = new int[SIZE];
+        for (int value = 0; value < SIZE; ++value) {
+            r[value] = next.red[red[value]];
+            g[value] = next.green[green[value]];
+            b[value] = next.blue[blue[value]];
+        }
+        return new ChannelLut(r, g, b);
+    }
+
+    /**
+     * @param argb pixel in the default ARGB color model
+     * @return mapped pixel with the same alpha
+     */
+    public int apply(int argb) {
+        return argb & 0xFF000000
+                | red[(argb >> 16) & 0xff] << 16
+                | green[(argb >> 8) & 0xff] << 8
+                | blue[argb & 0xff];
+    }
+
+    /**
+     * @param image    source image
+     * @param type     preferred type of the result
+     * @param executor executor the bands run on
+     * @return new image with the table applied to every pixel
+     */
+    public BufferedImage apply(BufferedImage image, int type, BandExecutor executor) {
+        return Pipeline.of(this).run(image, type, executor);
+    }
+
+    @Override
+    public int halo() {
+        return 0;
+    }
+
+    @Override
+    public void apply(PixelBuffer src, PixelBuffer dst, int fromY, int toY) {
+        int width = src.getWidth();
+        for (int i = fromY * width; i < toY * width; ++i)
+            dst.set(i, apply(src.get(i)));
+    }
+
+    private static int[] table(IntUnaryOperator function) {
+        var table = new int[SIZE];
+        for (int value = 0; value < SIZE; ++value)
+            table[value] = Math.max(0, Math.min(255, function.applyAsInt(value)));
+        return table;
+    }
+}
@@ -0,0 +1,193 @@
+package ru.nsu.ccfit.melnikov.model.median;
+
+import ru.nsu.ccfit.melnikov.model.parallel.BandExecutor;
+import ru.nsu.ccfit.melnikov.model.raster.PixelBuffer;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * Per-channel median filter in constant time per pixel (Perreault and Hebert).
+ * <p>
+ * Every column keeps a histogram of its {@code 2r + 1} pixels that is updated with one add and one remove
+ * when moving down a row; the window histogram moving right adds one column histogram and removes another.
+ * Histograms have a coarse level of 16 bins that is updated on every step and a fine level of 256 bins
+ * whose 16-bin segments are brought up to date only when the median search enters them.
+ * <p>
+ * Bands are processed in vertical strips so the column histograms of a strip stay in cache.
+ * Pixels whose window leaves the image keep their source value.
+ *
+ * @author Nikita Melnikov
+ */
+public final class MedianFilter {
+    private static final int STRIP_WIDTH = 256;
+    private static final int BINS = 256;
+    private static final int COARSE = 16;
+    private static final int CHANNELS = 3;
+
+    private MedianFilter() {
+    }
+
+    /**
+     * @param image    source image
+     * @param radius   window radius, the window is {@code (2r + 1) x (2r + 1)}
+     * @param executor executor the bands run on
+     * @return image whose red, green and blue channels are the medians of the windows
+     */
+    public static BufferedImage apply(BufferedImage image, int radius, BandExecutor executor) {
+        var src = PixelBuffer.of(image);
+        int width = src.getWidth();
+        int height = src.getHeight();
+        var dst = PixelBuffer.create(width, height, BufferedImage.TYPE_INT_ARGB);
+
+        executor.forEachBand(height, radius, band -> filterRows(src, dst, radius, band.fromY(), band.toY()));
+        return dst.getImage();
+    }
+
+    /**
+     * Computes rows {@code [fromY, toY)} of the median image
+     *
+     * @param src    source pixels, holding at least rows {@code [fromY - radius, toY + radius)} clipped to the image
+     * @param dst    destination pixels
+     * @param radius window radius
+     * @param fromY  first row
+     * @param toY    row after the last one
+     */
+    public static void filterRows(PixelBuffer src, PixelBuffer dst, int radius, int fromY, int toY) {
+        int width = src.getWidth();
+        int height = src.getHeight();
+        int innerFromY = Math.max(fromY, radius);
+        int innerToY = Math.min(toY, height - radius);
+        for (int y = fromY; y < toY; ++y) {
+            if (y < innerFromY || y >= innerToY) {
+                src.copyRow(dst, y);
+            } else {
+                int offset = y * width;
+                for (int x = 0; x < Math.min(radius, width); ++x)
+                    dst.set(offset + x, src.get(offset + x));
+                for (int x = Math.max(width - radius, radius); x < width; ++x)
+                    dst.set(offset + x, src.get(offset + x));
+            }
+        }
+        if (innerFromY >= innerToY || width <= 2 * radius)
+            return;
+        var strip = new Strip(Math.min(STRIP_WIDTH, width - 2 * radius) + 2 * radius, radius);
+        for (int x0 = radius; x0 < width - radius; x0 += STRIP_WIDTH)
+            strip.filter(src, dst, x0, Math.min(x0 + STRIP_WIDTH, width - radius), innerFromY, innerToY);
+    }
+
+    /**
+     * Histograms of one vertical strip, reused for every strip of a band
+     */
+    private static final class Strip {
+        private final int radius;
+        private final int window;
+        private final int half;
+        private final char[][] columnFine;
+        private final char[][] columnCoarse;
+        private final int[][] fine = new int[CHANNELS][BINS];
+        private final int[][] coarse = new int[CHANNELS][COARSE];
+        /**
+         * Output column each fine segment of the window histogram is up to date for
+         */
+        private final int[][] segmentColumn = new int[CHANNELS][COARSE];
+
+        private Strip(int columns, int radius) {
+            this.radius = radius;
+            this.window = 2 * radius + 1;
+            this.half = window * window / 2;
+            columnFine = new char[CHANNELS][columns * BINS];
+            columnCoarse = new char[CHANNELS][columns * COARSE];
+        }
+
+        /**
+         * Filters output columns {@code [x0, x1)} of rows {@code [fromY, toY)}
+         */
+        private void filter(PixelBuffer src, PixelBuffer dst, int x0, int x1, int fromY, int toY) {
+            int width = src.getWidth();
+            int firstColumn = x0 - radius;
+            int columns = x1 - x0 + 2 * radius;
+            for (int c = 0; c < CHANNELS; ++c) {
+                Arrays.fill(columnFine[c], 0, columns * BINS, (char) 0);
+                Arrays.fill(columnCoarse[c], 0, columns * COARSE, (char) 0);
+            }
+            for (int y = fromY - radius; y < fromY + radius; ++y)
+                updateColumns(src, y * width + firstColumn, columns, 1);
+
+            for (int y = fromY; y < toY; ++y) {
+                if (y > fromY)
+                    updateColumns(src, (y - radius - 1) * width + firstColumn, columns, -1);
+                updateColumns(src, (y + radius) * width + firstColumn, columns, 1);
+
+                for (int c = 0; c < CHANNELS; ++c) {
+                    Arrays.fill(coarse[c], 0);
+                    Arrays.fill(segmentColumn[c], Integer.MIN_VALUE / 2);
+                    for (int column = 0; column < window; ++column)
+                        for (int bin = 0; bin < COARSE; ++bin)
+                            coarse[c][bin] += columnCoarse[c][column * COARSE + bin];
+                }
+
+                int offset = y * width;
+                for (int x = x0; x < x1; ++x) {
+                    // local index of the window's centre column
+                    int centre = x - firstColumn;
+                    if (x > x0) {
+                        int added = (centre + radius) * COARSE;
+                        int removed = (centre - radius - 1) * COARSE;
+                        for (int c = 0; c < CHANNELS; ++c)
+                            for (int bin = 0; bin < COARSE; ++bin)
+                                coarse[c][bin] += columnCoarse[c][added + bin] - columnCoarse[c][removed + bin];
+                    }
+                    int red = median(0, centre);
+                    int green = median(1, centre);
+                    int blue = median(2, centre);
+                    dst.set(offset + x, src.get(offset + x) & 0xFF000000 | red << 16 | green << 8 | blue);
+                }
+            }
+        }
+
+        private void updateColumns(PixelBuffer src, int offset, int columns, int delta) {
+            for (int column = 0; column < columns; ++column) {
+                int pixel = src.get(offset + column);
+                for (int c = 0; c < CHANNELS; ++c) {
+                    int value = (pixel >> (16 - 8 * c)) & 0xff;
+                    columnFine[c][column * BINS + value] += delta;
+                    columnCoarse[c][column * COARSE + (value >> 4)] += delta;
+                }
+            }
+        }
+
+        private int median(int c, int centre) {
+            int count = 0;
+            int bin = 0;
+            while (count + coarse[c][bin] <= half)
+                count += coarse[c][bin++];
+            updateSegment(c, bin, centre);
+            int value = bin * COARSE;
+            while (count + fine[c][value] <= half)
+                count += fine[c][value++];
+            return value;
+        }
+
+        private void updateSegment(int c, int segment, int centre) {
+            int from = segment * COARSE;
+            int last = segmentColumn[c][segment];
+            var histogram = fine[c];
+            var columns = columnFine[c];
+            if (centre - last > window) {
+                Arrays.fill(histogram, from, from + COARSE, 0);
+                for (int column = centre - radius; column <= centre + radius; ++column)
+                    for (int bin = from; bin < from + COARSE; ++bin)
+                        histogram[bin] += columns[column * BINS + bin];
+            } else {
+                for (int step = last + 1; step <= centre; ++step) {
+                    int added = (step + radius) * BINS;
+                    int removed = (step - radius - 1) * BINS;
+                    for (int bin = from; bin < from + COARSE; ++bin)
+                        histogram[bin] += columns[added + bin] - columns[removed + bin];
+                }
+            }
+            segmentColumn[c][segment] = centre;
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package ru.nsu.ccfit.melnikov.model.mipmap;
+
+import ru.nsu.ccfit.melnikov.model.raster.PixelBuffer;
+import ru.nsu.ccfit.melnikov.model.tiled.TiledImage;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Mip-map pyramid of a document for painting it at any zoom.
+ * <p>
+ * Level 0 is the document itself, every next level halves both sides of the previous one with a 2x2 box
+ * filter. Levels are built on first use and kept until the document changes: {@link #invalidate(Rectangle)}
+ * marks a region stale and only that region is recomputed on the next use of a level. Levels of more than
+ * {@value #MEMORY_LEVEL_PIXELS} pixels are {@link TiledImage tiled}, smaller ones are held in memory, so a
+ * zoomed out view of a tiled document is painted from the heap.
+ *
+ * @author Nikita Melnikov
+ */
+public final class ImagePyramid implements AutoCloseable {
+    private static final int MEMORY_LEVEL_PIXELS = 1 << 24;
+    /**
+     * Tile cache of the first tiled level, divided by four for every next one
+     */
+    private static final long LEVEL_CACHE_BYTES = 64L << 20;
+    /**
+     * Rows of the previous level read at once while downsampling, times its width in pixels
+     */
+    private static final int STRIP_PIXELS = 1 << 20;
+    private final List<Level> levels = new ArrayList<>();
+    /**
+     * Buffer the visible region of a tiled level is copied into for painting
+     */
+    private BufferedImage regionBuffer;
+
+    /**
+     * Pixels of one level, either an image or a tiled image
+     */
+    private static final class Level {
+        private final int width;
+        private final int height;
+        private final BufferedImage image;
+        private final TiledImage tiled;
+        /**
+         * Region that no longer matches the level below, {@code null} if there is none
+         */
+        private Rectangle stale;
+
+        private Level(BufferedImage image) {
+            this.width = image.getWidth();
+            this.height = image.getHeight();
+            this.image = image;
+            this.tiled = null;
+        }
+
+        private Level(TiledImage tiled) {
+            this.width = tiled.getWidth();
+            this.height = tiled.getHeight();
+            this.image = null;
+            this.tiled = tiled;
+        }
+
+        private void read(int x, int y, int width, int height, int[] pixels) {
+            if (image != null)
+                PixelBuffer.readRegion(image, x, y, width, height, pixels);
+            else
+                tiled.readRegion(x, y, width, height, pixels);
+        }
+
+        private void write(int x, int y, int width, int height, int[] pixels) {
+            if (image != null)
+                PixelBuffer.writeRegion(image, x, y, width, height, pixels);
+            else
+                tiled.writeRegion(x, y, width, height, pixels);
+        }
+    }
+
+    private ImagePyramid(Level base) {
+        levels.add(base);
+    }
+
+    /**
+     * @param image document, which the pyramid keeps as level 0 without copying
+     */
+    public static ImagePyramid of(BufferedImage image) {
+        return new ImagePyramid(new Level(image));
+    }
+
+    /**
+     * @param image document, which the pyramid keeps as level 0 without copying
+     */
+    public static ImagePyramid of(TiledImage image) {
+        return new ImagePyramid(new Level(image));
+    }
+
+    /**
+     * @param zoom ratio of painted to document pixels
+     * @return deepest level that is not smaller than the document painted at that zoom
+     */
+    public int levelFor(double zoom) {
+        int level = 0;
+        var base = levels.get(0);
+        while (zoom * (2L << level) <= 1 && ((base.width - 1) >> level > 0 || (base.height - 1) >> level > 0))
+            ++level;
+        return level;
+    }
+
+    /**
+     * Paints a region of a level at its own coordinates; the caller scales the graphics to the zoom
+     *
+     * @param g      graphics scaled by {@code zoom * 2^level}
+     * @param level  pyramid level, see {@link #levelFor(double)}
+     * @param region region in level coordinates, clipped to the level
+     */
+    public void paint(Graphics2D g, int level, Rectangle region) {
+        var pixels = level(level);
+        var visible = region.intersection(new Rectangle(0, 0, pixels.width, pixels.height));
+        if (visible.isEmpty())
+            return;
+        int x2 = visible.x + visible.width;
+        int y2 = visible.y + visible.height;
+        if (pixels.image != null) {
+            g.drawImage(pixels.image, visible.x, visible.y, x2, y2, visible.x, visible.y, x2, y2, null);
+            return;
+        }
+        if (regionBuffer == null || regionBuffer.getWidth() < visible.width || regionBuffer.getHeight() < visible.height)
+            regionBuffer = new BufferedImage(visible.width, visible.height, BufferedImage.TYPE_INT_ARGB);
+        var data = ((DataBufferInt) regionBuffer.getRaster().getDataBuffer()).getData();
+        pixels.tiled.readRegion(visible.x, visible.y, visible.width, visible.height, data, 0,
+                regionBuffer.getWidth());
+        g.drawImage(regionBuffer, visible.x, visible.y, x2, y2, 0, 0, visible.width, visible.height, null);
+    }
+
+    /**
+     * @param level  pyramid level, see {@link #levelFor(double)}
+     * @param region region in document coordinates
+     * @return new {@code TYPE_INT_ARGB} image holding the region at the resolution of the level
+     */
+    public BufferedImage copy(int level, Rectangle region) {
+        var pixels = level(level);
+        int x1 = region.x >> level;
+        int y1 = region.y >> level;
+        int x2 = Math.max(x1 + 1, (region.x + region.width + (1 << level) - 1) >> level);
+        int y2 = Math.max(y1 + 1, (region.y + region.height + (1 << level) - 1) >> level);
+        var visible = new Rectangle(x1, y1, x2 - x1, y2 - y1)
+                .intersection(new Rectangle(0, 0, pixels.width, pixels.height));
+        var copy = new BufferedImage(Math.max(1, visible.width), Math.max(1, visible.height),
+                BufferedImage.TYPE_INT_ARGB);
+        if (!visible.isEmpty())
+            pixels.read(visible.x, visible.y, visible.width, visible.height,
+                    ((DataBufferInt) copy.getRaster().getDataBuffer()).getData());
+        return copy;
+    }
+
+    /**
+     * Marks a changed region of the document; the levels built so far recompute it on their next use
+     *
+     * @param region changed region in document coordinates, {@code null} if all of it has changed
+     */
+    public void invalidate(Rectangle region) {
+        for (int k = 1; k < levels.size(); ++k) {
+            var level = levels.get(k);
+            var scaled = region == null ? new Rectangle(0, 0, level.width, level.height)
+                    : new Rectangle(region.x >> k, region.y >> k,
+                    ((region.x + region.width - 1) >> k) - (region.x >> k) + 1,
+                    ((region.y + region.height - 1) >> k) - (region.y >> k) + 1);
+            level.stale = level.stale == null ? scaled : level.stale.union(scaled);
+        }
+    }
+
+    /**
+     * Closes the tiled levels; the document itself is left open
+     */
+    @Override
+    public void close() {
+        for (int k = 1; k < levels.size(); ++k) {
+            var level = levels.get(k);
+            if (level.tiled != null)
+                level.tiled.close();
+        }
+        levels.subList(1, levels.size()).clear();
+        regionBuffer = null;
+    }
+
+    /**
+     * @return the level, built or brought up to date along with all levels below it
+     */
+    private Level level(int index) {
+        for (int k = 1; k <= index; ++k) {
+            var below = levels.get(k - 1);
+            if (k == levels.size()) {
+                var level = create(k, (below.width + 1) / 2, (below.height + 1) / 2);
+                levels.add(level);
+                downsample(below, level, new Rectangle(0, 0, level.width, level.height));
+                continue;
+            }
+            var level = levels.get(k);
+            if (level.stale != null) {
+                downsample(below, level, level.stale.intersection(new Rectangle(0, 0, level.width, level.height)));
+                level.stale = null;
+            }
+        }
+        return levels.get(index);
+    }
+
+    private static Level create(int index, int width, int height) {
+        if ((long) width * height <= MEMORY_LEVEL_PIXELS)
+            return new Level(new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB));
+        long cacheBytes = LEVEL_CACHE_BYTES >> 2 * (index - 1);
+        return new Level(new TiledImage(width, height, TiledImage.DEFAULT_TILE_SIZE, cacheBytes));
+    }
+
+    /**
+     * Recomputes a region of a level from the level below, a strip of rows at a time; the last row and
+     * column of an odd-sized level repeat the edge of the level below
+     */
+    private static void downsample(Level below, Level level, Rectangle region) {
+        if (region.isEmpty())
+            return;
+        int fromX = 2 * region.x;
+        int toX = Math.min(2 * (region.x + region.width), below.width);
+        int sourceWidth = toX - fromX;
+        int stripRows = Math.max(1, STRIP_PIXELS / (2 * sourceWidth));
+        var source = new int[2 * Math.min(stripRows, region.height) * sourceWidth];
+        var result = new int[Math.min(stripRows, region.height) * region.width];
+
+        for (int y = region.y; y < region.y + region.height; y += stripRows) {
+            int rows = Math.min(stripRows, region.y + region.height - y);
+            int sourceRows = Math.min(2 * rows, below.height - 2 * y);
+            below.read(fromX, 2 * y, sourceWidth, sourceRows, source);
+            for (int row = 0; row < rows; ++row) {
+                int top = 2 * row * sourceWidth;
+                int bottom = Math.min(2 * row + 1, sourceRows - 1) * sourceWidth;
+                for (int x = 0; x < region.width; ++x) {
+                    int left = 2 * x;
+                    int right = Math.min(left + 1, sourceWidth - 1);
+                    result[row * region.width + x] = average(source[top + left], source[top + right],
+                            source[bottom + left], source[bottom + right]);
+                }
+            }
+            level.write(region.x, y, region.width, rows, result);
+        }
+    }
+
+    private static int average(int a, int b, int c, int d) {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            int sum = ((a >>> shift) & 0xff) + ((b >>> shift) & 0xff) + ((c >>> shift) & 0xff)
+                    + ((d >>> shift) & 0xff);
+            result |= ((sum + 2) >> 2) << shift;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,125 @@
+package ru.nsu.ccfit.melnikov.model.normal;
+
+import ru.nsu.ccfit.melnikov.model.parallel.BandExecutor;
+import ru.nsu.ccfit.melnikov.model.raster.PixelBuffer;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Tangent-space normal map of an image read as a height field.
+ * <p>
+ * The image is converted once to a plane of float heights, the luminance of every pixel from 0 to 1.
+ * The Sobel derivatives are separable, so each row of the result takes one pass: the vertical smoothing and
+ * difference of every column of three plane rows, then the horizontal difference and smoothing of those.
+ * A normal {@code (dX, dY, 1 / strength)} is normalized and stored as RGB, each component mapped from
+ * {@code [-1, 1]} to {@code [0, 255]}.
+ * <p>
+ * Samples past the edge either repeat it or, for tileable textures, wrap around to the opposite edge, so
+ * that the map tiles seamlessly as well.
+ *
+ * @author Nikita Melnikov
+ */
+public final class NormalMap {
+    public static final float DEFAULT_STRENGTH = 8;
+    private final float strength;
+    private final boolean wrap;
+
+    /**
+     * @param strength steepness of the relief, the inverse of the normal's Z component before normalization
+     * @param wrap     whether samples past an edge wrap around to the opposite one
+     */
+    public NormalMap(float strength, boolean wrap) {
+        this.strength = strength;
+        this.wrap = wrap;
+    }
+
+    /**
+     * @param image    height field
+     * @param executor executor the rows are computed on
+     * @return normal map of the size of the image
+     */
+    public BufferedImage apply(BufferedImage image, BandExecutor executor) {
+        var src = PixelBuffer.of(image);
+        int width = src.getWidth();
+        int height = src.getHeight();
+        var plane = new float[width * height];
+        executor.forEachBand(height, 0, band -> heights(src, plane, 0, band.fromY(), band.toY()));
+        var dst = PixelBuffer.create(width, height, BufferedImage.TYPE_INT_RGB);
+        executor.forEachBand(height, 0, band -> apply(plane, 0, dst, band.fromY(), band.toY()));
+        return dst.getImage();
+    }
+
+    /**
+     * Converts rows {@code [fromY, toY)} of an image to heights
+     *
+     * @param src        image, possibly a window
+     * @param plane      heights of the rows from {@code planeFromY} on, {@code src.getWidth()} per row
+     * @param planeFromY image row stored first in the plane
+     */
+    public static void heights(PixelBuffer src, float[] plane, int planeFromY, int fromY, int toY) {
+        int width = src.getWidth();
+        for (int y = fromY; y < toY; ++y) {
+            int offset = y * width;
+            int planeOffset = (y - planeFromY) * width;
+            for (int x = 0; x < width; ++x) {
+                int pixel = src.get(offset + x);
+                plane[planeOffset + x] = (0.299f * ((pixel >> 16) & 0xff) + 0.587f * ((pixel >> 8) & 0xff)
+                        + 0.114f * (pixel & 0xff)) / 255;
+            }
+        }
+    }
+
+    /**
+     * Computes rows {@code [fromY, toY)} of the normal map
+     *
+     * @param plane      heights of the rows from {@code planeFromY} on; must hold the rows above and below
+     *                   the computed ones, clipped to the image, or all rows when wrapping
+     * @param planeFromY image row stored first in the plane
+     * @param dst        normal map, possibly a window
+     */
+    public void apply(float[] plane, int planeFromY, PixelBuffer dst, int fromY, int toY) {
+        int width = dst.getWidth();
+        int height = dst.getHeight();
+        float dZ = 1 / strength;
+        // column sums and differences, padded by a column on each side
+        var smooth = new float[width + 2];
+        var difference = new float[width + 2];
+        for (int y = fromY; y < toY; ++y) {
+            int above = (neighbour(y - 1, height) - planeFromY) * width;
+            int row = (y - planeFromY) * width;
+            int below = (neighbour(y + 1, height) - planeFromY) * width;
+            for (int x = 0; x < width; ++x) {
+                smooth[x + 1] = plane[above + x] + 2 * plane[row + x] + plane[below + x];
+                difference[x + 1] = plane[below + x] - plane[above + x];
+            }
+            int left = neighbour(-1, width) + 1;
+            int right = neighbour(width, width) + 1;
+            smooth[0] = smooth[left];
+            difference[0] = difference[left];
+            smooth[width + 1] = smooth[right];
+            difference[width + 1] = difference[right];
+
+            int offset = y * width;
+            for (int x = 1; x <= width; ++x) {
+                float dX = smooth[x + 1] - smooth[x - 1];
+                float dY = difference[x - 1] + 2 * difference[x] + difference[x + 1];
+                float norm = (float) Math.sqrt(dX * dX + dY * dY + dZ * dZ);
+                dst.set(offset + x - 1, 0xFF000000 | component(dX / norm) << 16 | component(dY / norm) << 8
+                        | component(dZ / norm));
+            }
+        }
+    }
+
+    /**
+     * @return index of the sample at {@code index}, wrapped or clamped to {@code [0, size)}
+     */
+    private int neighbour(int index, int size) {
+        if (index >= 0 && index < size)
+            return index;
+        return wrap ? Math.floorMod(index, size) : Math.max(0, Math.min(index, size - 1));
+    }
+
+    private static int component(float value) {
+        return (int) ((value + 1) * (255 / 2.0f));
+    }
+}
@@ -0,0 +1,153 @@
+package ru.nsu.ccfit.melnikov.model.parallel;
+
+import lombok.Getter;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a filter over horizontal bands of the output image on a {@link ForkJoinPool}.
+ * <p>
+ * Every band writes only its own output rows, so filters that compute an output pixel from the source alone
+ * may be split at any row. In deterministic mode band boundaries depend only on the image height and
+ * the configured band height, never on the pool size, so the output is bit-identical to the serial path
+ * even for filters whose result depends on where a band starts.
+ * <p>
+ * Completed rows are reported to the {@link ProgressMonitor} of the calling thread, which is also checked
+ * for cancellation before every band.
+ *
+ * @author Nikita Melnikov
+ */
+@Getter
+public final class BandExecutor {
+    public static final int DEFAULT_BAND_HEIGHT = 64;
+    private static final int BANDS_PER_THREAD = 4;
+    /**
+     * Lower bound on the number of adaptive bands, keeps progress reporting and cancellation responsive
+     */
+    private static final int MIN_BANDS = 32;
+    private final ForkJoinPool pool;
+    private final int bandHeight;
+    private final boolean deterministic;
+
+    /**
+     * Rows handled by one task
+     *
+     * @param fromY    first output row, inclusive
+     * @param toY      last output row, exclusive
+     * @param haloFrom first source row the band reads, inclusive
+     * @param haloTo   last source row the band reads, exclusive
+     */
+    public record Band(int fromY, int toY, int haloFrom, int haloTo) {
+    }
+
+    @FunctionalInterface
+    public interface BandTask {
+        void run(Band band);
+    }
+
+    /**
+     * @param pool          pool the bands are executed on
+     * @param bandHeight    rows per band in deterministic mode, minimal rows per band otherwise
+     * @param deterministic whether band boundaries must not depend on the pool parallelism
+     */
+    public BandExecutor(ForkJoinPool pool, int bandHeight, boolean deterministic) {
+        if (bandHeight < 1)
+            throw new IllegalArgumentException("Band height must be positive: " + bandHeight);
+        this.pool = pool;
+        this.bandHeight = bandHeight;
+        this.deterministic = deterministic;
+    }
+
+    /**
+     * @return executor on the common pool with adaptive band sizes
+     */
+    public static BandExecutor common() {
+        return new BandExecutor(ForkJoinPool.commonPool(), DEFAULT_BAND_HEIGHT / 4, false);
+    }
+
+    /**
+     * @param parallelism number of worker threads
+     * @return executor on a dedicated pool
+     */
+    public static BandExecutor withParallelism(int parallelism) {
+        return new BandExecutor(new ForkJoinPool(parallelism), DEFAULT_BAND_HEIGHT / 4, false);
+    }
+
+    /**
+     * @return executor that runs the whole image as one band in the calling thread
+     */
+    public static BandExecutor serial() {
+        return new BandExecutor(null, Integer.MAX_VALUE, true);
+    }
+
+    /**
+     * Splits {@code [0, height)} into bands and runs the task on each of them, returning when all are done
+     *
+     * @param height image height
+     * @param halo   number of extra source rows above and below a band the task reads
+     * @param task   band body
+     * @throws java.util.concurrent.CancellationException if the filter is cancelled
+     */
+    public void forEachBand(int height, int halo, BandTask task) {
+        var monitor = ProgressMonitor.current();
+        var done = new AtomicInteger();
+        BandTask tracked = band -> {
+            monitor.checkCancelled();
+            task.run(band);
+            monitor.rows(done.addAndGet(band.toY() - band.fromY()), height);
+        };
+        int rows = rowsPerBand(height);
+        int bands = height == 0 ? 0 : (height - 1) / rows + 1;
+        if (pool == null || bands <= 1) {
+            for (int i = 0; i < bands; ++i)
+                tracked.run(band(i, rows, height, halo));
+            return;
+        }
+        pool.invoke(new BandAction(tracked, 0, bands, rows, height, halo));
+    }
+
+    private int rowsPerBand(int height) {
+        if (deterministic)
+            return bandHeight;
+        int bands = pool == null ? 1 : Math.max(MIN_BANDS, pool.getParallelism() * BANDS_PER_THREAD);
+        int target = height / bands;
+        return Math.max(bandHeight, target);
+    }
+
+    private static Band band(int index, int rows, int height, int halo) {
+        int fromY = index * rows;
+        int toY = Math.min(height, fromY + rows);
+        return new Band(fromY, toY, Math.max(0, fromY - halo), Math.min(height, toY + halo));
+    }
+
+    private static final class BandAction extends RecursiveAction {
+        private final BandTask task;
+        private final int from;
+        private final int to;
+        private final int rows;
+        private final int height;
+        private final int halo;
+
+        private BandAction(BandTask task, int from, int to, int rows, int height, int halo) {
+            this.task = task;
+            this.from = from;
+            this.to = to;
+            this.rows = rows;
+            this.height = height;
+            this.halo = halo;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                task.run(band(from, rows, height, halo));
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new BandAction(task, from, middle, rows, height, halo),
+                    new BandAction(task, middle, to, rows, height, halo));
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package ru.nsu.ccfit.melnikov.model.parallel;
+
+import java.util.concurrent.CancellationException;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Progress and cancellation state of a running filter.
+ * <p>
+ * A monitor is bound to the thread that starts a filter with {@link #run(Supplier)};
+ * the filter's row loops report through {@link #current()}, and {@link BandExecutor} carries the monitor
+ * of the calling thread over to its workers.
+ *
+ * @author Nikita Melnikov
+ */
+public final class ProgressMonitor {
+    private static final ProgressMonitor NONE = new ProgressMonitor(percent -> {
+    });
+    private static final ThreadLocal<ProgressMonitor> CURRENT = ThreadLocal.withInitial(() -> NONE);
+    private final IntConsumer listener;
+    private volatile boolean cancelled;
+    private volatile int percent = -1;
+
+    /**
+     * @param listener receives percent-complete of the current filter pass, may be called from any thread
+     */
+    public ProgressMonitor(IntConsumer listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return monitor bound to the calling thread, or a no-op monitor
+     */
+    public static ProgressMonitor current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Runs a filter with this monitor bound to the calling thread
+     *
+     * @param filter filter invocation
+     * @return filter result
+     * @throws CancellationException if the monitor was cancelled while the filter was running
+     */
+    public <T> T run(Supplier<T> filter) {
+        var previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return filter.get();
+        } finally {
+            CURRENT.set(previous);
+        }
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @throws CancellationException if the filter has been cancelled
+     */
+    public void checkCancelled() {
+        if (cancelled)
+            throw new CancellationException("Filter cancelled");
+    }
+
+    /**
+     * Reports that a row loop has reached {@code done} rows of {@code total} and checks for cancellation
+     *
+     * @param done  processed rows
+     * @param total rows of the current pass
+     */
+    public void rows(int done, int total) {
+        checkCancelled();
+        if (this == NONE || total <= 0)
+            return;
+        int value = (int) (100L * done / total);
+        if (value != percent) {
+            percent = value;
+            listener.accept(value);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package ru.nsu.ccfit.melnikov.model.pipeline;
+
+import ru.nsu.ccfit.melnikov.model.raster.PixelBuffer;
+
+/**
+ * Replaces every color with its luma, keeping alpha.
+ *
+ * @author Nikita Melnikov
+ */
+public final class GrayShadeStage implements Stage {
+    @Override
+    public int halo() {
+        return 0;
+    }
+
+    @Override
+    public void apply(PixelBuffer src, PixelBuffer dst, int fromY, int toY) {
+        int width = src.getWidth();
+        for(int i = fromY * width; i < toY * width; i++){
+            int oldPixel = src.get(i);
+            int oldA = (oldPixel >> 24) & 0xff;
+            int oldR = (oldPixel >> 16) & 0xff;
+            int oldG = (oldPixel >> 8) & 0xff;
+            int oldB = oldPixel & 0xff;
+            int newGrayShade = (int)(oldR * 0.30 + oldG * 0.59 + oldB * 0.11);
+
+            int newPixel = (oldA << 24) & 0xFF000000 | ((char)newGrayShade << 16) & 0x00FF0000
+                    | ((char)newGrayShade << 8) & 0x0000FF00 | ((char)newGrayShade) & 0x000000FF;
+            dst.set(i, newPixel);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package ru.nsu.ccfit.melnikov.model.pipeline;
+
+import ru.nsu.ccfit.melnikov.model.convolution.BorderMode;
+import ru.nsu.ccfit.melnikov.model.convolution.Convolution;
+import ru.nsu.ccfit.melnikov.model.convolution.ConvolutionKernel;
+import ru.nsu.ccfit.melnikov.model.raster.PixelBuffer;
+
+/**
+ * Convolution with a square mask, see {@link Convolution}
+ *
+ * @author Nikita Melnikov
+ */
+public final class MaskStage implements Stage {
+    private final Convolution convolution;
+
+    /**
+     * @param mask square mask of odd size, indexed as {@code mask[horizontal][vertical]}; the edge pixels
+     *             repeat past the border
+     */
+    public MaskStage(double[][] mask) {
+        this(mask, BorderMode.CLAMP);
+    }
+
+    /**
+     * @param mask   square mask of odd size, indexed as {@code mask[horizontal][vertical]}
+     * @param border what is read past the edges of the image, black for {@link BorderMode#CONSTANT}
+     * @throws IllegalArgumentException for {@link BorderMode#WRAP}, as a stage sees only the rows around
+     *                                  its band
+     */
+    public MaskStage(double[][] mask, BorderMode border) {
+        if (border == BorderMode.WRAP)
+            throw new IllegalArgumentException("Wrapping convolutions need the whole image");
+        this.convolution = new Convolution(ConvolutionKernel.of(mask), border);
+    }
+
+    @Override
+    public int halo() {
+        return convolution.radius();
+    }
+
+    @Override
+    public void apply(PixelBuffer src, PixelBuffer dst, int fromY, int toY) {
+        convolution.apply(src, dst, fromY, toY);
+    }
+}
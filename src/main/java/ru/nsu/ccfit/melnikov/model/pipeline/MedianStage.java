@@ -0,0 +1,30 @@
+package ru.nsu.ccfit.melnikov.model.pipeline;
+
+import ru.nsu.ccfit.melnikov.model.median.MedianFilter;
+import ru.nsu.ccfit.melnikov.model.raster.PixelBuffer;
+
+/**
+ * Per-channel median over a square window, see {@link MedianFilter}.
+ *
+ * @author Nikita Melnikov
+ */
+public final class MedianStage implements Stage {
+    private final int radius;
+
+    /**
+     * @param radius window radius, the window is {@code (2r + 1) x (2r + 1)}
+     */
+    public MedianStage(int radius) {
+        this.radius = radius;
+    }
+
+    @Override
+    public int halo() {
+        return radius;
+    }
+
+    @Override
+    public void apply(PixelBuffer src, PixelBuffer dst, int fromY, int toY) {
+        MedianFilter.filterRows(src, dst, radius, fromY, toY);
+    }
+}
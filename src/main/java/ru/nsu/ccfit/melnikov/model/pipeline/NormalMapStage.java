@@ -0,0 +1,35 @@
+package ru.nsu.ccfit.melnikov.model.pipeline;
+
+import ru.nsu.ccfit.melnikov.model.normal.NormalMap;
+import ru.nsu.ccfit.melnikov.model.raster.PixelBuffer;
+
+/**
+ * {@link NormalMap} of a band: the band and its halo are converted to heights, then the normals of the band
+ * are computed from them. Samples past the edges of the image repeat them.
+ *
+ * @author Nikita Melnikov
+ */
+public final class NormalMapStage implements Stage {
+    private final NormalMap normalMap;
+
+    /**
+     * @param strength steepness of the relief, see {@link NormalMap#NormalMap(float, boolean)}
+     */
+    public NormalMapStage(float strength) {
+        this.normalMap = new NormalMap(strength, false);
+    }
+
+    @Override
+    public int halo() {
+        return 1;
+    }
+
+    @Override
+    public void apply(PixelBuffer src, PixelBuffer dst, int fromY, int toY) {
+        int haloFrom = Math.max(fromY - 1, 0);
+        int haloTo = Math.min(toY + 1, src.getHeight());
+        var plane = new float[(haloTo - haloFrom) * src.getWidth()];
+        NormalMap.heights(src, plane, haloFrom, haloFrom, haloTo);
+        normalMap.apply(plane, haloFrom, dst, fromY, toY);
+    }
+}
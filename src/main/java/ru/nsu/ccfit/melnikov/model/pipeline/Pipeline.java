@@ -0,0 +1,175 @@
+package ru.nsu.ccfit.melnikov.model.pipeline;
+
+import ru.nsu.ccfit.melnikov.model.lut.ChannelLut;
+import ru.nsu.ccfit.melnikov.model.parallel.BandExecutor;
+import ru.nsu.ccfit.melnikov.model.raster.PixelBuffer;
+import ru.nsu.ccfit.melnikov.model.tiled.TiledImage;
+
+import javax.imageio.ImageReader;
+import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Chain of {@link Stage stages} fused into one pass over the image.
+ * <p>
+ * Every band is processed in tiles of rows small enough to stay in cache: each stage computes the rows
+ * of the tile plus the halo the following stages read, into a tile-sized buffer reused by the next tile.
+ * Only the final result is allocated at full size, or nothing at all for a {@link TiledImage}.
+ * Adjacent {@link ChannelLut} stages are merged into one table.
+ *
+ * @author Nikita Melnikov
+ */
+public final class Pipeline {
+    /**
+     * Pixels per tile, about 256 KB of ARGB data
+     */
+    private static final int TILE_PIXELS = 1 << 16;
+    private final List<Stage> stages;
+
+    private Pipeline(List<Stage> stages) {
+        this.stages = stages;
+    }
+
+    public static Pipeline of(Stage... stages) {
+        var pipeline = new Pipeline(List.of());
+        for (var stage : stages)
+            pipeline = pipeline.then(stage);
+        return pipeline;
+    }
+
+    /**
+     * @param stage stage applied to the output of this pipeline
+     * @return new pipeline ending with the stage
+     */
+    public Pipeline then(Stage stage) {
+        var result = new ArrayList<>(stages);
+        int last = result.size() - 1;
+        if (last >= 0 && result.get(last) instanceof ChannelLut lut && stage instanceof ChannelLut next)
+            result.set(last, lut.andThen(next));
+        else
+            result.add(stage);
+        return new Pipeline(List.copyOf(result));
+    }
+
+    /**
+     * @param next pipeline applied to the output of this one
+     * @return new pipeline running the stages of both
+     */
+    public Pipeline then(Pipeline next) {
+        var result = this;
+        for (var stage : next.stages)
+            result = result.then(stage);
+        return result;
+    }
+
+    /**
+     * @return number of source rows above and below an output row the whole chain reads
+     */
+    public int halo() {
+        return stages.stream().mapToInt(Stage::halo).sum();
+    }
+
+    /**
+     * @param image    source image
+     * @param type     preferred type of the result
+     * @param executor executor the bands run on
+     * @return new image with all stages applied
+     */
+    public BufferedImage run(BufferedImage image, int type, BandExecutor executor) {
+        if (stages.isEmpty())
+            throw new IllegalStateException("Pipeline has no stages");
+        var src = PixelBuffer.of(image);
+        var dst = PixelBuffer.create(src.getWidth(), src.getHeight(), type);
+        executor.forEachBand(src.getHeight(), halo(), band -> runBand(src, dst, band));
+        return dst.getImage();
+    }
+
+    /**
+     * Streams a tiled image through the stages one strip of tile rows at a time, so only the strips being
+     * processed and their halos are held in arrays
+     *
+     * @param image    source image
+     * @param executor executor whose pool the strips run on
+     * @return new tiled image with all stages applied
+     */
+    public TiledImage run(TiledImage image, BandExecutor executor) {
+        if (stages.isEmpty())
+            throw new IllegalStateException("Pipeline has no stages");
+        int width = image.getWidth();
+        int height = image.getHeight();
+        var result = TiledImage.create(width, height);
+        var strips = new BandExecutor(executor.getPool(), image.getTileSize(), true);
+        try {
+            strips.forEachBand(height, halo(), band -> {
+                var source = new int[(band.haloTo() - band.haloFrom()) * width];
+                image.readRegion(0, band.haloFrom(), width, band.haloTo() - band.haloFrom(), source);
+                var output = new int[(band.toY() - band.fromY()) * width];
+                runBand(PixelBuffer.window(source, width, height, band.haloFrom()),
+                        PixelBuffer.window(output, width, height, band.fromY()), band);
+                result.writeRegion(0, band.fromY(), width, band.toY() - band.fromY(), output);
+            });
+        } catch (RuntimeException | Error e) {
+            // cancelled or failed: the partial result would keep its scratch file
+            result.close();
+            throw e;
+        }
+        return result;
+    }
+
+    /**
+     * Filters an image while it is being decoded, for an encoder that asks for the rows in order.
+     * <p>
+     * The returned image decodes the source in strips through source regions of {@code reader} and computes
+     * a strip of result rows at a time when they are requested, keeping only the current strip and the halo
+     * rows shared with the next one. Requesting a row above the current strip decodes its strip again.
+     *
+     * @param reader reader positioned on the source, left open
+     * @return lazily computed result, opaque if the source has no alpha
+     * @throws IOException if the header of the source can not be read
+     */
+    public RenderedImage stream(ImageReader reader) throws IOException {
+        if (stages.isEmpty())
+            throw new IllegalStateException("Pipeline has no stages");
+        return new StreamedImage(this, reader);
+    }
+
+    /**
+     * Computes the rows of a band tile by tile
+     *
+     * @param src source rows of the band and its halo
+     * @param dst destination of the band rows
+     */
+    void runBand(PixelBuffer src, PixelBuffer dst, BandExecutor.Band band) {
+        int width = src.getWidth();
+        int height = src.getHeight();
+        int halo = halo();
+        int tileRows = Math.max(TILE_PIXELS / Math.max(width, 1), 4 * halo + 1);
+        int last = stages.size() - 1;
+
+        // tile-sized buffers for the outputs of all stages but the last
+        var buffers = new int[last][];
+        int after = halo;
+        for (int k = 0; k < last; ++k) {
+            after -= stages.get(k).halo();
+            buffers[k] = new int[Math.min(tileRows + 2 * after, height) * width];
+        }
+
+        for (int tileY = band.fromY(); tileY < band.toY(); tileY += tileRows) {
+            int tileEnd = Math.min(tileY + tileRows, band.toY());
+            var input = src;
+            int remaining = halo;
+            for (int k = 0; k <= last; ++k) {
+                var stage = stages.get(k);
+                remaining -= stage.halo();
+                int fromY = Math.max(tileY - remaining, 0);
+                int toY = Math.min(tileEnd + remaining, height);
+                var output = k == last ? dst : PixelBuffer.window(buffers[k], width, height, fromY);
+                stage.apply(input, output, fromY, toY);
+                input = output;
+            }
+        }
+    }
+}
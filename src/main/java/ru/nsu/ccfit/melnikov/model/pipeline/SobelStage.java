@@ -0,0 +1,88 @@
+package ru.nsu.ccfit.melnikov.model.pipeline;
+
+import ru.nsu.ccfit.melnikov.model.raster.PixelBuffer;
+
+/**
+ * Sobel operator over the weighted channels: a pixel is white when the gradient magnitude of every channel
+ * exceeds the threshold and black otherwise. The outermost rows and columns are transparent black.
+ *
+ * @author Nikita Melnikov
+ */
+public final class SobelStage implements Stage {
+    private static final double[][] MASK_H = {{1, 0, -1},
+                                              {2, 0, -2},
+                                              {1, 0, -1}};
+    private static final double[][] MASK_V = {{-1, -2, -1},
+                                              {0, 0, 0},
+                                              {1, 2, 1}};
+    private final int threshold;
+
+    /**
+     * @param threshold gradient magnitude an edge must exceed in every channel
+     */
+    public SobelStage(int threshold) {
+        this.threshold = threshold;
+    }
+
+    @Override
+    public int halo() {
+        return 1;
+    }
+
+    @Override
+    public void apply(PixelBuffer src, PixelBuffer dst, int fromY, int toY) {
+        int width = src.getWidth();
+        int height = src.getHeight();
+        for(int y = fromY; y < toY; y++)
+        {
+            if (y == 0 || y == height - 1) {
+                for (int x = 0; x < width; x++)
+                    dst.set(y * width + x, 0);
+                continue;
+            }
+            dst.set(y * width, 0);
+            dst.set(y * width + width - 1, 0);
+            for(int  x = 1; x < width - 1; x++)
+            {
+                int gxRed = 0, gyRed = 0;
+                int gxGreen = 0, gyGreen = 0;
+                int gxBlue = 0, gyBlue = 0;
+
+                for(int i = -1; i <=1; i++)
+                {
+                    for(int j = -1; j <= 1; j++)
+                    {
+                        int curColor = src.get((y + j) * width + x + i);
+
+                        int red = (curColor >> 16) & 0xFF;
+                        int green = (curColor >> 8) & 0xFF;
+                        int blue = curColor & 0xFF;
+
+                        int grayRed = (int) (0.299 * red + 0.587 * 0 + 0.114 * 0);
+                        int grayGreen = (int) (0.299 * 0 + 0.587 * green + 0.114 * 0);
+                        int grayBlue = (int) (0.299 * 0 + 0.587 * 0 + 0.114 * blue);
+
+                        gxRed += MASK_V[i + 1][j + 1] * grayRed;
+                        gyRed += MASK_H[i + 1][j + 1] * grayRed;
+                        gxGreen += MASK_V[i + 1][j + 1] * grayGreen;
+                        gyGreen += MASK_H[i + 1][j + 1] * grayGreen;
+                        gxBlue += MASK_V[i + 1][j + 1] * grayBlue;
+                        gyBlue += MASK_H[i + 1][j + 1] * grayBlue;
+                    }
+                }
+
+                int magnitudeRed = (int) Math.sqrt(gxRed * gxRed + gyRed * gyRed);
+                int magnitudeGreen = (int) Math.sqrt(gxGreen * gxGreen + gyGreen * gyGreen);
+                int magnitudeBlue = (int) Math.sqrt(gxBlue * gxBlue + gyBlue * gyBlue);
+
+                int res;
+                if(magnitudeRed > threshold && magnitudeGreen > threshold && magnitudeBlue > threshold)
+                    res = 0xFFFFFFFF;
+                else
+                    res = 0xFF000000;
+
+                dst.set(y * width + x, res);
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package ru.nsu.ccfit.melnikov.model.pipeline;
+
+import ru.nsu.ccfit.melnikov.model.raster.PixelBuffer;
+
+/**
+ * Step of a {@link Pipeline} that computes a range of output rows from the rows of its input around them.
+ *
+ * @author Nikita Melnikov
+ */
+public interface Stage {
+    /**
+     * @return number of input rows above and below an output row the stage reads
+     */
+    int halo();
+
+    /**
+     * Computes rows {@code [fromY, toY)} of {@code dst}.
+     * <p>
+     * {@code src} holds at least the rows {@code [fromY - halo, toY + halo)} clipped to the image;
+     * both buffers may be windows, so pixels must be addressed with image coordinates.
+     *
+     * @param src   input rows
+     * @param dst   output rows
+     * @param fromY first row to compute
+     * @param toY   row after the last one to compute
+     */
+    void apply(PixelBuffer src, PixelBuffer dst, int fromY, int toY);
+}
@@ -0,0 +1,229 @@
+package ru.nsu.ccfit.melnikov.model.pipeline;
+
+import ru.nsu.ccfit.melnikov.model.parallel.BandExecutor;
+import ru.nsu.ccfit.melnikov.model.raster.PixelBuffer;
+
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import java.awt.*;
+import java.awt.image.ColorModel;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Vector;
+
+/**
+ * Read-only {@link RenderedImage} computing the result of a {@link Pipeline} strip by strip while the source
+ * is decoded; see {@link Pipeline#stream(ImageReader)}. Tiles are the strips, one per {@value #STRIP_PIXELS}
+ * pixels of rows.
+ * <p>
+ * Readers decode a source region from the top of the image, so every strip decodes the rows above it again:
+ * the strip size trades decoding time for memory.
+ *
+ * @author Nikita Melnikov
+ */
+final class StreamedImage implements RenderedImage {
+    /**
+     * Pixels of result rows computed at once
+     */
+    private static final int STRIP_PIXELS = 1 << 20;
+    private final Pipeline pipeline;
+    private final ImageReader reader;
+    private final ImageReadParam param;
+    private final int width;
+    private final int height;
+    private final int halo;
+    private final int stripRows;
+    private final ColorModel colorModel;
+    /**
+     * Decoded source rows {@code [sourceFrom, sourceTo)}
+     */
+    private final int[] source;
+    private int sourceFrom;
+    private int sourceTo;
+    /**
+     * Result rows {@code [outputFrom, outputTo)}
+     */
+    private final int[] output;
+    private int outputFrom;
+    private int outputTo;
+
+    StreamedImage(Pipeline pipeline, ImageReader reader) throws IOException {
+        this.pipeline = pipeline;
+        this.reader = reader;
+        this.param = reader.getDefaultReadParam();
+        this.width = reader.getWidth(0);
+        this.height = reader.getHeight(0);
+        this.halo = pipeline.halo();
+        this.stripRows = Math.min(Math.max(1, STRIP_PIXELS / width), height);
+        var types = reader.getImageTypes(0);
+        boolean alpha = !types.hasNext() || types.next().getColorModel().hasAlpha();
+        this.colorModel = alpha ? ColorModel.getRGBdefault() : new DirectColorModel(24, 0xff0000, 0xff00, 0xff);
+        this.source = new int[Math.min(stripRows + 2 * halo, height) * width];
+        this.output = new int[stripRows * width];
+    }
+
+    @Override
+    public Vector<RenderedImage> getSources() {
+        return null;
+    }
+
+    @Override
+    public Object getProperty(String name) {
+        return Image.UndefinedProperty;
+    }
+
+    @Override
+    public String[] getPropertyNames() {
+        return null;
+    }
+
+    @Override
+    public ColorModel getColorModel() {
+        return colorModel;
+    }
+
+    @Override
+    public SampleModel getSampleModel() {
+        return colorModel.createCompatibleSampleModel(width, stripRows);
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public int getMinX() {
+        return 0;
+    }
+
+    @Override
+    public int getMinY() {
+        return 0;
+    }
+
+    @Override
+    public int getNumXTiles() {
+        return 1;
+    }
+
+    @Override
+    public int getNumYTiles() {
+        return (height - 1) / stripRows + 1;
+    }
+
+    @Override
+    public int getMinTileX() {
+        return 0;
+    }
+
+    @Override
+    public int getMinTileY() {
+        return 0;
+    }
+
+    @Override
+    public int getTileWidth() {
+        return width;
+    }
+
+    @Override
+    public int getTileHeight() {
+        return stripRows;
+    }
+
+    @Override
+    public int getTileGridXOffset() {
+        return 0;
+    }
+
+    @Override
+    public int getTileGridYOffset() {
+        return 0;
+    }
+
+    @Override
+    public Raster getTile(int tileX, int tileY) {
+        return getData(new Rectangle(0, tileY * stripRows, width, stripRows));
+    }
+
+    @Override
+    public Raster getData() {
+        return getData(new Rectangle(0, 0, width, height));
+    }
+
+    @Override
+    public Raster getData(Rectangle rect) {
+        var region = rect.intersection(new Rectangle(0, 0, width, height));
+        var raster = colorModel.createCompatibleWritableRaster(region.width, region.height)
+                .createWritableTranslatedChild(region.x, region.y);
+        copyData(raster);
+        return raster;
+    }
+
+    @Override
+    public synchronized WritableRaster copyData(WritableRaster raster) {
+        if (raster == null)
+            raster = colorModel.createCompatibleWritableRaster(width, height);
+        var region = raster.getBounds().intersection(new Rectangle(0, 0, width, height));
+        if (region.isEmpty())
+            return raster;
+        // the raster is expected to be compatible with the sample model, which stores a pixel as one ARGB int
+        var pixels = new int[region.width];
+        for (int y = region.y; y < region.y + region.height; ++y) {
+            if (y < outputFrom || y >= outputTo)
+                compute(y / stripRows * stripRows);
+            System.arraycopy(output, (y - outputFrom) * width + region.x, pixels, 0, region.width);
+            raster.setDataElements(region.x, y, region.width, 1, pixels);
+        }
+        return raster;
+    }
+
+    /**
+     * Computes the strip of result rows starting at {@code fromY}, decoding only the source rows that
+     * the previous strip did not
+     */
+    private void compute(int fromY) {
+        int toY = Math.min(fromY + stripRows, height);
+        int haloFrom = Math.max(fromY - halo, 0);
+        int haloTo = Math.min(toY + halo, height);
+        if (sourceFrom <= haloFrom && haloFrom < sourceTo) {
+            System.arraycopy(source, (haloFrom - sourceFrom) * width, source, 0, (sourceTo - haloFrom) * width);
+        } else {
+            sourceTo = haloFrom;
+        }
+        sourceFrom = haloFrom;
+        if (sourceTo < haloTo) {
+            decode(sourceTo, haloTo);
+            sourceTo = haloTo;
+        }
+        pipeline.runBand(PixelBuffer.window(source, width, height, sourceFrom),
+                PixelBuffer.window(output, width, height, fromY),
+                new BandExecutor.Band(fromY, toY, haloFrom, haloTo));
+        outputFrom = fromY;
+        outputTo = toY;
+    }
+
+    /**
+     * Decodes source rows {@code [fromY, toY)} into their place in {@link #source}
+     */
+    private void decode(int fromY, int toY) {
+        param.setSourceRegion(new Rectangle(0, fromY, width, toY - fromY));
+        try {
+            var strip = reader.read(0, param);
+            strip.getRGB(0, 0, width, toY - fromY, source, (fromY - sourceFrom) * width, width);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
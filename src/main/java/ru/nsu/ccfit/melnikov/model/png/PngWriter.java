@@ -0,0 +1,354 @@
+package ru.nsu.ccfit.melnikov.model.png;
+
+import ru.nsu.ccfit.melnikov.model.raster.PixelBuffer;
+import ru.nsu.ccfit.melnikov.model.tiled.TiledImage;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Encodes 8-bit RGB or RGBA PNG files, compressing strips of rows on all threads of a pool.
+ * <p>
+ * Every strip is filtered and deflated independently, primed with the last 32 KB of the filtered rows above it
+ * as a preset dictionary so the split costs little compression, and ends on a byte boundary with a sync flush.
+ * The raw deflate streams of the strips therefore concatenate into one zlib stream, whose Adler-32 is combined
+ * from the checksums of the strips; every strip goes into an IDAT chunk of its own with its own CRC.
+ * Strips are written in order as soon as they are ready, with a bounded number of strips in flight.
+ * <p>
+ * Rows are filtered with the filter that minimizes the sum of absolute differences, as libpng does;
+ * the fast mode uses the Sub filter for every row instead.
+ *
+ * @author Nikita Melnikov
+ */
+public final class PngWriter {
+    public static final int DEFAULT_LEVEL = 6;
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    /**
+     * Filtered bytes deflated by one task
+     */
+    private static final int STRIP_BYTES = 1 << 20;
+    private static final int DICTIONARY_BYTES = 1 << 15;
+    private static final int STRIPS_PER_THREAD = 2;
+    private static final int ADLER_BASE = 65521;
+    private static final int FILTER_NONE = 0;
+    private static final int FILTER_SUB = 1;
+    private static final int FILTER_UP = 2;
+    private static final int FILTER_AVERAGE = 3;
+    private static final int FILTER_PAETH = 4;
+    private final int level;
+    private final boolean fast;
+    private final ForkJoinPool pool;
+
+    /**
+     * Source of ARGB pixels, called from several threads at once
+     */
+    @FunctionalInterface
+    private interface RowReader {
+        void read(int y, int rows, int[] pixels);
+    }
+
+    /**
+     * Deflated strip
+     *
+     * @param data      IDAT chunk data
+     * @param crc       checksum of the chunk type and data so far
+     * @param adler     Adler-32 of the filtered rows
+     * @param rawLength number of filtered bytes
+     */
+    private record Strip(byte[] data, CRC32 crc, long adler, long rawLength) {
+    }
+
+    /**
+     * @param level compression level from {@link Deflater#NO_COMPRESSION} to {@link Deflater#BEST_COMPRESSION}
+     * @param fast  whether to skip choosing a filter for every row
+     * @param pool  pool the strips are compressed on, or {@code null} to compress them in the calling thread
+     */
+    public PngWriter(int level, boolean fast, ForkJoinPool pool) {
+        if (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)
+            throw new IllegalArgumentException("Compression level must be from 0 to 9: " + level);
+        this.level = level;
+        this.fast = fast;
+        this.pool = pool;
+    }
+
+    /**
+     * @param image image to encode, with alpha if its color model has it
+     * @param out   stream the file is written to, left open
+     * @throws IOException if the stream fails
+     */
+    public void write(BufferedImage image, OutputStream out) throws IOException {
+        write(image.getWidth(), image.getHeight(), image.getColorModel().hasAlpha(),
+                (y, rows, pixels) -> PixelBuffer.readRegion(image, 0, y, image.getWidth(), rows, pixels), out);
+    }
+
+    /**
+     * @param image image to encode with alpha
+     * @param out   stream the file is written to, left open
+     * @throws IOException if the stream fails
+     */
+    public void write(TiledImage image, OutputStream out) throws IOException {
+        write(image.getWidth(), image.getHeight(), true,
+                (y, rows, pixels) -> image.readRegion(0, y, image.getWidth(), rows, pixels), out);
+    }
+
+    private void write(int width, int height, boolean alpha, RowReader reader, OutputStream out) throws IOException {
+        int bytesPerPixel = alpha ? 4 : 3;
+        long rowBytes = (long) width * bytesPerPixel + 1;
+        if (rowBytes > Integer.MAX_VALUE / 2)
+            throw new IOException("Image is too wide: " + width);
+        int stripRows = (int) Math.max(1, STRIP_BYTES / rowBytes);
+        int strips = (height - 1) / stripRows + 1;
+
+        var data = new DataOutputStream(out);
+        data.write(SIGNATURE);
+        writeChunk(data, "IHDR", new byte[]{
+                (byte) (width >>> 24), (byte) (width >>> 16), (byte) (width >>> 8), (byte) width,
+                (byte) (height >>> 24), (byte) (height >>> 16), (byte) (height >>> 8), (byte) height,
+                8, (byte) (alpha ? 6 : 2), 0, 0, 0});
+
+        var pending = new ArrayDeque<ForkJoinTask<Strip>>();
+        int inFlight = pool == null ? 1 : STRIPS_PER_THREAD * pool.getParallelism();
+        int next = 0;
+        long adler = 1;
+        try {
+            for (int index = 0; index < strips; ++index) {
+                while (next < strips && pending.size() < inFlight) {
+                    int fromY = next * stripRows;
+                    int toY = Math.min(fromY + stripRows, height);
+                    boolean first = next == 0;
+                    boolean last = next == strips - 1;
+                    var task = ForkJoinTask.adapt(
+                            () -> compress(reader, width, bytesPerPixel, fromY, toY, first, last));
+                    if (pool == null)
+                        task.invoke();
+                    else
+                        pool.execute(task);
+                    pending.add(task);
+                    ++next;
+                }
+                var strip = pending.poll().join();
+                adler = combineAdler(adler, strip.adler(), strip.rawLength());
+                var chunk = strip.data();
+                var crc = strip.crc();
+                if (index == strips - 1) {
+                    var trailer = new byte[]{(byte) (adler >>> 24), (byte) (adler >>> 16), (byte) (adler >>> 8),
+                            (byte) adler};
+                    crc.update(trailer);
+                    data.writeInt(chunk.length + trailer.length);
+                    data.write(type("IDAT"));
+                    data.write(chunk);
+                    data.write(trailer);
+                } else {
+                    data.writeInt(chunk.length);
+                    data.write(type("IDAT"));
+                    data.write(chunk);
+                }
+                data.writeInt((int) crc.getValue());
+            }
+        } finally {
+            for (var task : pending)
+                task.cancel(true);
+        }
+        writeChunk(data, "IEND", new byte[0]);
+        data.flush();
+    }
+
+    /**
+     * Filters and deflates rows {@code [fromY, toY)}
+     */
+    private Strip compress(RowReader reader, int width, int bytesPerPixel, int fromY, int toY,
+                           boolean first, boolean last) {
+        int rowBytes = width * bytesPerPixel + 1;
+        // rows above the strip whose filtered bytes prime the dictionary, and the row the first of them refers to
+        int dictionaryRows = Math.min(fromY, (DICTIONARY_BYTES + rowBytes - 1) / rowBytes);
+        int readFrom = Math.max(fromY - dictionaryRows - 1, 0);
+        int rows = toY - readFrom;
+        var pixels = new int[rows * width];
+        reader.read(readFrom, rows, pixels);
+
+        var filtered = new byte[(toY - fromY + dictionaryRows) * rowBytes];
+        var prior = new byte[rowBytes - 1];
+        var current = new byte[rowBytes - 1];
+        var scratch = new byte[rowBytes];
+        int offset = 0;
+        for (int y = readFrom; y < toY; ++y) {
+            toBytes(pixels, (y - readFrom) * width, width, bytesPerPixel, current);
+            if (y >= fromY - dictionaryRows) {
+                filterRow(current, y == 0 ? null : prior, bytesPerPixel, filtered, offset, scratch);
+                offset += rowBytes;
+            }
+            var swap = prior;
+            prior = current;
+            current = swap;
+        }
+        int dictionaryLength = dictionaryRows * rowBytes;
+        int rawLength = filtered.length - dictionaryLength;
+
+        var deflater = new Deflater(level, true);
+        var out = new ByteArrayOutputStream(rawLength / 2 + 64);
+        try {
+            if (first)
+                out.writeBytes(zlibHeader());
+            if (dictionaryLength > 0) {
+                int from = Math.max(0, dictionaryLength - DICTIONARY_BYTES);
+                deflater.setDictionary(filtered, from, dictionaryLength - from);
+            }
+            deflater.setInput(filtered, dictionaryLength, rawLength);
+            var buffer = new byte[1 << 16];
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished())
+                    out.write(buffer, 0, deflater.deflate(buffer));
+            } else {
+                int length;
+                do {
+                    length = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    out.write(buffer, 0, length);
+                } while (length == buffer.length);
+            }
+        } finally {
+            deflater.end();
+        }
+
+        var data = out.toByteArray();
+        var crc = new CRC32();
+        crc.update(type("IDAT"));
+        crc.update(data);
+        var adler = new Adler32();
+        adler.update(filtered, dictionaryLength, rawLength);
+        return new Strip(data, crc, adler.getValue(), rawLength);
+    }
+
+    /**
+     * Writes a filter type byte and the filtered row to {@code out} at {@code offset}
+     *
+     * @param row     raw row
+     * @param prior   raw row above, {@code null} for the first row of the image
+     * @param scratch buffer of the size of a filtered row
+     */
+    private void filterRow(byte[] row, byte[] prior, int bytesPerPixel, byte[] out, int offset, byte[] scratch) {
+        if (level == Deflater.NO_COMPRESSION) {
+            out[offset] = FILTER_NONE;
+            System.arraycopy(row, 0, out, offset + 1, row.length);
+            return;
+        }
+        if (fast) {
+            filter(FILTER_SUB, row, prior, bytesPerPixel, out, offset);
+            return;
+        }
+        long best = Long.MAX_VALUE;
+        for (int type = FILTER_NONE; type <= FILTER_PAETH; ++type) {
+            if (prior == null && type != FILTER_NONE && type != FILTER_SUB)
+                continue;
+            long sum = filter(type, row, prior, bytesPerPixel, scratch, 0);
+            if (sum < best) {
+                best = sum;
+                System.arraycopy(scratch, 0, out, offset, scratch.length);
+            }
+        }
+    }
+
+    /**
+     * @param prior raw row above, {@code null} reads as zeros
+     * @return sum of the filtered bytes taken as signed values, the heuristic for choosing a filter
+     */
+    private static long filter(int type, byte[] row, byte[] prior, int bytesPerPixel, byte[] out, int offset) {
+        out[offset] = (byte) type;
+        long sum = 0;
+        for (int i = 0; i < row.length; ++i) {
+            int raw = row[i] & 0xff;
+            int left = i >= bytesPerPixel ? row[i - bytesPerPixel] & 0xff : 0;
+            int up = prior == null ? 0 : prior[i] & 0xff;
+            int upLeft = prior == null || i < bytesPerPixel ? 0 : prior[i - bytesPerPixel] & 0xff;
+            int value = switch (type) {
+                case FILTER_SUB -> raw - left;
+                case FILTER_UP -> raw - up;
+                case FILTER_AVERAGE -> raw - ((left + up) >>> 1);
+                case FILTER_PAETH -> raw - paeth(left, up, upLeft);
+                default -> raw;
+            };
+            out[offset + 1 + i] = (byte) value;
+            sum += Math.abs((byte) value);
+        }
+        return sum;
+    }
+
+    private static int paeth(int left, int up, int upLeft) {
+        int estimate = left + up - upLeft;
+        int distanceLeft = Math.abs(estimate - left);
+        int distanceUp = Math.abs(estimate - up);
+        int distanceUpLeft = Math.abs(estimate - upLeft);
+        if (distanceLeft <= distanceUp && distanceLeft <= distanceUpLeft)
+            return left;
+        return distanceUp <= distanceUpLeft ? up : upLeft;
+    }
+
+    private static void toBytes(int[] pixels, int from, int width, int bytesPerPixel, byte[] row) {
+        for (int x = 0, i = 0; x < width; ++x) {
+            int pixel = pixels[from + x];
+            row[i++] = (byte) (pixel >>> 16);
+            row[i++] = (byte) (pixel >>> 8);
+            row[i++] = (byte) pixel;
+            if (bytesPerPixel == 4)
+                row[i++] = (byte) (pixel >>> 24);
+        }
+    }
+
+    /**
+     * @return zlib stream header for a 32 KB window and the compression level
+     */
+    private byte[] zlibHeader() {
+        int levelFlags = level < 2 ? 0 : level < 6 ? 1 : level == 6 ? 2 : 3;
+        int header = 0x78 << 8 | levelFlags << 6;
+        header += 31 - header % 31;
+        return new byte[]{(byte) (header >>> 8), (byte) header};
+    }
+
+    /**
+     * Adler-32 of two concatenated sequences from the checksums of both, as {@code adler32_combine} of zlib
+     *
+     * @param first  checksum of the first sequence
+     * @param second checksum of the second sequence
+     * @param length length of the second sequence
+     */
+    static long combineAdler(long first, long second, long length) {
+        long remainder = length % ADLER_BASE;
+        long sum1 = first & 0xffff;
+        long sum2 = remainder * sum1 % ADLER_BASE;
+        sum1 += (second & 0xffff) + ADLER_BASE - 1;
+        sum2 += (first >>> 16 & 0xffff) + (second >>> 16 & 0xffff) + ADLER_BASE - remainder;
+        if (sum1 >= ADLER_BASE)
+            sum1 -= ADLER_BASE;
+        if (sum1 >= ADLER_BASE)
+            sum1 -= ADLER_BASE;
+        if (sum2 >= 2L * ADLER_BASE)
+            sum2 -= 2L * ADLER_BASE;
+        if (sum2 >= ADLER_BASE)
+            sum2 -= ADLER_BASE;
+        return sum1 | sum2 << 16;
+    }
+
+    private static void writeChunk(DataOutputStream out, String type, byte[] data) throws IOException {
+        var crc = new CRC32();
+        crc.update(type(type));
+        crc.update(data);
+        out.writeInt(data.length);
+        out.write(type(type));
+        out.write(data);
+        out.writeInt((int) crc.getValue());
+    }
+
+    private static byte[] type(String type) {
+        return type.getBytes(StandardCharsets.US_ASCII);
+    }
+}
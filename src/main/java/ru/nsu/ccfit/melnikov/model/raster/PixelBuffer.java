@@ -0,0 +1,250 @@
+package ru.nsu.ccfit.melnikov.model.raster;
+
+import lombok.Getter;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+
+/**
+ * Flat ARGB view of a {@link BufferedImage}.
+ * <p>
+ * For {@code TYPE_INT_ARGB} and {@code TYPE_INT_RGB} images with a plain raster the backing
+ * {@code int[]} of the {@link DataBufferInt} is used directly, so reads and writes bypass
+ * the ColorModel/SampleModel machinery of {@code getRGB}/{@code setRGB}.
+ * Any other image is converted to a {@code TYPE_INT_ARGB} copy on entry;
+ * call {@link #flush()} to write changes of such a copy back to the image.
+ * <p>
+ * A {@link #window(int[], int, int, int) window} holds only a range of rows of a larger image and is not
+ * backed by an image; pixels are still addressed with image coordinates.
+ *
+ * @author Nikita Melnikov
+ */
+@Getter
+public final class PixelBuffer {
+    private static final int OPAQUE = 0xFF000000;
+    private final BufferedImage image;
+    private final int[] data;
+    private final int width;
+    private final int height;
+    private final boolean direct;
+    /**
+     * Alpha bits added to every read pixel: {@code TYPE_INT_RGB} rasters do not store alpha
+     */
+    private final int alphaFill;
+    /**
+     * Index of the pixel stored at {@code data[0]}, non-zero for windows
+     */
+    private final int origin;
+
+    private PixelBuffer(BufferedImage image, int[] data, boolean direct, boolean hasAlpha) {
+        this.image = image;
+        this.data = data;
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+        this.direct = direct;
+        this.alphaFill = hasAlpha ? 0 : OPAQUE;
+        this.origin = 0;
+    }
+
+    private PixelBuffer(int[] data, int width, int height, int fromY) {
+        this.image = null;
+        this.data = data;
+        this.width = width;
+        this.height = height;
+        this.direct = true;
+        this.alphaFill = 0;
+        this.origin = fromY * width;
+    }
+
+    /**
+     * Wraps an image, converting it to a flat ARGB copy if its raster can not be accessed directly
+     *
+     * @param image source image
+     * @return pixel buffer over the image
+     */
+    public static PixelBuffer of(BufferedImage image) {
+        if (isDirect(image)) {
+            var data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            return new PixelBuffer(image, data, true, image.getType() == BufferedImage.TYPE_INT_ARGB);
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        var data = image.getRGB(0, 0, width, height, null, 0, width);
+        return new PixelBuffer(image, data, false, true);
+    }
+
+    /**
+     * Creates a new image backed by a flat int array
+     *
+     * @param width  image width
+     * @param height image height
+     * @param type   preferred image type; types without an int raster are replaced
+     *               with {@code TYPE_INT_ARGB} or {@code TYPE_INT_RGB}
+     * @return pixel buffer over the new image
+     */
+    public static PixelBuffer create(int width, int height, int type) {
+        return of(new BufferedImage(width, height, compatibleType(type)));
+    }
+
+    /**
+     * Wraps an array as rows of a {@code width x height} ARGB image starting at row {@code fromY}
+     *
+     * @param data   storage of at least {@code width} times the number of rows used
+     * @param width  image width
+     * @param height image height
+     * @param fromY  image row stored at the start of {@code data}
+     * @return window over the rows, {@link #getImage()} returns {@code null}
+     */
+    public static PixelBuffer window(int[] data, int width, int height, int fromY) {
+        return new PixelBuffer(data, width, height, fromY);
+    }
+
+    /**
+     * @param type any {@link BufferedImage} type
+     * @return int-packed image type that keeps the alpha channel of the given type
+     */
+    public static int compatibleType(int type) {
+        return switch (type) {
+            case BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_RGB -> type;
+            case BufferedImage.TYPE_INT_BGR, BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_USHORT_565_RGB,
+                    BufferedImage.TYPE_USHORT_555_RGB, BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_USHORT_GRAY,
+                    BufferedImage.TYPE_BYTE_BINARY -> BufferedImage.TYPE_INT_RGB;
+            default -> BufferedImage.TYPE_INT_ARGB;
+        };
+    }
+
+    /**
+     * @param image any image
+     * @return the image itself if its raster can be accessed directly, otherwise a copy of
+     * a {@link #compatibleType(int) compatible} int-packed type with the same ARGB values
+     */
+    public static BufferedImage toCompatible(BufferedImage image) {
+        if (isDirect(image))
+            return image;
+        var source = of(image);
+        var copy = create(image.getWidth(), image.getHeight(), image.getType());
+        System.arraycopy(source.data, 0, copy.data, 0, source.data.length);
+        return copy.getImage();
+    }
+
+    /**
+     * @param image any image
+     * @return {@code true} if {@link #of(BufferedImage)} wraps the raster of the image without copying
+     */
+    public static boolean isDirect(BufferedImage image) {
+        int type = image.getType();
+        if (type != BufferedImage.TYPE_INT_ARGB && type != BufferedImage.TYPE_INT_RGB)
+            return false;
+        var raster = image.getRaster();
+        // sub-images share the data buffer of their parent with an offset and a wider stride
+        return raster.getDataBuffer() instanceof DataBufferInt buffer
+                && buffer.getNumBanks() == 1
+                && buffer.getOffset() == 0
+                && raster.getSampleModel() instanceof SinglePixelPackedSampleModel sampleModel
+                && sampleModel.getScanlineStride() == image.getWidth()
+                && raster.getSampleModelTranslateX() == 0
+                && raster.getSampleModelTranslateY() == 0
+                && raster.getParent() == null;
+    }
+
+    /**
+     * @param index offset of the pixel, {@code y * width + x}
+     * @return pixel in the default ARGB color model, as {@link BufferedImage#getRGB(int, int)} returns it
+     */
+    public int get(int index) {
+        return data[index - origin] | alphaFill;
+    }
+
+    public int get(int x, int y) {
+        return data[y * width + x - origin] | alphaFill;
+    }
+
+    public void set(int index, int argb) {
+        data[index - origin] = argb;
+    }
+
+    public void set(int x, int y, int argb) {
+        data[y * width + x - origin] = argb;
+    }
+
+    /**
+     * Copies a row of ARGB pixels into {@code row}
+     *
+     * @param y   row index
+     * @param row destination of at least {@code width} elements
+     */
+    public void getRow(int y, int[] row) {
+        int offset = y * width - origin;
+        if (alphaFill == 0) {
+            System.arraycopy(data, offset, row, 0, width);
+        } else {
+            for (int x = 0; x < width; ++x)
+                row[x] = data[offset + x] | alphaFill;
+        }
+    }
+
+    /**
+     * Copies a row of ARGB pixels into the same row of another buffer of equal width
+     *
+     * @param dst destination buffer
+     * @param y   row index
+     */
+    public void copyRow(PixelBuffer dst, int y) {
+        int offset = y * width - origin;
+        int dstOffset = y * width - dst.origin;
+        for (int x = 0; x < width; ++x)
+            dst.data[dstOffset + x] = data[offset + x] | alphaFill;
+    }
+
+    /**
+     * Reads a rectangle of ARGB pixels without converting the whole image
+     *
+     * @param image  source image
+     * @param x      left column of the rectangle
+     * @param y      top row of the rectangle
+     * @param width  rectangle width
+     * @param height rectangle height
+     * @param pixels destination of {@code width * height} pixels, row by row
+     */
+    public static void readRegion(BufferedImage image, int x, int y, int width, int height, int[] pixels) {
+        if (!isDirect(image)) {
+            image.getRGB(x, y, width, height, pixels, 0, width);
+            return;
+        }
+        var buffer = of(image);
+        for (int row = 0; row < height; ++row) {
+            int offset = (y + row) * buffer.width + x;
+            for (int column = 0; column < width; ++column)
+                pixels[row * width + column] = buffer.data[offset + column] | buffer.alphaFill;
+        }
+    }
+
+    /**
+     * Writes a rectangle of ARGB pixels without converting the whole image
+     *
+     * @param image  destination image
+     * @param x      left column of the rectangle
+     * @param y      top row of the rectangle
+     * @param width  rectangle width
+     * @param height rectangle height
+     * @param pixels {@code width * height} pixels, row by row
+     */
+    public static void writeRegion(BufferedImage image, int x, int y, int width, int height, int[] pixels) {
+        if (!isDirect(image)) {
+            image.setRGB(x, y, width, height, pixels, 0, width);
+            return;
+        }
+        var data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        for (int row = 0; row < height; ++row)
+            System.arraycopy(pixels, row * width, data, (y + row) * image.getWidth() + x, width);
+    }
+
+    /**
+     * Writes pixels of a converted copy back to the wrapped image; does nothing for direct buffers and windows
+     */
+    public void flush() {
+        if (!direct)
+            image.setRGB(0, 0, width, height, data, 0, width);
+    }
+}
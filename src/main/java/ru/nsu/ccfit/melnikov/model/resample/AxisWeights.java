@@ -0,0 +1,102 @@
+package ru.nsu.ccfit.melnikov.model.resample;
+
+/**
+ * Fixed-point filter taps of a range of result pixels along one axis.
+ * <p>
+ * Every result pixel reads {@link #taps} source pixels, whose indices are stored already clamped to the
+ * source, so samples past the edge repeat it. The weights of a pixel sum to exactly {@link #ONE}, and
+ * flat areas keep their value.
+ *
+ * @author Nikita Melnikov
+ */
+final class AxisWeights {
+    static final int SHIFT = 14;
+    static final int ONE = 1 << SHIFT;
+    final int taps;
+    /**
+     * Source indices, {@link #taps} per result pixel
+     */
+    final int[] indices;
+    /**
+     * Weights out of {@link #ONE}, {@link #taps} per result pixel
+     */
+    final int[] weights;
+
+    private AxisWeights(int taps, int count) {
+        this.taps = taps;
+        this.indices = new int[taps * count];
+        this.weights = new int[taps * count];
+    }
+
+    /**
+     * @param kernel  reconstruction filter, stretched over several source pixels when shrinking
+     * @param srcSize source size along the axis
+     * @param scale   ratio of the result size to the source size
+     * @param from    first result pixel
+     * @param count   number of result pixels
+     * @return taps of result pixels {@code [from, from + count)}
+     */
+    static AxisWeights of(Kernel kernel, int srcSize, double scale, int from, int count) {
+        if (kernel == Kernel.NEAREST) {
+            var nearest = new AxisWeights(1, count);
+            for (int i = 0; i < count; ++i) {
+                double center = (from + i + 0.5) / scale - 0.5;
+                nearest.indices[i] = clamp((int) Math.floor(center + 0.5), srcSize);
+                nearest.weights[i] = ONE;
+            }
+            return nearest;
+        }
+
+        double stretch = Math.max(1, 1 / scale);
+        double support = kernel.support() * stretch;
+        int taps = 2 * (int) Math.ceil(support) + 1;
+        var axis = new AxisWeights(taps, count);
+        var real = new double[taps];
+        for (int i = 0; i < count; ++i) {
+            // pixel centres map onto pixel centres
+            double center = (from + i + 0.5) / scale - 0.5;
+            int first = (int) Math.floor(center - support) + 1;
+            double sum = 0;
+            for (int k = 0; k < taps; ++k) {
+                real[k] = kernel.weight((first + k - center) / stretch);
+                sum += real[k];
+            }
+            int total = 0;
+            int largest = 0;
+            for (int k = 0; k < taps; ++k) {
+                int weight = (int) Math.round(real[k] / sum * ONE);
+                axis.indices[i * taps + k] = clamp(first + k, srcSize);
+                axis.weights[i * taps + k] = weight;
+                total += weight;
+                if (weight > axis.weights[i * taps + largest])
+                    largest = k;
+            }
+            axis.weights[i * taps + largest] += ONE - total;
+        }
+        return axis;
+    }
+
+    /**
+     * @return smallest source index read
+     */
+    int min() {
+        int min = Integer.MAX_VALUE;
+        for (int index : indices)
+            min = Math.min(min, index);
+        return min;
+    }
+
+    /**
+     * @return largest source index read
+     */
+    int max() {
+        int max = 0;
+        for (int index : indices)
+            max = Math.max(max, index);
+        return max;
+    }
+
+    private static int clamp(int index, int size) {
+        return index < 0 ? 0 : Math.min(index, size - 1);
+    }
+}
@@ -0,0 +1,79 @@
+package ru.nsu.ccfit.melnikov.model.resample;
+
+import java.awt.image.AffineTransformOp;
+
+/**
+ * Reconstruction filters of {@link Resampler}. They are selected with the {@link AffineTransformOp}
+ * interpolation types used throughout the editor, plus {@link #TYPE_LANCZOS3}.
+ *
+ * @author Nikita Melnikov
+ */
+public enum Kernel {
+    NEAREST(0.5),
+    BILINEAR(1),
+    /**
+     * Catmull-Rom spline, the bicubic kernel of {@code Warp}
+     */
+    BICUBIC(2),
+    LANCZOS3(3);
+
+    /**
+     * Interpolation type of the Lanczos kernel, next to the {@link AffineTransformOp} ones
+     */
+    public static final int TYPE_LANCZOS3 = 4;
+    private final double support;
+
+    Kernel(double support) {
+        this.support = support;
+    }
+
+    /**
+     * @param interpolationType {@link AffineTransformOp} interpolation type or {@link #TYPE_LANCZOS3}
+     * @return kernel of the type, bilinear for unknown types
+     */
+    public static Kernel of(int interpolationType) {
+        return switch (interpolationType) {
+            case AffineTransformOp.TYPE_NEAREST_NEIGHBOR -> NEAREST;
+            case AffineTransformOp.TYPE_BICUBIC -> BICUBIC;
+            case TYPE_LANCZOS3 -> LANCZOS3;
+            default -> BILINEAR;
+        };
+    }
+
+    /**
+     * @param interpolationType {@link AffineTransformOp} interpolation type or {@link #TYPE_LANCZOS3}
+     * @return the nearest {@link AffineTransformOp} interpolation type, for code that samples single points
+     */
+    public static int toAffineType(int interpolationType) {
+        return interpolationType == TYPE_LANCZOS3 ? AffineTransformOp.TYPE_BICUBIC : interpolationType;
+    }
+
+    /**
+     * @return half width of the kernel in source pixels
+     */
+    double support() {
+        return support;
+    }
+
+    /**
+     * @param x distance from the sampled point in source pixels
+     * @return unnormalized weight of a source pixel at the distance
+     */
+    double weight(double x) {
+        x = Math.abs(x);
+        return switch (this) {
+            case NEAREST -> x <= 0.5 ? 1 : 0;
+            case BILINEAR -> x < 1 ? 1 - x : 0;
+            case BICUBIC -> x < 1 ? (1.5 * x - 2.5) * x * x + 1
+                    : x < 2 ? ((-0.5 * x + 2.5) * x - 4) * x + 2 : 0;
+            case LANCZOS3 -> x < 3 ? sinc(x) * sinc(x / 3) : 0;
+        };
+    }
+
+    private static double sinc(double x) {
+        if (x == 0)
+            return 1;
+        x *= Math.PI;
+        return Math.sin(x) / x;
+    }
+}
@@ -0,0 +1,116 @@
+package ru.nsu.ccfit.melnikov.model.resample;
+
+import ru.nsu.ccfit.melnikov.model.parallel.BandExecutor;
+import ru.nsu.ccfit.melnikov.model.raster.PixelBuffer;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * Separable resampling: a horizontal pass over the source rows into an intermediate image, then a vertical
+ * pass into the result.
+ * <p>
+ * The taps of every result column and row are computed once per call, see {@link AxisWeights}, and both
+ * passes work in fixed point. Only the requested region of the scaled image is computed, and only the
+ * source rows it reads are filtered horizontally.
+ *
+ * @author Nikita Melnikov
+ */
+public final class Resampler {
+    private Resampler() {
+    }
+
+    /**
+     * @param image    source image
+     * @param width    width of the whole scaled image
+     * @param height   height of the whole scaled image
+     * @param region   part of the scaled image to compute
+     * @param kernel   reconstruction filter
+     * @param type     preferred type of the result
+     * @param executor executor the rows are filtered on
+     * @return the region of the source scaled to {@code width x height}
+     */
+    public static BufferedImage resample(BufferedImage image, int width, int height, Rectangle region,
+                                         Kernel kernel, int type, BandExecutor executor) {
+        var src = PixelBuffer.of(image);
+        int srcWidth = src.getWidth();
+        int srcHeight = src.getHeight();
+        double scaleX = (double) width / srcWidth;
+        double scaleY = (double) height / srcHeight;
+        var columns = AxisWeights.of(kernel, srcWidth, scaleX, region.x, region.width);
+        // a square image scaled uniformly and cropped symmetrically reads the same taps along both axes
+        var rows = srcWidth == srcHeight && width == height && region.x == region.y && region.width == region.height
+                ? columns : AxisWeights.of(kernel, srcHeight, scaleY, region.y, region.height);
+
+        // horizontal pass over the source rows the region reads
+        int firstRow = rows.min();
+        int rowCount = rows.max() - firstRow + 1;
+        int resultWidth = region.width;
+        var horizontal = new int[rowCount * resultWidth];
+        executor.forEachBand(rowCount, 0, band -> {
+            int taps = columns.taps;
+            for (int y = band.fromY(); y < band.toY(); ++y) {
+                int srcRow = (firstRow + y) * srcWidth;
+                int row = y * resultWidth;
+                for (int x = 0; x < resultWidth; ++x) {
+                    int a = 0, r = 0, g = 0, b = 0;
+                    for (int k = x * taps; k < (x + 1) * taps; ++k) {
+                        int pixel = src.get(srcRow + columns.indices[k]);
+                        int weight = columns.weights[k];
+                        a += (pixel >>> 24) * weight;
+                        r += ((pixel >> 16) & 0xff) * weight;
+                        g += ((pixel >> 8) & 0xff) * weight;
+                        b += (pixel & 0xff) * weight;
+                    }
+                    horizontal[row + x] = pack(a, r, g, b);
+                }
+            }
+        });
+
+        // vertical pass, accumulating whole rows so the intermediate image is read sequentially
+        var dst = PixelBuffer.create(resultWidth, region.height, type);
+        executor.forEachBand(region.height, 0, band -> {
+            int taps = rows.taps;
+            var a = new int[resultWidth];
+            var r = new int[resultWidth];
+            var g = new int[resultWidth];
+            var b = new int[resultWidth];
+            for (int y = band.fromY(); y < band.toY(); ++y) {
+                Arrays.fill(a, 0);
+                Arrays.fill(r, 0);
+                Arrays.fill(g, 0);
+                Arrays.fill(b, 0);
+                for (int k = y * taps; k < (y + 1) * taps; ++k) {
+                    int weight = rows.weights[k];
+                    if (weight == 0)
+                        continue;
+                    int row = (rows.indices[k] - firstRow) * resultWidth;
+                    for (int x = 0; x < resultWidth; ++x) {
+                        int pixel = horizontal[row + x];
+                        a[x] += (pixel >>> 24) * weight;
+                        r[x] += ((pixel >> 16) & 0xff) * weight;
+                        g[x] += ((pixel >> 8) & 0xff) * weight;
+                        b[x] += (pixel & 0xff) * weight;
+                    }
+                }
+                int offset = y * resultWidth;
+                for (int x = 0; x < resultWidth; ++x)
+                    dst.set(offset + x, pack(a[x], r[x], g[x], b[x]));
+            }
+        });
+        return dst.getImage();
+    }
+
+    /**
+     * @return ARGB pixel of fixed-point channel sums, rounded and clamped
+     */
+    private static int pack(int a, int r, int g, int b) {
+        return channel(a) << 24 | channel(r) << 16 | channel(g) << 8 | channel(b);
+    }
+
+    private static int channel(int sum) {
+        int value = (sum + (AxisWeights.ONE >> 1)) >> AxisWeights.SHIFT;
+        return value < 0 ? 0 : Math.min(value, 255);
+    }
+}
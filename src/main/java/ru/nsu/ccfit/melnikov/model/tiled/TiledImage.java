@@ -0,0 +1,313 @@
+package ru.nsu.ccfit.melnikov.model.tiled;
+
+import lombok.Getter;
+import ru.nsu.ccfit.melnikov.model.raster.PixelBuffer;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * ARGB image stored in square tiles, only a bounded number of which are held on the heap.
+ * <p>
+ * Tiles are loaded on first access and kept in an LRU cache. A modified tile that falls out of the cache is
+ * written to a scratch file mapped into memory in segments of {@value #SEGMENT_TILES} tiles and read back from
+ * it on the next access, so the heap holds the cache only, whatever the size of the image. Tiles that were
+ * never written read as transparent black. {@link #close()} deletes the scratch file.
+ * <p>
+ * All accessors are synchronized; a region may span any number of tiles.
+ *
+ * @author Nikita Melnikov
+ */
+public final class TiledImage implements AutoCloseable {
+    public static final int DEFAULT_TILE_SIZE = 256;
+    private static final int SEGMENT_TILES = 64;
+    /**
+     * Pixels decoded at once by {@link #read(File)}
+     */
+    private static final int STRIP_PIXELS = 1 << 23;
+    @Getter
+    private final int width;
+    @Getter
+    private final int height;
+    @Getter
+    private final int tileSize;
+    private final int tilesX;
+    private final int tilesY;
+    private final int maxCachedTiles;
+    private final Map<Integer, Tile> cache = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Tile> eldest) {
+            if (size() <= maxCachedTiles)
+                return false;
+            spill(eldest.getKey(), eldest.getValue());
+            return true;
+        }
+    };
+    /**
+     * Tiles that have a copy in the scratch file
+     */
+    private final BitSet spilled = new BitSet();
+    private FileChannel scratch;
+    private IntBuffer[] segments;
+
+    /**
+     * Pixels of a cached tile, {@code tileSize} by {@code tileSize} even at the right and bottom edges
+     */
+    private static final class Tile {
+        private final int[] pixels;
+        private boolean dirty;
+
+        private Tile(int[] pixels) {
+            this.pixels = pixels;
+        }
+    }
+
+    /**
+     * @param width      image width
+     * @param height     image height
+     * @param tileSize   side of a tile
+     * @param cacheBytes heap the cached tiles may take; at least two rows of tiles are always cached
+     */
+    public TiledImage(int width, int height, int tileSize, long cacheBytes) {
+        if (width <= 0 || height <= 0 || tileSize <= 0)
+            throw new IllegalArgumentException("Illegal size " + width + "x" + height + ", tile " + tileSize);
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        tilesX = (width - 1) / tileSize + 1;
+        tilesY = (height - 1) / tileSize + 1;
+        long tileBytes = (long) tileSize * tileSize * Integer.BYTES;
+        maxCachedTiles = (int) Math.min(Integer.MAX_VALUE, Math.max(2L * tilesX, cacheBytes / tileBytes));
+    }
+
+    /**
+     * @return image with the default tile size and the cache size of the {@code icgfilter.tiles.mb} property
+     */
+    public static TiledImage create(int width, int height) {
+        return new TiledImage(width, height, DEFAULT_TILE_SIZE, Long.getLong("icgfilter.tiles.mb", 256) << 20);
+    }
+
+    /**
+     * @param image source image
+     * @return tiled copy of the image
+     */
+    public static TiledImage of(BufferedImage image) {
+        var tiled = create(image.getWidth(), image.getHeight());
+        int rows = tiled.tileSize;
+        var strip = new int[image.getWidth() * rows];
+        for (int y = 0; y < image.getHeight(); y += rows) {
+            int stripRows = Math.min(rows, image.getHeight() - y);
+            PixelBuffer.readRegion(image, 0, y, image.getWidth(), stripRows, strip);
+            tiled.writeRegion(0, y, image.getWidth(), stripRows, strip);
+        }
+        return tiled;
+    }
+
+    /**
+     * @param file image file in any format {@link ImageIO} reads
+     * @return size of the first image of the file, or {@code null} if no reader accepts the file
+     */
+    public static Dimension sizeOf(File file) throws IOException {
+        try (var input = ImageIO.createImageInputStream(file)) {
+            var readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext())
+                return null;
+            var reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Decodes an image strip by strip, so that no more than a strip of it is held on the heap at once
+     *
+     * @param file image file in any format {@link ImageIO} reads
+     * @return tiled image
+     * @throws IOException if the file can not be read or no reader accepts it
+     */
+    public static TiledImage read(File file) throws IOException {
+        try (var input = ImageIO.createImageInputStream(file)) {
+            var readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext())
+                throw new IOException("Unsupported image format: " + file);
+            var reader = readers.next();
+            try {
+                reader.setInput(input, false, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                var tiled = create(width, height);
+                int rows = Math.max(1, STRIP_PIXELS / width / tiled.tileSize) * tiled.tileSize;
+                var pixels = new int[width * Math.min(rows, height)];
+                var param = reader.getDefaultReadParam();
+                for (int y = 0; y < height; y += rows) {
+                    int stripRows = Math.min(rows, height - y);
+                    param.setSourceRegion(new Rectangle(0, y, width, stripRows));
+                    var strip = reader.read(0, param);
+                    PixelBuffer.readRegion(strip, 0, 0, width, stripRows, pixels);
+                    tiled.writeRegion(0, y, width, stripRows, pixels);
+                }
+                return tiled;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    public synchronized int getRGB(int x, int y) {
+        return tile(x / tileSize, y / tileSize).pixels[(y % tileSize) * tileSize + x % tileSize];
+    }
+
+    public synchronized void setRGB(int x, int y, int argb) {
+        var tile = tile(x / tileSize, y / tileSize);
+        tile.pixels[(y % tileSize) * tileSize + x % tileSize] = argb;
+        tile.dirty = true;
+    }
+
+    /**
+     * Reads a rectangle of ARGB pixels
+     *
+     * @param pixels destination of {@code width * height} pixels, row by row
+     */
+    public void readRegion(int x, int y, int width, int height, int[] pixels) {
+        readRegion(x, y, width, height, pixels, 0, width);
+    }
+
+    /**
+     * Reads a rectangle of ARGB pixels, laid out as {@link BufferedImage#getRGB(int, int, int, int, int[], int, int)}
+     * lays them out
+     *
+     * @param pixels   destination
+     * @param offset   index of the top left pixel in {@code pixels}
+     * @param scansize distance between the starts of two rows in {@code pixels}
+     */
+    public synchronized void readRegion(int x, int y, int width, int height, int[] pixels, int offset, int scansize) {
+        copyRegion(x, y, width, height, pixels, offset, scansize, false);
+    }
+
+    /**
+     * Writes a rectangle of ARGB pixels
+     *
+     * @param pixels {@code width * height} pixels, row by row
+     */
+    public synchronized void writeRegion(int x, int y, int width, int height, int[] pixels) {
+        copyRegion(x, y, width, height, pixels, 0, width, true);
+    }
+
+    /**
+     * @param region rectangle inside the image
+     * @return new {@code TYPE_INT_ARGB} image holding a copy of the region
+     */
+    public BufferedImage toImage(Rectangle region) {
+        var image = new BufferedImage(region.width, region.height, BufferedImage.TYPE_INT_ARGB);
+        var data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        readRegion(region.x, region.y, region.width, region.height, data);
+        return image;
+    }
+
+    /**
+     * Drops all tiles and deletes the scratch file; the image must not be used afterwards
+     */
+    @Override
+    public synchronized void close() {
+        cache.clear();
+        segments = null;
+        if (scratch != null) {
+            try {
+                scratch.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                scratch = null;
+            }
+        }
+    }
+
+    private void copyRegion(int x, int y, int width, int height, int[] pixels, int offset, int scansize,
+                            boolean write) {
+        if (x < 0 || y < 0 || width < 0 || height < 0 || x + width > this.width || y + height > this.height)
+            throw new IndexOutOfBoundsException("Region " + new Rectangle(x, y, width, height)
+                    + " is outside of the " + this.width + "x" + this.height + " image");
+        for (int tileY = y / tileSize; tileY * tileSize < y + height; ++tileY) {
+            int top = Math.max(y, tileY * tileSize);
+            int bottom = Math.min(y + height, (tileY + 1) * tileSize);
+            for (int tileX = x / tileSize; tileX * tileSize < x + width; ++tileX) {
+                int left = Math.max(x, tileX * tileSize);
+                int right = Math.min(x + width, (tileX + 1) * tileSize);
+                var tile = tile(tileX, tileY);
+                for (int row = top; row < bottom; ++row) {
+                    int tileOffset = (row - tileY * tileSize) * tileSize + left - tileX * tileSize;
+                    int pixelsOffset = offset + (row - y) * scansize + left - x;
+                    if (write)
+                        System.arraycopy(pixels, pixelsOffset, tile.pixels, tileOffset, right - left);
+                    else
+                        System.arraycopy(tile.pixels, tileOffset, pixels, pixelsOffset, right - left);
+                }
+                tile.dirty |= write;
+            }
+        }
+    }
+
+    private Tile tile(int tileX, int tileY) {
+        int index = tileY * tilesX + tileX;
+        var tile = cache.get(index);
+        if (tile != null)
+            return tile;
+        var pixels = new int[tileSize * tileSize];
+        if (spilled.get(index))
+            segment(index).get(offset(index), pixels);
+        tile = new Tile(pixels);
+        cache.put(index, tile);
+        return tile;
+    }
+
+    /**
+     * Writes a tile leaving the cache to the scratch file unless the file already has its content
+     */
+    private void spill(int index, Tile tile) {
+        if (!tile.dirty)
+            return;
+        segment(index).put(offset(index), tile.pixels);
+        spilled.set(index);
+    }
+
+    private int offset(int index) {
+        return index % SEGMENT_TILES * tileSize * tileSize;
+    }
+
+    private IntBuffer segment(int index) {
+        try {
+            if (scratch == null) {
+                var file = Files.createTempFile("icgfilter-", ".tiles");
+                scratch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                        StandardOpenOption.DELETE_ON_CLOSE);
+                segments = new IntBuffer[(tilesX * tilesY - 1) / SEGMENT_TILES + 1];
+            }
+            int number = index / SEGMENT_TILES;
+            if (segments[number] == null) {
+                long bytes = (long) SEGMENT_TILES * tileSize * tileSize * Integer.BYTES;
+                segments[number] = scratch.map(FileChannel.MapMode.READ_WRITE, number * bytes, bytes)
+                        .order(ByteOrder.nativeOrder()).asIntBuffer();
+            }
+            return segments[number];
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can not write the tile scratch file", e);
+        }
+    }
+}
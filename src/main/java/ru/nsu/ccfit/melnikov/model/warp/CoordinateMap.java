@@ -0,0 +1,69 @@
+package ru.nsu.ccfit.melnikov.model.warp;
+
+import lombok.Getter;
+import ru.nsu.ccfit.melnikov.model.parallel.BandExecutor;
+
+/**
+ * Source coordinates of every pixel of a result, computed once from an {@link InverseMapping}
+ * so applying the transform again costs only the sampling.
+ *
+ * @author Nikita Melnikov
+ */
+public final class CoordinateMap {
+    @Getter
+    private final int width;
+    @Getter
+    private final int height;
+    private final float[] xs;
+    private final float[] ys;
+
+    private CoordinateMap(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.xs = new float[width * height];
+        this.ys = new float[width * height];
+    }
+
+    /**
+     * @param width    width of the result
+     * @param height   height of the result
+     * @param mapping  transform
+     * @param executor executor the rows are computed on
+     * @return coordinate map of the transform
+     */
+    public static CoordinateMap of(int width, int height, InverseMapping mapping, BandExecutor executor) {
+        var map = new CoordinateMap(width, height);
+        executor.forEachBand(height, 0, band -> {
+            var point = new double[2];
+            for (int y = band.fromY(); y < band.toY(); ++y) {
+                for (int x = 0; x < width; ++x) {
+                    mapping.map(x, y, point);
+                    map.xs[y * width + x] = (float) point[0];
+                    map.ys[y * width + x] = (float) point[1];
+                }
+            }
+        });
+        return map;
+    }
+
+    /**
+     * @return source column of a pixel of the result, {@link Float#NaN} if it shows no part of the source
+     */
+    public float x(int index) {
+        return xs[index];
+    }
+
+    /**
+     * @return source row of a pixel of the result, {@link Float#NaN} if it shows no part of the source
+     */
+    public float y(int index) {
+        return ys[index];
+    }
+
+    /**
+     * @return memory taken by the map
+     */
+    public long bytes() {
+        return 2L * Float.BYTES * xs.length;
+    }
+}
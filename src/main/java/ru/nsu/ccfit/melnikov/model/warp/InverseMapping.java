@@ -0,0 +1,19 @@
+package ru.nsu.ccfit.melnikov.model.warp;
+
+/**
+ * Geometric transform given backwards: for every pixel of the result, the point of the source it shows.
+ * <p>
+ * Coordinates are continuous with the centre of pixel {@code (i, j)} at {@code (i, j)}.
+ *
+ * @author Nikita Melnikov
+ */
+@FunctionalInterface
+public interface InverseMapping {
+    /**
+     * @param x     column of the result
+     * @param y     row of the result
+     * @param point receives the source coordinates as {@code point[0]}, {@code point[1]};
+     *              {@link Double#NaN} if the pixel shows no part of the source
+     */
+    void map(int x, int y, double[] point);
+}
@@ -0,0 +1,311 @@
+package ru.nsu.ccfit.melnikov.model.warp;
+
+import ru.nsu.ccfit.melnikov.model.parallel.BandExecutor;
+import ru.nsu.ccfit.melnikov.model.raster.PixelBuffer;
+
+import java.awt.image.AffineTransformOp;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * Rotations that read the source sequentially.
+ * <p>
+ * Quarter turns copy the pixels tile by tile. Any other angle is reduced to a quarter turn and a rotation by
+ * at most 45 degrees, done as three shears after Paeth: a horizontal shear by {@code -tan(angle / 2)},
+ * a vertical shear by {@code sin(angle)} and the horizontal shear again. A shear moves every row by one
+ * offset, so a row is resampled with the same interpolation weights for all its pixels; the vertical shear
+ * keeps one set of weights per column and still walks the rows in order. The geometry and the size of the result are those of
+ * {@link Warp} rotations.
+ *
+ * @author Nikita Melnikov
+ */
+public final class Rotation {
+    /**
+     * Side of the square blocks rotated at once, 16 KB of ARGB pixels
+     */
+    private static final int TILE = 64;
+
+    private Rotation() {
+    }
+
+    /**
+     * @param image        source image
+     * @param quarterTurns number of quarter turns, any sign
+     * @param type         preferred type of the result
+     * @param executor     executor the rows are copied on
+     * @return image rotated by {@code 90 * quarterTurns} degrees
+     */
+    public static BufferedImage rotateQuarters(BufferedImage image, int quarterTurns, int type, BandExecutor executor) {
+        var src = PixelBuffer.of(image);
+        int width = src.getWidth();
+        int height = src.getHeight();
+        int turns = Math.floorMod(quarterTurns, 4);
+        var pixels = rotateQuarters(flat(src), width, height, turns, executor);
+        boolean swap = turns % 2 == 1;
+        var dst = PixelBuffer.create(swap ? height : width, swap ? width : height, type);
+        copy(pixels, dst, executor);
+        return dst.getImage();
+    }
+
+    /**
+     * @param image             source image
+     * @param degree            angle in degrees
+     * @param interpolationType {@link AffineTransformOp} interpolation type of the shears
+     * @param background        ARGB color of the corners
+     * @param type              preferred type of the result
+     * @param executor          executor the rows are resampled on
+     * @return rotated image
+     */
+    public static BufferedImage rotate(BufferedImage image, int degree, int interpolationType, int background,
+                                       int type, BandExecutor executor) {
+        double angle = Math.toRadians(degree);
+        double sin = Math.sin(angle);
+        double cos = Math.cos(angle);
+        int resultHeight = (int) (image.getWidth()*Math.abs(sin) + image.getHeight()*Math.abs(cos));
+        int resultWidth = (int) (image.getWidth()*Math.abs(cos) + image.getHeight()*Math.abs(sin));
+
+        // a quarter turn first, leaving at most 45 degrees for the shears
+        int turns = Math.floorMod(Math.round(degree / 90.0f), 4);
+        double residual = Math.toRadians(degree - 90.0 * Math.round(degree / 90.0f));
+        var src = PixelBuffer.of(image);
+        boolean swap = turns % 2 == 1;
+        int width = swap ? src.getHeight() : src.getWidth();
+        int height = swap ? src.getWidth() : src.getHeight();
+        var pixels = rotateQuarters(flat(src), src.getWidth(), src.getHeight(), turns, executor);
+
+        double a = -Math.tan(residual / 2);
+        double b = Math.sin(residual);
+        double centerX = (width - 1) / 2.0;
+        double centerY = (height - 1) / 2.0;
+
+        // first horizontal shear: width grows by the shift between the top and the bottom row
+        int width1 = width + (int) Math.ceil(Math.abs(a) * (height - 1));
+        double center1X = (width1 - 1) / 2.0;
+        var sheared1 = new int[width1 * height];
+        shearRows(pixels, width, sheared1, width1, height, 0, a, centerX - center1X - a * centerY,
+                interpolationType, background, executor);
+
+        // vertical shear; the height keeps the parity of the result, so the rows of the last shear
+        // line up with the rows of the result
+        int height2 = Math.max((int) Math.ceil(height + Math.abs(b) * (width1 - 1)), resultHeight);
+        if ((height2 - resultHeight) % 2 != 0)
+            ++height2;
+        double center2Y = (height2 - 1) / 2.0;
+        var sheared2 = new int[width1 * height2];
+        shearColumns(sheared1, height, sheared2, width1, height2, b, centerY - center2Y - b * center1X,
+                interpolationType, background, executor);
+
+        // second horizontal shear into the result
+        double resultCenterX = (resultWidth - 1) / 2.0;
+        double resultCenterY = (resultHeight - 1) / 2.0;
+        var result = new int[resultWidth * resultHeight];
+        shearRows(sheared2, width1, result, resultWidth, resultHeight, (height2 - resultHeight) / 2, a,
+                center1X - resultCenterX - a * resultCenterY, interpolationType, background, executor);
+
+        var dst = PixelBuffer.create(resultWidth, resultHeight, type);
+        copy(result, dst, executor);
+        return dst.getImage();
+    }
+
+    /**
+     * Resamples every row with a shift growing linearly with the row:
+     * {@code dst(x, y) = src(x + slope * y + offset, y + rowOffset)}
+     *
+     * @param src       source rows of {@code srcWidth} pixels
+     * @param dst       destination rows of {@code dstWidth} pixels
+     * @param height    number of destination rows
+     * @param rowOffset index of the source row of the first destination row
+     */
+    private static void shearRows(int[] src, int srcWidth, int[] dst, int dstWidth, int height, int rowOffset,
+                                  double slope, double offset, int interpolationType, int background,
+                                  BandExecutor executor) {
+        executor.forEachBand(height, 0, band -> {
+            var weights = new float[4];
+            for (int y = band.fromY(); y < band.toY(); ++y) {
+                double shift = slope * y + offset;
+                int srcRow = (y + rowOffset) * srcWidth;
+                int dstRow = y * dstWidth;
+                // destination columns whose source lies within [-0.5, srcWidth - 0.5)
+                int fromX = Math.max(0, (int) Math.ceil(-0.5 - shift));
+                int toX = Math.min(dstWidth, (int) Math.ceil(srcWidth - 0.5 - shift));
+                for (int x = 0; x < Math.min(fromX, dstWidth); ++x)
+                    dst[dstRow + x] = background;
+                for (int x = Math.max(toX, 0); x < dstWidth; ++x)
+                    dst[dstRow + x] = background;
+                if (fromX >= toX)
+                    continue;
+
+                if (interpolationType == AffineTransformOp.TYPE_BILINEAR) {
+                    int left = (int) Math.floor(shift);
+                    int weight = (int) ((shift - left) * 256 + 0.5);
+                    for (int x = fromX; x < toX; ++x) {
+                        int p0 = src[srcRow + Warp.clamp(x + left, srcWidth)];
+                        int p1 = src[srcRow + Warp.clamp(x + left + 1, srcWidth)];
+                        dst[dstRow + x] = lerp(p0, p1, weight);
+                    }
+                } else if (interpolationType == AffineTransformOp.TYPE_BICUBIC) {
+                    int left = (int) Math.floor(shift);
+                    Warp.catmullRom((float) (shift - left), weights);
+                    for (int x = fromX; x < toX; ++x) {
+                        float a = 0, r = 0, g = 0, b = 0;
+                        for (int i = 0; i < 4; ++i) {
+                            int pixel = src[srcRow + Warp.clamp(x + left - 1 + i, srcWidth)];
+                            a += (pixel >>> 24) * weights[i];
+                            r += ((pixel >> 16) & 0xff) * weights[i];
+                            g += ((pixel >> 8) & 0xff) * weights[i];
+                            b += (pixel & 0xff) * weights[i];
+                        }
+                        dst[dstRow + x] = Warp.channel(a) << 24 | Warp.channel(r) << 16 | Warp.channel(g) << 8 | Warp.channel(b);
+                    }
+                } else {
+                    int nearest = (int) Math.floor(shift + 0.5);
+                    for (int x = fromX; x < toX; ++x)
+                        dst[dstRow + x] = src[srcRow + Warp.clamp(x + nearest, srcWidth)];
+                }
+            }
+        });
+    }
+
+    /**
+     * Resamples every column with a shift growing linearly with the column:
+     * {@code dst(x, y) = src(x, y + slope * x + offset)}. The rows are still walked in order, with the
+     * weights of every column computed once.
+     *
+     * @param src      source columns of {@code srcHeight} pixels
+     * @param dst      destination columns of {@code dstHeight} pixels
+     * @param width    number of columns
+     */
+    private static void shearColumns(int[] src, int srcHeight, int[] dst, int width, int dstHeight, double slope,
+                                     double offset, int interpolationType, int background, BandExecutor executor) {
+        var top = new int[width];
+        var fromY = new int[width];
+        var toY = new int[width];
+        var fractions = new float[width];
+        for (int x = 0; x < width; ++x) {
+            double shift = slope * x + offset;
+            top[x] = interpolationType == AffineTransformOp.TYPE_NEAREST_NEIGHBOR
+                    ? (int) Math.floor(shift + 0.5) : (int) Math.floor(shift);
+            fractions[x] = (float) (shift - Math.floor(shift));
+            // destination rows whose source lies within [-0.5, srcHeight - 0.5)
+            fromY[x] = Math.max(0, (int) Math.ceil(-0.5 - shift));
+            toY[x] = Math.min(dstHeight, (int) Math.ceil(srcHeight - 0.5 - shift));
+        }
+        var weights = new int[width];
+        var cubic = new float[4 * width];
+        var scratch = new float[4];
+        for (int x = 0; x < width; ++x) {
+            weights[x] = (int) (fractions[x] * 256 + 0.5f);
+            Warp.catmullRom(fractions[x], scratch);
+            System.arraycopy(scratch, 0, cubic, 4 * x, 4);
+        }
+
+        executor.forEachBand(dstHeight, 0, band -> {
+            for (int y = band.fromY(); y < band.toY(); ++y) {
+                int dstRow = y * width;
+                // the shift is monotonic in x, so the columns with a source at this row are one run
+                int from = 0;
+                while (from < width && (y < fromY[from] || y >= toY[from]))
+                    ++from;
+                int to = from;
+                while (to < width && y >= fromY[to] && y < toY[to])
+                    ++to;
+                Arrays.fill(dst, dstRow, dstRow + from, background);
+                Arrays.fill(dst, dstRow + to, dstRow + width, background);
+
+                if (interpolationType == AffineTransformOp.TYPE_BILINEAR) {
+                    for (int x = from; x < to; ++x) {
+                        int row = y + top[x];
+                        dst[dstRow + x] = lerp(src[Warp.clamp(row, srcHeight) * width + x],
+                                src[Warp.clamp(row + 1, srcHeight) * width + x], weights[x]);
+                    }
+                } else if (interpolationType == AffineTransformOp.TYPE_BICUBIC) {
+                    for (int x = from; x < to; ++x) {
+                        int row = y + top[x];
+                        float a = 0, r = 0, g = 0, b = 0;
+                        for (int i = 0; i < 4; ++i) {
+                            int pixel = src[Warp.clamp(row - 1 + i, srcHeight) * width + x];
+                            float weight = cubic[4 * x + i];
+                            a += (pixel >>> 24) * weight;
+                            r += ((pixel >> 16) & 0xff) * weight;
+                            g += ((pixel >> 8) & 0xff) * weight;
+                            b += (pixel & 0xff) * weight;
+                        }
+                        dst[dstRow + x] = Warp.channel(a) << 24 | Warp.channel(r) << 16 | Warp.channel(g) << 8
+                                | Warp.channel(b);
+                    }
+                } else {
+                    for (int x = from; x < to; ++x)
+                        dst[dstRow + x] = src[Warp.clamp(y + top[x], srcHeight) * width + x];
+                }
+            }
+        });
+    }
+
+    /**
+     * Rotates a flat ARGB image by whole quarter turns, a block of {@value #TILE} rows and columns at a time
+     *
+     * @param turns quarter turns from 0 to 3
+     * @return rotated pixels, {@code src} itself for no turns
+     */
+    private static int[] rotateQuarters(int[] src, int width, int height, int turns, BandExecutor executor) {
+        if (turns == 0)
+            return src;
+        boolean swap = turns % 2 == 1;
+        int dstWidth = swap ? height : width;
+        int dstHeight = swap ? width : height;
+        var dst = new int[src.length];
+        executor.forEachBand(dstHeight, 0, band -> {
+            for (int tileY = band.fromY(); tileY < band.toY(); tileY += TILE) {
+                int tileEndY = Math.min(tileY + TILE, band.toY());
+                for (int tileX = 0; tileX < dstWidth; tileX += TILE) {
+                    int tileEndX = Math.min(tileX + TILE, dstWidth);
+                    for (int y = tileY; y < tileEndY; ++y) {
+                        for (int x = tileX; x < tileEndX; ++x) {
+                            int index = switch (turns) {
+                                case 1 -> x * width + width - 1 - y;
+                                case 2 -> (height - 1 - y) * width + width - 1 - x;
+                                default -> (height - 1 - x) * width + y;
+                            };
+                            dst[y * dstWidth + x] = src[index];
+                        }
+                    }
+                }
+            }
+        });
+        return dst;
+    }
+
+    /**
+     * @return ARGB pixels of the buffer; its own array unless it is a window or an image without alpha
+     */
+    private static int[] flat(PixelBuffer buffer) {
+        int size = buffer.getWidth() * buffer.getHeight();
+        if (buffer.getOrigin() == 0 && buffer.getAlphaFill() == 0 && buffer.getData().length == size)
+            return buffer.getData();
+        var pixels = new int[size];
+        for (int i = 0; i < size; ++i)
+            pixels[i] = buffer.get(i);
+        return pixels;
+    }
+
+    private static void copy(int[] pixels, PixelBuffer dst, BandExecutor executor) {
+        int width = dst.getWidth();
+        executor.forEachBand(dst.getHeight(), 0, band -> {
+            for (int i = band.fromY() * width; i < band.toY() * width; ++i)
+                dst.set(i, pixels[i]);
+        });
+    }
+
+    /**
+     * Blends two ARGB pixels two channels at a time
+     *
+     * @param weight weight of {@code second} out of 256
+     */
+    private static int lerp(int first, int second, int weight) {
+        int inverse = 256 - weight;
+        int redBlue = ((first & 0xff00ff) * inverse + (second & 0xff00ff) * weight + 0x800080) >>> 8 & 0xff00ff;
+        int alphaGreen = (((first >>> 8) & 0xff00ff) * inverse + ((second >>> 8) & 0xff00ff) * weight + 0x800080)
+                & 0xff00ff00;
+        return alphaGreen | redBlue;
+    }
+}
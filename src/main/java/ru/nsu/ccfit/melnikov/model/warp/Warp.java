@@ -0,0 +1,179 @@
+package ru.nsu.ccfit.melnikov.model.warp;
+
+import ru.nsu.ccfit.melnikov.model.parallel.BandExecutor;
+import ru.nsu.ccfit.melnikov.model.raster.PixelBuffer;
+
+import java.awt.image.AffineTransformOp;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Geometric transforms by inverse mapping: every pixel of the result samples the source at the point
+ * its {@link CoordinateMap} gives, with nearest neighbour, bilinear or bicubic (Catmull-Rom) interpolation
+ * chosen by an {@link AffineTransformOp} interpolation type. Samples outside the source repeat its edge.
+ * <p>
+ * Coordinate maps are kept in an LRU cache of {@value #CACHE_BYTES} bytes keyed by the transform id and
+ * the source size, so repeating a transform with the same parameters skips all trigonometry.
+ *
+ * @author Nikita Melnikov
+ */
+public final class Warp {
+    private static final long CACHE_BYTES = 64L << 20;
+    private static final Map<Key, CoordinateMap> maps = new LinkedHashMap<>(16, 0.75f, true);
+    private static long cachedBytes;
+
+    /**
+     * @param transform transform and all its parameters
+     * @param width     source width
+     * @param height    source height
+     */
+    private record Key(String transform, int width, int height) {
+    }
+
+    private Warp() {
+    }
+
+    /**
+     * Returns the cached coordinate map of a transform or computes and caches it
+     *
+     * @param transform    name of the transform and the values of all its parameters
+     * @param width        source width
+     * @param height       source height
+     * @param resultWidth  width of the result
+     * @param resultHeight height of the result
+     * @param mapping      transform
+     * @param executor     executor the map is computed on
+     * @return coordinate map
+     */
+    public static CoordinateMap coordinates(String transform, int width, int height, int resultWidth,
+                                            int resultHeight, InverseMapping mapping, BandExecutor executor) {
+        var key = new Key(transform, width, height);
+        synchronized (maps) {
+            var map = maps.get(key);
+            if (map != null)
+                return map;
+        }
+        var map = CoordinateMap.of(resultWidth, resultHeight, mapping, executor);
+        if (map.bytes() > CACHE_BYTES)
+            return map;
+        synchronized (maps) {
+            var previous = maps.put(key, map);
+            cachedBytes += map.bytes() - (previous == null ? 0 : previous.bytes());
+            Iterator<CoordinateMap> iterator = maps.values().iterator();
+            while (cachedBytes > CACHE_BYTES && iterator.hasNext()) {
+                cachedBytes -= iterator.next().bytes();
+                iterator.remove();
+            }
+        }
+        return map;
+    }
+
+    /**
+     * @param image             source image
+     * @param map               coordinate map of the transform
+     * @param interpolationType {@link AffineTransformOp#TYPE_NEAREST_NEIGHBOR}, {@link AffineTransformOp#TYPE_BILINEAR}
+     *                          or {@link AffineTransformOp#TYPE_BICUBIC}
+     * @param background        ARGB color of the pixels that show no part of the source
+     * @param type              preferred type of the result
+     * @param executor          executor the rows are sampled on
+     * @return new image of the size of the map
+     */
+    public static BufferedImage apply(BufferedImage image, CoordinateMap map, int interpolationType, int background,
+                                      int type, BandExecutor executor) {
+        var src = PixelBuffer.of(image);
+        int width = src.getWidth();
+        int height = src.getHeight();
+        int resultWidth = map.getWidth();
+        var dst = PixelBuffer.create(resultWidth, map.getHeight(), type);
+
+        executor.forEachBand(map.getHeight(), 0, band -> {
+            var weightsX = new float[4];
+            var weightsY = new float[4];
+            for (int i = band.fromY() * resultWidth; i < band.toY() * resultWidth; ++i) {
+                float x = map.x(i);
+                float y = map.y(i);
+                int color;
+                if (Float.isNaN(x) || Float.isNaN(y))
+                    color = background;
+                else if (interpolationType == AffineTransformOp.TYPE_BILINEAR)
+                    color = bilinear(src, width, height, x, y);
+                else if (interpolationType == AffineTransformOp.TYPE_BICUBIC)
+                    color = bicubic(src, width, height, x, y, weightsX, weightsY);
+                else
+                    color = src.get(clamp((int) Math.floor(y + 0.5f), height) * width
+                            + clamp((int) Math.floor(x + 0.5f), width));
+                dst.set(i, color);
+            }
+        });
+
+        return dst.getImage();
+    }
+
+    private static int bilinear(PixelBuffer src, int width, int height, float x, float y) {
+        int left = (int) Math.floor(x);
+        int top = (int) Math.floor(y);
+        float fx = x - left;
+        float fy = y - top;
+        int x0 = clamp(left, width);
+        int x1 = clamp(left + 1, width);
+        int y0 = clamp(top, height) * width;
+        int y1 = clamp(top + 1, height) * width;
+        int topLeft = src.get(y0 + x0);
+        int topRight = src.get(y0 + x1);
+        int bottomLeft = src.get(y1 + x0);
+        int bottomRight = src.get(y1 + x1);
+
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            float upper = ((topLeft >>> shift) & 0xff) * (1 - fx) + ((topRight >>> shift) & 0xff) * fx;
+            float lower = ((bottomLeft >>> shift) & 0xff) * (1 - fx) + ((bottomRight >>> shift) & 0xff) * fx;
+            result |= (int) (upper * (1 - fy) + lower * fy + 0.5f) << shift;
+        }
+        return result;
+    }
+
+    private static int bicubic(PixelBuffer src, int width, int height, float x, float y,
+                               float[] weightsX, float[] weightsY) {
+        int left = (int) Math.floor(x);
+        int top = (int) Math.floor(y);
+        catmullRom(x - left, weightsX);
+        catmullRom(y - top, weightsY);
+
+        float a = 0, r = 0, g = 0, b = 0;
+        for (int j = 0; j < 4; ++j) {
+            int row = clamp(top - 1 + j, height) * width;
+            for (int i = 0; i < 4; ++i) {
+                int pixel = src.get(row + clamp(left - 1 + i, width));
+                float weight = weightsX[i] * weightsY[j];
+                a += (pixel >>> 24) * weight;
+                r += ((pixel >> 16) & 0xff) * weight;
+                g += ((pixel >> 8) & 0xff) * weight;
+                b += (pixel & 0xff) * weight;
+            }
+        }
+        return channel(a) << 24 | channel(r) << 16 | channel(g) << 8 | channel(b);
+    }
+
+    /**
+     * Weights of the four samples around a point at offset {@code t} from the second of them
+     */
+    static void catmullRom(float t, float[] weights) {
+        float t2 = t * t;
+        float t3 = t2 * t;
+        weights[0] = 0.5f * (-t3 + 2 * t2 - t);
+        weights[1] = 0.5f * (3 * t3 - 5 * t2 + 2);
+        weights[2] = 0.5f * (-3 * t3 + 4 * t2 + t);
+        weights[3] = 0.5f * (t3 - t2);
+    }
+
+    static int channel(float value) {
+        int rounded = (int) (value + 0.5f);
+        return rounded < 0 ? 0 : Math.min(rounded, 255);
+    }
+
+    static int clamp(int coordinate, int size) {
+        return coordinate < 0 ? 0 : Math.min(coordinate, size - 1);
+    }
+}
@@ -3,31 +3,79 @@ package ru.nsu.ccfit.melnikov.view;
 import jdk.dynalink.Operation;
 import lombok.Getter;
 import ru.nsu.ccfit.melnikov.controller.Controller;
+import ru.nsu.ccfit.melnikov.model.Drafter;
 import ru.nsu.ccfit.melnikov.model.Tools;
+import ru.nsu.ccfit.melnikov.model.history.History;
+import ru.nsu.ccfit.melnikov.model.mipmap.ImagePyramid;
+import ru.nsu.ccfit.melnikov.model.raster.PixelBuffer;
+import ru.nsu.ccfit.melnikov.model.resample.Kernel;
+import ru.nsu.ccfit.melnikov.model.tiled.TiledImage;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
-import java.awt.geom.AffineTransform;
 import java.awt.image.AffineTransformOp;
 import java.awt.image.BufferedImage;
+import java.util.function.UnaryOperator;
 
 public class Canvas extends JPanel implements MouseListener, MouseMotionListener, MouseWheelListener {
     private final Controller controller;
-    private BufferedImage original;
+    private final History history = new History(Long.getLong("icgfilter.history.mb", 512) << 20);
     @Getter
     private BufferedImage image;
+    /**
+     * Document too large for the heap, shown tile by tile instead of {@link #image}; {@code null} if there is none
+     */
+    @Getter
+    private TiledImage tiledImage;
+    /**
+     * Ratio of painted to document pixels; the document itself always stays at full resolution
+     */
+    @Getter
+    private double zoom = 1;
+    /**
+     * Levels the document is painted from, built lazily; {@code null} until the first paint of a document
+     */
+    private ImagePyramid pyramid;
+    /**
+     * Image region changed since the last repaint request, repainted at once after the pending events
+     */
+    private Rectangle dirtyRegion;
+    /**
+     * Image region the current drawing operation has changed, recorded in the history when it ends
+     */
+    private Rectangle strokeRegion;
+    /**
+     * Filter result painted over the document, {@code null} unless a preview is shown
+     */
+    private BufferedImage preview;
+    private PreviewSource previewSource;
+
+    /**
+     * Downsampled copy of a region of the document a filter preview is computed on
+     *
+     * @param image  pixels of the region at a level of the mip-map pyramid
+     * @param region region of the document the image covers
+     */
+    public record PreviewSource(BufferedImage image, Rectangle region) {
+    }
     private Graphics2D g2d;
     private final JScrollPane spIm;
     private static final int INDENT = 4;
     private Point prevPoint = new Point(-1, -1);
     private static final Color DEFAULT_BACKGROUND_COLOR = Color.WHITE;
+    private static final double ZOOM_STEP = 1.25;
+    private static final double MIN_ZOOM = 1.0 / 256;
+    private static final double MAX_ZOOM = 32;
+    /**
+     * Largest size of the proxy a filter preview is computed on
+     */
+    private static final long PREVIEW_PIXELS = 1 << 20;
 
     public Canvas(Controller controller, Dimension dimension, JScrollPane scrollPane) {
         setPreferredSize(dimension);
         this.controller = controller;
         this.spIm = scrollPane;
-        original = new BufferedImage(dimension.width, dimension.height, BufferedImage.TYPE_INT_ARGB);
         image = new BufferedImage(dimension.width, dimension.height, BufferedImage.TYPE_INT_ARGB);
         g2d = image.createGraphics();
         spIm.setWheelScrollingEnabled(false);
@@ -41,35 +89,226 @@ public class Canvas extends JPanel implements MouseListener, MouseMotionListener
 
         addMouseListener(this);
         addMouseMotionListener(this);
+        addMouseWheelListener(this);
 
         setDefaultBackground();
     }
 
     public void setDefaultBackground() {
+        if (rejectEdit())
+            return;
         g2d.setColor(DEFAULT_BACKGROUND_COLOR);
         g2d.setBackground(DEFAULT_BACKGROUND_COLOR);
         g2d.fillRect(0, 0, image.getWidth(), image.getHeight());
-        repaint();
+        history.commit(image, null);
+        imageChanged(null);
     }
 
+    /**
+     * Replaces the image, recording the change in the history
+     */
     public void setImage(BufferedImage newImage) {
+        showImage(newImage);
+        history.commit(image, null);
+    }
+
+    /**
+     * Starts a new history with the image, converted to an int-packed type if needed
+     */
+    public void loadImage(BufferedImage newImage) {
+        closeTiled();
+        zoom = 1;
+        showImage(PixelBuffer.toCompatible(newImage));
+        history.reset(image);
+    }
+
+    /**
+     * Opens a tiled document. Only its visible tiles are painted; drawing tools, undo and resizing are unavailable
+     * until an ordinary image is loaded, and the history is dropped to give its memory to the tile cache
+     */
+    public void loadTiled(TiledImage newImage) {
+        zoom = 1;
+        image = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        g2d = image.createGraphics();
+        history.reset(image);
+        setTiledImage(newImage);
+    }
+
+    /**
+     * Replaces the tiled document, closing the previous one
+     */
+    public void setTiledImage(TiledImage newImage) {
+        closeTiled();
+        tiledImage = newImage;
+        documentReplaced();
+        repaint();
+    }
+
+    public boolean isTiled() {
+        return tiledImage != null;
+    }
+
+    private void closeTiled() {
+        closePyramid();
+        if (tiledImage != null) {
+            tiledImage.close();
+            tiledImage = null;
+        }
+    }
+
+    /**
+     * @return {@code true}, after a beep, if a tiled document is open or a running filter reads the image,
+     * which must not change under it
+     */
+    private boolean rejectEdit() {
+        if (canDraw())
+            return false;
+        Toolkit.getDefaultToolkit().beep();
+        return true;
+    }
+
+    /**
+     * @return whether a stroke started before may go on drawing into the image
+     */
+    private boolean canDraw() {
+        return !isTiled() && !controller.getFilterRunner().isRunning();
+    }
+
+    public void undo() {
+        changeHistory(history::undo);
+    }
+
+    public void redo() {
+        changeHistory(history::redo);
+    }
+
+    private void changeHistory(UnaryOperator<BufferedImage> step) {
+        // a running filter reads the current image, which undo may modify in place
+        if (rejectEdit())
+            return;
+        var restored = step.apply(image);
+        if (restored != image)
+            showImage(restored);
+        else
+            imageChanged(null);
+    }
+
+    private void showImage(BufferedImage newImage) {
         image = newImage;
         g2d = image.createGraphics();
-        setPreferredSize(new Dimension(image.getWidth(), image.getHeight()));
-        revalidate();
+        documentReplaced();
         spIm.paintAll(spIm.getGraphics());
     }
 
-    public void loadImage(BufferedImage newImage) {
-        original = newImage;
-        setImage(newImage);
+    /**
+     * Drops the levels of the previous document and sizes the canvas to the new one at the current zoom
+     */
+    private void documentReplaced() {
+        clearPreview();
+        closePyramid();
+        setPreferredSize(new Dimension((int) Math.ceil(documentWidth() * zoom),
+                (int) Math.ceil(documentHeight() * zoom)));
+        revalidate();
     }
 
-    public void undo() {
-        setImage(original);
+    /**
+     * Marks a region of the image as modified in place and repaints the canvas.
+     * Regions reported while handling one batch of events are merged into a single repaint request.
+     *
+     * @param region modified region in image coordinates, {@code null} for the whole image
+     */
+    private void imageChanged(Rectangle region) {
+        if (region != null && region.isEmpty())
+            return;
+        if (pyramid != null)
+            pyramid.invalidate(region);
+        if (region == null) {
+            repaint();
+            return;
+        }
+        if (dirtyRegion == null) {
+            dirtyRegion = new Rectangle(region);
+            SwingUtilities.invokeLater(this::repaintDirtyRegion);
+        } else {
+            dirtyRegion = dirtyRegion.union(region);
+        }
+    }
+
+    /**
+     * Records a change of the current drawing operation, see {@link #strokeRegion}
+     */
+    private void drawn(Rectangle region) {
+        if (region.isEmpty())
+            return;
+        strokeRegion = strokeRegion == null ? new Rectangle(region) : strokeRegion.union(region);
+        imageChanged(region);
+    }
+
+    private void repaintDirtyRegion() {
+        if (dirtyRegion == null)
+            return;
+        // a changed pixel alters the whole pixel of the painted level and, interpolated, its neighbours
+        int step = pyramid == null ? 1 : 1 << pyramid.levelFor(zoom);
+        double scale = zoom * step;
+        int x1 = (int) Math.floor((Math.floorDiv(dirtyRegion.x, step) - 1) * scale);
+        int y1 = (int) Math.floor((Math.floorDiv(dirtyRegion.y, step) - 1) * scale);
+        int x2 = (int) Math.ceil((Math.floorDiv(dirtyRegion.x + dirtyRegion.width - 1, step) + 2) * scale);
+        int y2 = (int) Math.ceil((Math.floorDiv(dirtyRegion.y + dirtyRegion.height - 1, step) + 2) * scale);
+        dirtyRegion = null;
+        repaint(x1, y1, x2 - x1, y2 - y1);
+    }
+
+    private void closePyramid() {
+        if (pyramid != null) {
+            pyramid.close();
+            pyramid = null;
+        }
+    }
+
+    private int documentWidth() {
+        return isTiled() ? tiledImage.getWidth() : image.getWidth();
+    }
+
+    private int documentHeight() {
+        return isTiled() ? tiledImage.getHeight() : image.getHeight();
+    }
+
+    /**
+     * Changes the zoom keeping the document point under {@code anchor} in place
+     *
+     * @param newZoom requested zoom, clamped to the supported range
+     * @param anchor  point of the canvas in canvas coordinates
+     */
+    public void setZoom(double newZoom, Point anchor) {
+        newZoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, newZoom));
+        if (newZoom == zoom)
+            return;
+        var viewport = spIm.getViewport();
+        var position = viewport.getViewPosition();
+        double ratio = newZoom / zoom;
+        zoom = newZoom;
+        setPreferredSize(new Dimension((int) Math.ceil(documentWidth() * zoom),
+                (int) Math.ceil(documentHeight() * zoom)));
+        revalidate();
+        spIm.validate();
+        int x = (int) Math.round(anchor.x * ratio) - (anchor.x - position.x);
+        int y = (int) Math.round(anchor.y * ratio) - (anchor.y - position.y);
+        var extent = viewport.getExtentSize();
+        viewport.setViewPosition(new Point(Math.max(0, Math.min(x, getPreferredSize().width - extent.width)),
+                Math.max(0, Math.min(y, getPreferredSize().height - extent.height))));
+        repaint();
+    }
+
+    /**
+     * @return point of the image under a point of the canvas
+     */
+    private Point toImage(Point point) {
+        return new Point((int) Math.floor(point.x / zoom), (int) Math.floor(point.y / zoom));
     }
 
     public void resizeCanvas(int newWidth, int newHeight) {
+        if (rejectEdit())
+            return;
         setPreferredSize(new Dimension(newWidth, newHeight));
 
         BufferedImage newImage = new BufferedImage(newWidth, newHeight, BufferedImage.TYPE_INT_RGB);
@@ -77,23 +316,115 @@ public class Canvas extends JPanel implements MouseListener, MouseMotionListener
         setDefaultBackground();
         newImage.setData(image.getData());
         image = newImage;
+        history.commit(image, null);
+        documentReplaced();
 
         repaint();
     }
 
+    /**
+     * Zooms the view so the whole document fits the viewport; the document keeps its resolution
+     */
     public void fitToScreen() {
-        var factor = Math.min((double) spIm.getHorizontalScrollBar().getWidth() / image.getWidth(),
-                (double) spIm.getVerticalScrollBar().getHeight() / image.getHeight());
-        var xform = AffineTransform.getScaleInstance(factor, factor);
-        var fitOp = new AffineTransformOp(xform, controller.getCurrentInterpolationType());
-        setImage(fitOp.filter(image, null));
+        var extent = spIm.getViewport().getExtentSize();
+        var factor = Math.min((double) extent.width / documentWidth(), (double) extent.height / documentHeight());
+        setZoom(factor, new Point(0, 0));
     }
 
     @Override
     public void paintComponent(Graphics g) {
         super.paintComponent(g);
-        //g.drawImage(image, 0, 0, panelSize.width, panelSize.height, this);
-        g.drawImage(image, 0, 0, image.getWidth(), image.getHeight(), this);
+        if (pyramid == null)
+            pyramid = isTiled() ? ImagePyramid.of(tiledImage) : ImagePyramid.of(image);
+        var clip = g.getClipBounds();
+        if (clip == null)
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+
+        // paint the clip from the nearest level no smaller than the zoomed document
+        int level = pyramid.levelFor(zoom);
+        double scale = zoom * (1L << level);
+        int x1 = (int) Math.floor(clip.x / scale);
+        int y1 = (int) Math.floor(clip.y / scale);
+        int x2 = (int) Math.ceil((clip.x + clip.width) / scale);
+        int y2 = (int) Math.ceil((clip.y + clip.height) / scale);
+        var g2 = (Graphics2D) g.create();
+        try {
+            g2.scale(scale, scale);
+            if (scale != 1)
+                g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolationHint());
+            pyramid.paint(g2, level, new Rectangle(x1, y1, x2 - x1, y2 - y1));
+        } finally {
+            g2.dispose();
+        }
+        if (preview != null) {
+            var previewGraphics = (Graphics2D) g.create();
+            try {
+                paintPreview(previewGraphics);
+            } finally {
+                previewGraphics.dispose();
+            }
+        }
+    }
+
+    /**
+     * @return copy of the visible part of the document at roughly screen resolution, or {@code null} if none
+     * of the document is visible
+     */
+    public PreviewSource createPreviewSource() {
+        var visible = getVisibleRect();
+        var region = new Rectangle((int) Math.floor(visible.x / zoom), (int) Math.floor(visible.y / zoom),
+                (int) Math.ceil(visible.width / zoom) + 1, (int) Math.ceil(visible.height / zoom) + 1)
+                .intersection(new Rectangle(0, 0, documentWidth(), documentHeight()));
+        if (region.isEmpty())
+            return null;
+        if (pyramid == null)
+            pyramid = isTiled() ? ImagePyramid.of(tiledImage) : ImagePyramid.of(image);
+        double limit = Math.sqrt((double) PREVIEW_PIXELS / ((long) region.width * region.height));
+        int level = pyramid.levelFor(Math.min(zoom, limit));
+        var proxy = pyramid.copy(level, region);
+        // the copy starts at a pixel of the level, so it may reach slightly beyond the region
+        var covered = new Rectangle(region.x >> level << level, region.y >> level << level,
+                proxy.getWidth() << level, proxy.getHeight() << level);
+        return new PreviewSource(proxy, covered);
+    }
+
+    /**
+     * Paints a filter result over the region it was computed on, centered on it at the scale of the source
+     *
+     * @param result filter result
+     * @param source proxy the filter was applied to
+     */
+    public void showPreview(BufferedImage result, PreviewSource source) {
+        preview = result;
+        previewSource = source;
+        repaint();
+    }
+
+    public void clearPreview() {
+        if (preview == null)
+            return;
+        preview = null;
+        previewSource = null;
+        repaint();
+    }
+
+    private void paintPreview(Graphics2D g) {
+        var region = previewSource.region();
+        double scale = zoom * region.width / previewSource.image().getWidth();
+        double centerX = (region.x + region.width / 2.0) * zoom;
+        double centerY = (region.y + region.height / 2.0) * zoom;
+        g.translate(centerX - preview.getWidth() * scale / 2, centerY - preview.getHeight() * scale / 2);
+        g.scale(scale, scale);
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolationHint());
+        g.drawImage(preview, 0, 0, null);
+    }
+
+    private Object interpolationHint() {
+        return switch (controller.getCurrentInterpolationType()) {
+            case AffineTransformOp.TYPE_NEAREST_NEIGHBOR -> RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR;
+            case AffineTransformOp.TYPE_BICUBIC, Kernel.TYPE_LANCZOS3 -> RenderingHints.VALUE_INTERPOLATION_BICUBIC;
+            default -> RenderingHints.VALUE_INTERPOLATION_BILINEAR;
+        };
     }
 
     @Override
@@ -102,32 +433,41 @@ public class Canvas extends JPanel implements MouseListener, MouseMotionListener
     }
     @Override
     public void mouseWheelMoved(MouseWheelEvent e){
+        setZoom(zoom * Math.pow(ZOOM_STEP, -e.getPreciseWheelRotation()), e.getPoint());
     }
 
     @Override
     public void mousePressed(MouseEvent e) {
+        if (controller.getCurrentTool() != Tools.CURSOR && rejectEdit())
+            return;
         switch (controller.getCurrentTool()) {
             case PEN -> {
-                prevPoint = e.getPoint();
+                prevPoint = toImage(e.getPoint());
                 g2d.setColor(controller.getCurrentColor());
-                g2d.fillOval(e.getX() - controller.getThickness() / 2, e.getY() - controller.getThickness() / 2,
+                g2d.fillOval(prevPoint.x - controller.getThickness() / 2, prevPoint.y - controller.getThickness() / 2,
                         controller.getThickness(), controller.getThickness());
+                drawn(Drafter.strokeBounds(prevPoint.x, prevPoint.y, prevPoint.x, prevPoint.y,
+                        controller.getThickness()));
             }
-            case LINE, CURSOR -> prevPoint = e.getPoint();
-            case FILL -> controller.fill(image, e.getPoint());
-            case POLYGON -> controller.drawPolygon(image, e.getPoint());
-            case STAR -> controller.drawStar(image, e.getPoint());
+            case LINE -> prevPoint = toImage(e.getPoint());
+            // panning works in canvas coordinates
+            case CURSOR -> prevPoint = e.getPoint();
+            case FILL -> drawn(controller.fill(image, toImage(e.getPoint())));
+            case POLYGON -> drawn(controller.drawPolygon(image, toImage(e.getPoint())));
+            case STAR -> drawn(controller.drawStar(image, toImage(e.getPoint())));
         }
-
-        repaint();
     }
 
     @Override
     public void mouseReleased(MouseEvent e) {
-        if (controller.getCurrentTool() == Tools.LINE)
-            controller.drawLine(image, prevPoint, e.getPoint());
-
-        repaint();
+        if (isTiled())
+            return;
+        if (controller.getCurrentTool() == Tools.LINE && canDraw())
+            drawn(controller.drawLine(image, prevPoint, toImage(e.getPoint())));
+        if (strokeRegion != null) {
+            history.commit(image, strokeRegion);
+            strokeRegion = null;
+        }
     }
 
     @Override
@@ -142,13 +482,16 @@ public class Canvas extends JPanel implements MouseListener, MouseMotionListener
     public void mouseDragged(MouseEvent e) {
         switch (controller.getCurrentTool()) {
             case PEN -> {
+                if (!canDraw())
+                    return;
+                var point = toImage(e.getPoint());
                 g2d.setColor(controller.getCurrentColor());
-                g2d.fillOval(e.getX() - controller.getThickness() / 2, e.getY() - controller.getThickness() / 2,
+                g2d.fillOval(point.x - controller.getThickness() / 2, point.y - controller.getThickness() / 2,
                         controller.getThickness(), controller.getThickness());
                 g2d.setStroke(new BasicStroke(controller.getThickness(), BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-                g2d.drawLine(prevPoint.x, prevPoint.y, e.getX(), e.getY());
-                prevPoint = e.getPoint();
-                repaint();
+                g2d.drawLine(prevPoint.x, prevPoint.y, point.x, point.y);
+                drawn(Drafter.strokeBounds(prevPoint.x, prevPoint.y, point.x, point.y, controller.getThickness()));
+                prevPoint = point;
             }
             case CURSOR -> {
                 // move picture using scroll
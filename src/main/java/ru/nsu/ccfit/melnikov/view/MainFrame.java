@@ -9,11 +9,17 @@ import ru.nsu.ccfit.melnikov.view.components.buttons.ColoredButton;
 import ru.nsu.ccfit.melnikov.view.components.buttons.IconButton;
 import ru.nsu.ccfit.melnikov.view.components.buttons.ToolButton;
 import ru.nsu.ccfit.melnikov.view.components.menu.AboutMenu;
+import ru.nsu.ccfit.melnikov.view.components.progress.FilterProgressPanel;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.awt.image.BufferedImage;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
 public class MainFrame extends JFrame {
     private static final String TITLE = "ICG Paint";
@@ -31,8 +37,10 @@ public class MainFrame extends JFrame {
     private final BorderDialog borderDialog = new BorderDialog();
     private final DitheringDialog ditheringDialog = new DitheringDialog();
     private final OrderedDitheringDialog orderedDitheringDialog = new OrderedDitheringDialog();
-    private final AngleDialog rotationDialog = new AngleDialog();
+    private final RotationDialog rotationDialog = new RotationDialog();
     private final AngleDialog twirlDialog = new AngleDialog();
+    private final NormalMapDialog normalMapDialog = new NormalMapDialog();
+    private final FilterProgressPanel filterProgressPanel = new FilterProgressPanel(controller);
     private final Map<Tools, ToolButton> toolBarButtons = new HashMap<>();
     private final Map<Tools, JRadioButtonMenuItem> viewMenuToolButtons = new HashMap<>();
 
@@ -48,11 +56,67 @@ public class MainFrame extends JFrame {
         getContentPane().add(createToolBar(), BorderLayout.NORTH);
 
         getContentPane().add(scrollPane, BorderLayout.CENTER);
+
+        controller.getFilterRunner().addListener(filterProgressPanel);
+        getContentPane().add(filterProgressPanel, BorderLayout.SOUTH);
+
+        var preview = controller.getFilterPreview();
+        blurDialog.addChangeListener(e -> preview.update());
+        gammaDialog.addChangeListener(e -> preview.update());
+        borderDialog.addChangeListener(e -> preview.update());
+        rotationDialog.addChangeListener(e -> preview.update());
+        twirlDialog.addChangeListener(e -> preview.update());
+        normalMapDialog.addChangeListener(e -> preview.update());
+        ditheringDialog.addChangeListener(e -> preview.update());
+        orderedDitheringDialog.addChangeListener(e -> preview.update());
+    }
+
+    private void showNormalMapDialog() {
+        if (showPreviewDialog(normalMapDialog, Filters.NORMAL_MAP.toString(), JOptionPane.QUESTION_MESSAGE,
+                () -> controller.normalMapFilter(normalMapDialog.getStrength(), normalMapDialog.isTileable())))
+            controller.makeNormalMap(canvas, normalMapDialog.getStrength(), normalMapDialog.isTileable());
+    }
+
+    /**
+     * Shows a parameters dialog, previewing the filter on the visible part of the canvas while it is open
+     *
+     * @param filter filter invocation for the parameters currently chosen in the dialog
+     * @return {@code true} if the user confirmed
+     */
+    private boolean showPreviewDialog(JComponent dialog, String title, int messageType,
+                                      Supplier<UnaryOperator<BufferedImage>> filter) {
+        var preview = controller.getFilterPreview();
+        preview.start(canvas, filter);
+        try {
+            return JOptionPane.OK_OPTION == JOptionPane.showConfirmDialog(this, dialog, title,
+                    JOptionPane.OK_CANCEL_OPTION, messageType);
+        } finally {
+            preview.stop();
+        }
+    }
+
+    private UnaryOperator<BufferedImage> ditheringFilter() {
+        int quantsR = ditheringDialog.getQuantsCountChooserR();
+        int quantsG = ditheringDialog.getQuantsCountChooserG();
+        int quantsB = ditheringDialog.getQuantsCountChooserB();
+        if (ditheringDialog.getDitheringType() == DitheringDialog.Types.Silitskiy)
+            return controller.floydASFilter(quantsR, quantsG, quantsB);
+        return controller.errorDiffusionFilter(ditheringDialog.getKernel(), quantsR, quantsG, quantsB);
+    }
+
+    private UnaryOperator<BufferedImage> orderedDitheringFilter() {
+        int quantsR = orderedDitheringDialog.getQuantsCountChooserR();
+        int quantsG = orderedDitheringDialog.getQuantsCountChooserG();
+        int quantsB = orderedDitheringDialog.getQuantsCountChooserB();
+        if (orderedDitheringDialog.getDitheringType() == DitheringDialog.Types.Silitskiy)
+            return controller.orderedASFilter(quantsR, quantsG, quantsB);
+        return controller.orderedNMFilter(quantsR, quantsG, quantsB);
     }
 
     private JMenuBar createMenuBar() {
         var menuBar = new JMenuBar();
         menuBar.add(createFileMenu());
+        menuBar.add(createEditMenu());
         menuBar.add(createViewMenu());
         menuBar.add(createFiltersMenu());
         menuBar.add(createAboutMenu());
@@ -79,6 +143,7 @@ public class MainFrame extends JFrame {
                         controller.setNumOfAngles(parametersDialog.getNumOfAngles());
                         controller.setRadius(parametersDialog.getRadius());
                         controller.setRotation(parametersDialog.getRotation());
+                        controller.setFillTolerance(parametersDialog.getFillTolerance());
                         controller.setCurrentInterpolationType(parametersDialog.getInterpolationTypeChooser());
                     }
                 });
@@ -103,6 +168,21 @@ public class MainFrame extends JFrame {
         return file;
     }
 
+    private JMenu createEditMenu() {
+        var edit = new JMenu("Edit");
+        var undo = new JMenuItem("Undo");
+        undo.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK));
+        undo.addActionListener(e -> canvas.undo());
+        var redo = new JMenuItem("Redo");
+        redo.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Y, InputEvent.CTRL_DOWN_MASK));
+        redo.addActionListener(e -> canvas.redo());
+
+        edit.add(undo);
+        edit.add(redo);
+
+        return edit;
+    }
+
     private JMenu createViewMenu() {
         var view = new JMenu("View");
         var tools = new ButtonGroup();
@@ -161,7 +241,10 @@ public class MainFrame extends JFrame {
             int confirm = JOptionPane.showConfirmDialog(this, resizeDialog,
                     "Resize", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
             if (JOptionPane.OK_OPTION == confirm) {
-                controller.resizeCanvas(canvas, resizeDialog.getWidth(), resizeDialog.getHeight());
+                if (resizeDialog.isScale())
+                    controller.scaleImage(canvas, resizeDialog.getWidth(), resizeDialog.getHeight());
+                else
+                    controller.resizeCanvas(canvas, resizeDialog.getWidth(), resizeDialog.getHeight());
                 scrollPane.updateUI();
             }
         });
@@ -176,52 +259,42 @@ public class MainFrame extends JFrame {
         var zoom = new JMenuItem(Filters.ZOOM.toString());
 
         zoom.addActionListener(e -> {
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
             int confirm = JOptionPane.showConfirmDialog(this, zoomDialog,
                     Filters.ZOOM.toString(), JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
             if (JOptionPane.OK_OPTION == confirm) {
                 controller.makeZoom(canvas, zoomDialog.getZoomSize());
             }
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
         });
 
         filters.add(zoom);
 
         var rotation = new JMenuItem(Filters.ROTATION.toString());
         rotation.addActionListener(e -> {
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
-            int confirm = JOptionPane.showConfirmDialog(this, rotationDialog,
-                    Filters.ROTATION.toString(), JOptionPane.OK_CANCEL_OPTION);
-            if (JOptionPane.OK_OPTION == confirm)
-                controller.makeRotation(canvas, rotationDialog.getAngle());
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
+            if (showPreviewDialog(rotationDialog, Filters.ROTATION.toString(), JOptionPane.QUESTION_MESSAGE,
+                    () -> controller.rotationFilter(rotationDialog.getAngle(), rotationDialog.isShears())))
+                controller.makeRotation(canvas, rotationDialog.getAngle(), rotationDialog.isShears());
         });
         filters.add(rotation);
 
         var floydDithering = new JMenuItem(Filters.FLOYD_STEINBERG_DITHERING.toString());
         floydDithering.addActionListener(e -> {
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
-            int confirm = JOptionPane.showConfirmDialog(this, ditheringDialog,
-                    Filters.FLOYD_STEINBERG_DITHERING.toString(), JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
-            if (JOptionPane.OK_OPTION == confirm) {
+            if (showPreviewDialog(ditheringDialog, Filters.FLOYD_STEINBERG_DITHERING.toString(),
+                    JOptionPane.PLAIN_MESSAGE, this::ditheringFilter)) {
                 if(ditheringDialog.getDitheringType() == DitheringDialog.Types.Silitskiy)
                     controller.ditherImageFloydAS(canvas, ditheringDialog.getQuantsCountChooserR(),
                             ditheringDialog.getQuantsCountChooserG(), ditheringDialog.getQuantsCountChooserB());
                 else{
-                    controller.ditherImageFloydNM(canvas, ditheringDialog.getQuantsCountChooserR(),
+                    controller.ditherErrorDiffusion(canvas, ditheringDialog.getKernel(), ditheringDialog.getQuantsCountChooserR(),
                             ditheringDialog.getQuantsCountChooserG(), ditheringDialog.getQuantsCountChooserB());
                 }
             }
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
         });
         filters.add(floydDithering);
 
         var orderedDithering = new JMenuItem(Filters.ORDERED_DITHERING.toString());
         orderedDithering.addActionListener(e -> {
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
-            int confirm = JOptionPane.showConfirmDialog(this, orderedDitheringDialog,
-                    Filters.ORDERED_DITHERING.toString(), JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
-            if (JOptionPane.OK_OPTION == confirm) {
+            if (showPreviewDialog(orderedDitheringDialog, Filters.ORDERED_DITHERING.toString(),
+                    JOptionPane.PLAIN_MESSAGE, this::orderedDitheringFilter)) {
                 if(orderedDitheringDialog.getDitheringType() == DitheringDialog.Types.Silitskiy)
                     controller.ditherImageOrderedAS(canvas, orderedDitheringDialog.getQuantsCountChooserR(),
                             orderedDitheringDialog.getQuantsCountChooserG(), orderedDitheringDialog.getQuantsCountChooserB());
@@ -230,19 +303,15 @@ public class MainFrame extends JFrame {
                             orderedDitheringDialog.getQuantsCountChooserG(), orderedDitheringDialog.getQuantsCountChooserB());
                 }
             }
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
         });
         filters.add(orderedDithering);
 
         var blur = new JMenuItem(Filters.BLUR.toString());
         blur.addActionListener(e -> {
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
-            int confirm = JOptionPane.showConfirmDialog(this, blurDialog,
-                    Filters.BLUR.toString(), JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
-            if (JOptionPane.OK_OPTION == confirm) {
+            if (showPreviewDialog(blurDialog, Filters.BLUR.toString(), JOptionPane.PLAIN_MESSAGE,
+                    () -> controller.blurFilter(blurDialog.getMaskSize()))) {
                 controller.makeBlur(canvas, blurDialog.getMaskSize());
             }
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
         });
         filters.add(blur);
 
@@ -252,80 +321,58 @@ public class MainFrame extends JFrame {
 
         var watercolor = new JMenuItem(Filters.WATERCOLOR.toString());
         watercolor.addActionListener(e -> {
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
             controller.makeWaterColored(canvas);
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
         });
         filters.add(watercolor);
 
         var normalMap = new JMenuItem(Filters.NORMAL_MAP.toString());
-        normalMap.addActionListener(e -> {
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
-            controller.makeNormalMap(canvas);
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
-        });
+        normalMap.addActionListener(e -> showNormalMapDialog());
         filters.add(normalMap);
 
         var twirl = new JMenuItem(Filters.TWIRL.toString());
         twirl.addActionListener(e -> {
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
-            int confirm = JOptionPane.showConfirmDialog(this, twirlDialog,
-                    Filters.TWIRL.toString(), JOptionPane.OK_CANCEL_OPTION);
-            if (JOptionPane.OK_OPTION == confirm)
-                controller.makeTwirl(canvas, rotationDialog.getAngle());
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
+            if (showPreviewDialog(twirlDialog, Filters.TWIRL.toString(), JOptionPane.QUESTION_MESSAGE,
+                    () -> controller.twirlFilter(twirlDialog.getAngle())))
+                controller.makeTwirl(canvas, twirlDialog.getAngle());
         });
         filters.add(twirl);
 
         var embossing = new JMenuItem(Filters.EMBOSSING.toString());
         embossing.addActionListener(e -> {
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
             controller.makeEmbossing(canvas);
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
         });
         filters.add(embossing);
 
         var sharpness = new JMenuItem(Filters.SHARPNESS.toString());
         sharpness.addActionListener(e -> {
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
             controller.makeSharpness(canvas);
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
         });
         filters.add(sharpness);
 
         var sobel = new JMenuItem(Filters.SOBEL.toString());
         sobel.addActionListener(e -> {
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
-            int confirm = JOptionPane.showConfirmDialog(this, borderDialog,
-                    Filters.SOBEL.toString(), JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
-            if (JOptionPane.OK_OPTION == confirm) {
+            if (showPreviewDialog(borderDialog, Filters.SOBEL.toString(), JOptionPane.PLAIN_MESSAGE,
+                    () -> controller.sobelFilter(borderDialog.getThreshold()))) {
                 controller.makeSobel(canvas, borderDialog.getThreshold());
             }
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
         });
         filters.add(sobel);
 
         var roberts = new JMenuItem(Filters.ROBERTS.toString());
         roberts.addActionListener(e -> {
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
-            int confirm = JOptionPane.showConfirmDialog(this, borderDialog,
-                    Filters.ROBERTS.toString(), JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
-            if (JOptionPane.OK_OPTION == confirm) {
+            if (showPreviewDialog(borderDialog, Filters.ROBERTS.toString(), JOptionPane.PLAIN_MESSAGE,
+                    () -> controller.robertsFilter(borderDialog.getThreshold()))) {
                 controller.makeRoberts(canvas, borderDialog.getThreshold());
             }
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
         });
         filters.add(roberts);
 
         var gamma = new JMenuItem(Filters.GAMMA.toString());
         gamma.addActionListener(e -> {
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
-            int confirm = JOptionPane.showConfirmDialog(this, gammaDialog,
-                    Filters.GAMMA.toString(), JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
-            if (JOptionPane.OK_OPTION == confirm) {
+            if (showPreviewDialog(gammaDialog, Filters.GAMMA.toString(), JOptionPane.PLAIN_MESSAGE,
+                    () -> controller.gammaFilter(gammaDialog.getGamma()))) {
                 controller.makeGamma(canvas, gammaDialog.getGamma());
             }
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
         });
         filters.add(gamma);
 
@@ -333,6 +380,14 @@ public class MainFrame extends JFrame {
         inverse.addActionListener(e -> controller.makeInverse(canvas));
         filters.add(inverse);
 
+        filters.addSeparator();
+
+        var cacheStats = new JMenuItem("Cache statistics");
+        cacheStats.addActionListener(e -> JOptionPane.showMessageDialog(this,
+                "Filter results: " + controller.getFilterCache().getStats(), "Cache statistics",
+                JOptionPane.INFORMATION_MESSAGE));
+        filters.add(cacheStats);
+
         return filters;
     }
 
@@ -354,6 +409,11 @@ public class MainFrame extends JFrame {
         undo.addActionListener(e -> canvas.undo());
         toolBar.add(undo);
 
+        IconButton redo = new IconButton("/icon-forwardarrow.png");
+        redo.setToolTipText("Redo");
+        redo.addActionListener(e -> canvas.redo());
+        toolBar.add(redo);
+
         IconButton fit = new IconButton("/icon-fitimage.png");
         fit.addActionListener(e -> canvas.fitToScreen());
         toolBar.add(fit);
@@ -407,38 +467,30 @@ public class MainFrame extends JFrame {
 
         IconButton rotateButton = new IconButton(Filters.ROTATION.getPict());
         rotateButton.addActionListener(e -> {
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
-            int confirm = JOptionPane.showConfirmDialog(this, rotationDialog,
-                    Filters.ROTATION.toString(), JOptionPane.OK_CANCEL_OPTION);
-            if (JOptionPane.OK_OPTION == confirm)
-                controller.makeRotation(canvas, rotationDialog.getAngle());
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
+            if (showPreviewDialog(rotationDialog, Filters.ROTATION.toString(), JOptionPane.QUESTION_MESSAGE,
+                    () -> controller.rotationFilter(rotationDialog.getAngle(), rotationDialog.isShears())))
+                controller.makeRotation(canvas, rotationDialog.getAngle(), rotationDialog.isShears());
         });
         toolBar.add(rotateButton);
 
         IconButton ditherButton = new IconButton(Filters.FLOYD_STEINBERG_DITHERING.getPict());
         ditherButton.addActionListener(e -> {
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
-            int confirm = JOptionPane.showConfirmDialog(this, ditheringDialog,
-                    Filters.FLOYD_STEINBERG_DITHERING.toString(), JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
-            if (JOptionPane.OK_OPTION == confirm) {
+            if (showPreviewDialog(ditheringDialog, Filters.FLOYD_STEINBERG_DITHERING.toString(),
+                    JOptionPane.PLAIN_MESSAGE, this::ditheringFilter)) {
                 if(ditheringDialog.getDitheringType() == DitheringDialog.Types.Silitskiy)
                     controller.ditherImageFloydAS(canvas, ditheringDialog.getQuantsCountChooserR(),
                             ditheringDialog.getQuantsCountChooserG(), ditheringDialog.getQuantsCountChooserB());
                 else{
-                    controller.ditherImageFloydNM(canvas, ditheringDialog.getQuantsCountChooserR(),
+                    controller.ditherErrorDiffusion(canvas, ditheringDialog.getKernel(), ditheringDialog.getQuantsCountChooserR(),
                             ditheringDialog.getQuantsCountChooserG(), ditheringDialog.getQuantsCountChooserB());
                 }
             }
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
         });
         toolBar.add(ditherButton);
         IconButton orderedDitherButton = new IconButton(Filters.ORDERED_DITHERING.getPict());
         orderedDitherButton.addActionListener(e -> {
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
-            int confirm = JOptionPane.showConfirmDialog(this, orderedDitheringDialog,
-                    Filters.ORDERED_DITHERING.toString(), JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
-            if (JOptionPane.OK_OPTION == confirm) {
+            if (showPreviewDialog(orderedDitheringDialog, Filters.ORDERED_DITHERING.toString(),
+                    JOptionPane.PLAIN_MESSAGE, this::orderedDitheringFilter)) {
                 if(orderedDitheringDialog.getDitheringType() == DitheringDialog.Types.Silitskiy)
                     controller.ditherImageOrderedAS(canvas, orderedDitheringDialog.getQuantsCountChooserR(),
                             orderedDitheringDialog.getQuantsCountChooserG(), orderedDitheringDialog.getQuantsCountChooserB());
@@ -447,19 +499,15 @@ public class MainFrame extends JFrame {
                             orderedDitheringDialog.getQuantsCountChooserG(), orderedDitheringDialog.getQuantsCountChooserB());
                 }
             }
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
         });
         toolBar.add(orderedDitherButton);
 
         IconButton blurButton = new IconButton(Filters.BLUR.getPict());
         blurButton.addActionListener(e -> {
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
-            int confirm = JOptionPane.showConfirmDialog(this, blurDialog,
-                    Filters.BLUR.toString(), JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
-            if (JOptionPane.OK_OPTION == confirm) {
+            if (showPreviewDialog(blurDialog, Filters.BLUR.toString(), JOptionPane.PLAIN_MESSAGE,
+                    () -> controller.blurFilter(blurDialog.getMaskSize()))) {
                 controller.makeBlur(canvas, blurDialog.getMaskSize());
             }
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
         });
         toolBar.add(blurButton);
 
@@ -469,86 +517,68 @@ public class MainFrame extends JFrame {
 
         IconButton waterColoredButton = new IconButton(Filters.WATERCOLOR.getPict());
         waterColoredButton.addActionListener(e -> {
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
             controller.makeWaterColored(canvas);
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
         });
         toolBar.add(waterColoredButton);
 
         IconButton zoomButton = new IconButton(Filters.ZOOM.getPict());
         zoomButton.addActionListener(e -> {
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
             int confirm = JOptionPane.showConfirmDialog(this, zoomDialog,
                     Filters.ZOOM.toString(), JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
             if (JOptionPane.OK_OPTION == confirm) {
                 controller.makeZoom(canvas, zoomDialog.getZoomSize());
             }
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
         });
         toolBar.add(zoomButton);
 
         IconButton normalMapButton = new IconButton(Filters.NORMAL_MAP.getPict());
-        normalMapButton.addActionListener(e -> controller.makeNormalMap(canvas));
+        normalMapButton.addActionListener(e -> showNormalMapDialog());
         toolBar.add(normalMapButton);
       
         JButton twirlButton = new IconButton(Filters.TWIRL.getPict());
         twirlButton.addActionListener(e -> {
-            int confirm = JOptionPane.showConfirmDialog(this, twirlDialog,
-                    Filters.TWIRL.toString(), JOptionPane.OK_CANCEL_OPTION);
-            if (JOptionPane.OK_OPTION == confirm)
+            if (showPreviewDialog(twirlDialog, Filters.TWIRL.toString(), JOptionPane.QUESTION_MESSAGE,
+                    () -> controller.twirlFilter(twirlDialog.getAngle())))
                 controller.makeTwirl(canvas, twirlDialog.getAngle());
         });
         toolBar.add(twirlButton);
       
         IconButton embossingButton = new IconButton(Filters.EMBOSSING.getPict());
         embossingButton.addActionListener(e -> {
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
             controller.makeEmbossing(canvas);
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
         });
         toolBar.add(embossingButton);
 
         IconButton sharpnessButton = new IconButton(Filters.SHARPNESS.getPict());
         sharpnessButton.addActionListener(e -> {
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
             controller.makeSharpness(canvas);
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
         });
         toolBar.add(sharpnessButton);
 
         IconButton sobelButton = new IconButton(Filters.SOBEL.getPict());
         sobelButton.addActionListener(e -> {
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
-            int confirm = JOptionPane.showConfirmDialog(this, borderDialog,
-                    Filters.SOBEL.toString(), JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
-            if (JOptionPane.OK_OPTION == confirm) {
+            if (showPreviewDialog(borderDialog, Filters.SOBEL.toString(), JOptionPane.PLAIN_MESSAGE,
+                    () -> controller.sobelFilter(borderDialog.getThreshold()))) {
                 controller.makeSobel(canvas, borderDialog.getThreshold());
             }
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
         });
         toolBar.add(sobelButton);
 
         IconButton robertsButton = new IconButton(Filters.ROBERTS.getPict());
         robertsButton.addActionListener(e -> {
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
-            int confirm = JOptionPane.showConfirmDialog(this, borderDialog,
-                    Filters.ROBERTS.toString(), JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
-            if (JOptionPane.OK_OPTION == confirm) {
+            if (showPreviewDialog(borderDialog, Filters.ROBERTS.toString(), JOptionPane.PLAIN_MESSAGE,
+                    () -> controller.robertsFilter(borderDialog.getThreshold()))) {
                 controller.makeRoberts(canvas, borderDialog.getThreshold());
             }
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
         });
         toolBar.add(robertsButton);
 
         IconButton gammaButton = new IconButton(Filters.GAMMA.getPict());
         gammaButton.addActionListener(e -> {
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
-            int confirm = JOptionPane.showConfirmDialog(this, gammaDialog,
-                    Filters.GAMMA.toString(), JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
-            if (JOptionPane.OK_OPTION == confirm) {
+            if (showPreviewDialog(gammaDialog, Filters.GAMMA.toString(), JOptionPane.PLAIN_MESSAGE,
+                    () -> controller.gammaFilter(gammaDialog.getGamma()))) {
                 controller.makeGamma(canvas, gammaDialog.getGamma());
             }
-            this.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
         });
         toolBar.add(gammaButton);
 
@@ -1,14 +1,38 @@
 package ru.nsu.ccfit.melnikov.view.components.FileChooser;
 
+import ru.nsu.ccfit.melnikov.model.png.PngWriter;
+
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
+import java.awt.*;
 import java.io.File;
 
 public class ImageSaver extends JFileChooser {
+    private final JSpinner compressionLevel = new JSpinner(new SpinnerNumberModel(PngWriter.DEFAULT_LEVEL, 0, 9, 1));
+    private final JCheckBox fast = new JCheckBox("Fast");
+
     public ImageSaver() {
         removeChoosableFileFilter(getFileFilter());
         addChoosableFileFilter(new FileNameExtensionFilter("PNG (*.png)", "png"));
         setFileSelectionMode(JFileChooser.FILES_ONLY);
         setSelectedFile(new File("anonymous.png"));
+
+        var options = new JPanel(new GridLayout(3, 1));
+        options.setBorder(BorderFactory.createTitledBorder("Compression"));
+        options.add(new JLabel("Level (0-9):"));
+        options.add(compressionLevel);
+        fast.setToolTipText("Use one row filter for the whole image");
+        options.add(fast);
+        var accessory = new JPanel(new BorderLayout());
+        accessory.add(options, BorderLayout.NORTH);
+        setAccessory(accessory);
+    }
+
+    public int getCompressionLevel() {
+        return (Integer) compressionLevel.getValue();
+    }
+
+    public boolean isFast() {
+        return fast.isSelected();
     }
 }
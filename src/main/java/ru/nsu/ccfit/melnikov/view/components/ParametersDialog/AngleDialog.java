@@ -1,6 +1,7 @@
 package ru.nsu.ccfit.melnikov.view.components.ParametersDialog;
 
 import javax.swing.*;
+import javax.swing.event.ChangeListener;
 import java.awt.*;
 
 public class AngleDialog extends JPanel {
@@ -20,4 +21,8 @@ public class AngleDialog extends JPanel {
     public int getAngle() {
         return angleChooser.getSlider().getValue();
     }
+
+    public void addChangeListener(ChangeListener listener) {
+        angleChooser.addChangeListener(listener);
+    }
 }
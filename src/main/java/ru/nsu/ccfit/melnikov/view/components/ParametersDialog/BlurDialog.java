@@ -1,6 +1,7 @@
 package ru.nsu.ccfit.melnikov.view.components.ParametersDialog;
 
 import javax.swing.*;
+import javax.swing.event.ChangeListener;
 import java.awt.*;
 
 public class BlurDialog extends JPanel{
@@ -24,4 +25,7 @@ public class BlurDialog extends JPanel{
         return maskSizeChooser.getSlider().getValue();
     }
 
+    public void addChangeListener(ChangeListener listener) {
+        maskSizeChooser.addChangeListener(listener);
+    }
 }
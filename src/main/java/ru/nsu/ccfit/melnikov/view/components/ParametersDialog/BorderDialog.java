@@ -1,6 +1,7 @@
 package ru.nsu.ccfit.melnikov.view.components.ParametersDialog;
 
 import javax.swing.*;
+import javax.swing.event.ChangeListener;
 import java.awt.*;
 
 public class BorderDialog extends JPanel {
@@ -22,4 +23,8 @@ public class BorderDialog extends JPanel {
     public int getThreshold() {
         return thresholdChooser.getSlider().getValue();
     }
+
+    public void addChangeListener(ChangeListener listener) {
+        thresholdChooser.addChangeListener(listener);
+    }
 }
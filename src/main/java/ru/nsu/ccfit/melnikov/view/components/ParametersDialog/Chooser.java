@@ -3,6 +3,7 @@ package ru.nsu.ccfit.melnikov.view.components.ParametersDialog;
 import lombok.Getter;
 
 import javax.swing.*;
+import javax.swing.event.ChangeListener;
 import java.awt.*;
 
 @Getter
@@ -35,4 +36,11 @@ public class Chooser extends JPanel {
             slider.setValue((Integer) spinner.getValue());
         });
     }
+
+    /**
+     * @param listener notified on every change of the value, including while the slider is dragged
+     */
+    public void addChangeListener(ChangeListener listener) {
+        slider.addChangeListener(listener);
+    }
 }
@@ -1,8 +1,11 @@
 package ru.nsu.ccfit.melnikov.view.components.ParametersDialog;
 
 import lombok.Getter;
+import ru.nsu.ccfit.melnikov.model.dither.DiffusionKernel;
 
 import javax.swing.*;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import java.awt.*;
 
 public class DitheringDialog extends JPanel {
@@ -15,6 +18,7 @@ public class DitheringDialog extends JPanel {
     private final Chooser quantsCountChooserB;
 
     private final JComboBox<Types> ditheringTypes;
+    private final JComboBox<DiffusionKernel> kernels;
 
     public enum Types {
         Silitskiy,
@@ -22,8 +26,8 @@ public class DitheringDialog extends JPanel {
     }
 
     public DitheringDialog() {
-        setPreferredSize(new Dimension(300, 120));
-        setLayout(new GridLayout(4, 1));
+        setPreferredSize(new Dimension(300, 150));
+        setLayout(new GridLayout(5, 1));
 
         quantsCountChooserR = new Chooser("Red quants count:", MIN_SIZE, DEFAULT_SIZE, MAX_SIZE, STEP);
         quantsCountChooserG = new Chooser("Green quants count:", MIN_SIZE, DEFAULT_SIZE, MAX_SIZE, STEP);
@@ -42,6 +46,16 @@ public class DitheringDialog extends JPanel {
         ditheringTypes = new JComboBox<>(ditheringModel);
         mode.add(ditheringTypes);
         add(mode);
+
+        JPanel kernel = new JPanel();
+        kernel.setLayout(new GridLayout(1, 2));
+        kernel.add(new JLabel("Kernel:"));
+        kernels = new JComboBox<>(DiffusionKernel.values());
+        kernel.add(kernels);
+        add(kernel);
+        // the first implementation always diffuses with Floyd-Steinberg weights
+        kernels.setEnabled(getDitheringType() != Types.Silitskiy);
+        ditheringTypes.addActionListener(e -> kernels.setEnabled(getDitheringType() != Types.Silitskiy));
     }
 
     public int getQuantsCountChooserR() {
@@ -56,4 +70,18 @@ public class DitheringDialog extends JPanel {
     public Types getDitheringType() {
         return Types.values()[ditheringTypes.getSelectedIndex()];
     }
+    public DiffusionKernel getKernel() {
+        return DiffusionKernel.values()[kernels.getSelectedIndex()];
+    }
+
+    /**
+     * @param listener notified on every change of a parameter
+     */
+    public void addChangeListener(ChangeListener listener) {
+        quantsCountChooserR.addChangeListener(listener);
+        quantsCountChooserG.addChangeListener(listener);
+        quantsCountChooserB.addChangeListener(listener);
+        ditheringTypes.addActionListener(e -> listener.stateChanged(new ChangeEvent(this)));
+        kernels.addActionListener(e -> listener.stateChanged(new ChangeEvent(this)));
+    }
 }
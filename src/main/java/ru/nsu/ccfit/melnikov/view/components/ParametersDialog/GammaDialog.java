@@ -1,6 +1,7 @@
 package ru.nsu.ccfit.melnikov.view.components.ParametersDialog;
 
 import javax.swing.*;
+import javax.swing.event.ChangeListener;
 import java.awt.*;
 
 public class GammaDialog extends JPanel {
@@ -22,4 +23,8 @@ public class GammaDialog extends JPanel {
     public float getGamma() {
         return gammaSizeChooser.getSlider().getValue() / 100.0f;
     }
+
+    public void addChangeListener(ChangeListener listener) {
+        gammaSizeChooser.addChangeListener(listener);
+    }
 }
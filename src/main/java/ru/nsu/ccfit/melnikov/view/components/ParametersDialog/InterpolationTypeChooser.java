@@ -1,6 +1,7 @@
 package ru.nsu.ccfit.melnikov.view.components.ParametersDialog;
 
 import lombok.Getter;
+import ru.nsu.ccfit.melnikov.model.resample.Kernel;
 
 import javax.swing.*;
 import java.awt.*;
@@ -12,7 +13,8 @@ public class InterpolationTypeChooser extends JPanel {
     private enum Types {
         TYPE_BILINEAR("Bilinear", AffineTransformOp.TYPE_BILINEAR),
         TYPE_BICUBIC("Bicubic", AffineTransformOp.TYPE_BICUBIC),
-        TYPE_NEAREST_NEIGHBOR("Nearest neighbour", AffineTransformOp.TYPE_NEAREST_NEIGHBOR);
+        TYPE_NEAREST_NEIGHBOR("Nearest neighbour", AffineTransformOp.TYPE_NEAREST_NEIGHBOR),
+        TYPE_LANCZOS3("Lanczos-3", Kernel.TYPE_LANCZOS3);
 
         private final String methodName;
         @Getter
@@ -0,0 +1,44 @@
+package ru.nsu.ccfit.melnikov.view.components.ParametersDialog;
+
+import javax.swing.*;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import java.awt.*;
+
+public class NormalMapDialog extends JPanel {
+    private static final int MIN_STRENGTH = 1;
+    private static final int DEFAULT_STRENGTH = 8;
+    private static final int MAX_STRENGTH = 64;
+    private static final int STEP = 1;
+    private final Chooser strengthChooser;
+    private final JCheckBox tileable;
+
+    public NormalMapDialog() {
+        setPreferredSize(new Dimension(350, 70));
+        setLayout(new GridLayout(2, 1));
+        strengthChooser = new Chooser("Strength:", MIN_STRENGTH, DEFAULT_STRENGTH, MAX_STRENGTH, STEP);
+        tileable = new JCheckBox("Tileable texture");
+
+        add(strengthChooser);
+        add(tileable);
+    }
+
+    public int getStrength() {
+        return strengthChooser.getSlider().getValue();
+    }
+
+    /**
+     * @return whether the edges wrap around, so that the map tiles like the texture
+     */
+    public boolean isTileable() {
+        return tileable.isSelected();
+    }
+
+    /**
+     * @param listener notified on every change of a parameter
+     */
+    public void addChangeListener(ChangeListener listener) {
+        strengthChooser.addChangeListener(listener);
+        tileable.addActionListener(e -> listener.stateChanged(new ChangeEvent(this)));
+    }
+}
@@ -1,6 +1,8 @@
 package ru.nsu.ccfit.melnikov.view.components.ParametersDialog;
 
 import javax.swing.*;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import java.awt.*;
 
 public class OrderedDitheringDialog extends JPanel {
@@ -54,4 +56,14 @@ public class OrderedDitheringDialog extends JPanel {
     public DitheringDialog.Types getDitheringType() {
         return DitheringDialog.Types.values()[ditheringTypes.getSelectedIndex()];
     }
+
+    /**
+     * @param listener notified on every change of a parameter
+     */
+    public void addChangeListener(ChangeListener listener) {
+        quantsCountChooserR.addChangeListener(listener);
+        quantsCountChooserG.addChangeListener(listener);
+        quantsCountChooserB.addChangeListener(listener);
+        ditheringTypes.addActionListener(e -> listener.stateChanged(new ChangeEvent(this)));
+    }
 }
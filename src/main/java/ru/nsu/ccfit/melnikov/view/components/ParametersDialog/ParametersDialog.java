@@ -14,27 +14,32 @@ public class ParametersDialog extends JPanel {
     private static final int MAX_RADIUS = 100;
     private static final int MIN_ROTATION = 0;
     private static final int MAX_ROTATION = 360;
+    private static final int MIN_TOLERANCE = 0;
+    private static final int MAX_TOLERANCE = 255;
     private static final int STEP_SIZE = 1;
     private final Chooser thicknessChooser;
     private final Chooser anglesChooser;
     private final Chooser radiusChooser;
     private final Chooser rotationChooser;
+    private final Chooser toleranceChooser;
     private final InterpolationTypeChooser interpolationTypeChooser;
 
     public ParametersDialog(Controller controller) {
-        setPreferredSize(new Dimension(360, 150));
-        setLayout(new GridLayout(5, 1));
+        setPreferredSize(new Dimension(360, 180));
+        setLayout(new GridLayout(6, 1));
 
         thicknessChooser = new Chooser("Line thickness:", MIN_THICKNESS, controller.getThickness(), MAX_THICKNESS, STEP_SIZE);
         anglesChooser = new Chooser("Number of angles:", MIN_ANGLES, controller.getNumOfAngles(), MAX_ANGLES, STEP_SIZE);
         radiusChooser = new Chooser("Radius:", MIN_RADIUS, controller.getRadius(), MAX_RADIUS, STEP_SIZE);
         rotationChooser = new Chooser("Rotation angle:", MIN_ROTATION, controller.getRotation(), MAX_ROTATION, STEP_SIZE);
+        toleranceChooser = new Chooser("Fill tolerance:", MIN_TOLERANCE, controller.getFillTolerance(), MAX_TOLERANCE, STEP_SIZE);
         interpolationTypeChooser = new InterpolationTypeChooser();
 
         add(thicknessChooser);
         add(anglesChooser);
         add(radiusChooser);
         add(rotationChooser);
+        add(toleranceChooser);
         add(interpolationTypeChooser);
     }
 
@@ -54,6 +59,10 @@ public class ParametersDialog extends JPanel {
         return rotationChooser.getSlider().getValue();
     }
 
+    public int getFillTolerance() {
+        return toleranceChooser.getSlider().getValue();
+    }
+
     public int getInterpolationTypeChooser() {
         return interpolationTypeChooser.getCurrentType();
     }
@@ -10,9 +10,10 @@ public class ResizeDialog extends JPanel {
     private static final int STEP = 1;
     private final JSpinner widthField;
     private final JSpinner heightField;
+    private final JCheckBox scaleBox;
 
     public ResizeDialog() {
-        setPreferredSize(new Dimension(200, 80));
+        setPreferredSize(new Dimension(200, 100));
         setLayout(new GridLayout(3, 1));
 
         SpinnerNumberModel widthModel = new SpinnerNumberModel(640, MIN_SIZE, MAX_SIZE, STEP);
@@ -25,6 +26,9 @@ public class ResizeDialog extends JPanel {
         add(widthField);
         add(new JLabel("Height:"));
         add(heightField);
+
+        scaleBox = new JCheckBox("Scale the image");
+        add(scaleBox);
     }
 
     public int getWidth() {
@@ -34,4 +38,11 @@ public class ResizeDialog extends JPanel {
     public int getHeight() {
         return (int) heightField.getValue();
     }
+
+    /**
+     * @return whether the image is resampled to the new size instead of cropped or padded
+     */
+    public boolean isScale() {
+        return scaleBox.isSelected();
+    }
 }
@@ -0,0 +1,43 @@
+package ru.nsu.ccfit.melnikov.view.components.ParametersDialog;
+
+import javax.swing.*;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import java.awt.*;
+
+public class RotationDialog extends JPanel {
+    private static final int MIN_ANGLE = -180;
+    private static final int MAX_ANGLE = 180;
+    private static final int STEP =  1;
+    private final Chooser angleChooser;
+    private final JCheckBox shears;
+
+    public RotationDialog() {
+        setPreferredSize(new Dimension(350, 70));
+        setLayout(new GridLayout(2, 1));
+        angleChooser = new Chooser("Angle:", MIN_ANGLE, 0, MAX_ANGLE, STEP);
+        shears = new JCheckBox("Rotate by three shears");
+
+        add(angleChooser);
+        add(shears);
+    }
+
+    public int getAngle() {
+        return angleChooser.getSlider().getValue();
+    }
+
+    /**
+     * @return whether the rotation is done by three shears instead of sampling every pixel
+     */
+    public boolean isShears() {
+        return shears.isSelected();
+    }
+
+    /**
+     * @param listener notified on every change of a parameter
+     */
+    public void addChangeListener(ChangeListener listener) {
+        angleChooser.addChangeListener(listener);
+        shears.addActionListener(e -> listener.stateChanged(new ChangeEvent(this)));
+    }
+}
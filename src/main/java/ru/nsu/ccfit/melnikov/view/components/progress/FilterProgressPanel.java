@@ -0,0 +1,38 @@
+package ru.nsu.ccfit.melnikov.view.components.progress;
+
+import ru.nsu.ccfit.melnikov.controller.Controller;
+
+import javax.swing.*;
+import java.awt.*;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+
+public class FilterProgressPanel extends JPanel implements PropertyChangeListener {
+    private final JProgressBar progressBar = new JProgressBar(0, 100);
+
+    public FilterProgressPanel(Controller controller) {
+        setLayout(new BorderLayout());
+
+        progressBar.setStringPainted(true);
+        add(progressBar, BorderLayout.CENTER);
+
+        var cancel = new JButton("Cancel");
+        cancel.addActionListener(e -> controller.cancelFilter());
+        add(cancel, BorderLayout.EAST);
+
+        setVisible(false);
+    }
+
+    @Override
+    public void propertyChange(PropertyChangeEvent evt) {
+        switch (evt.getPropertyName()) {
+            case "progress" -> progressBar.setValue((Integer) evt.getNewValue());
+            case "state" -> {
+                var started = evt.getNewValue() == SwingWorker.StateValue.STARTED;
+                if (started)
+                    progressBar.setValue(0);
+                setVisible(started);
+            }
+        }
+    }
+}